@@ -0,0 +1,32 @@
+package benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so runs of different commits
+ * can be compared. Any JMH command line option is accepted, e.g.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar Inference -p numTrees=10,50 -rff inference.json
+ * </pre>
+ * Results go to <code>jmh-result.json</code> unless <code>-rff</code> is given.
+ *
+ * @author Tianyi Wang
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		Options options = new OptionsBuilder()
+				.parent(commandLine)
+				.resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+				.result(commandLine.getResult().orElse("jmh-result.json"))
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import data.ColumnarData;
+import data.DataInstance;
+
+import forest.Forest;
+
+import tree.Tree;
+import tree.TreeData;
+
+/**
+ * Per-row cost of labeling rows one at a time and in batches. Every benchmark
+ * labels the same {@link #BLOCK_SIZE} rows, so the scores are per row.
+ *
+ * @author Tianyi Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InferenceBenchmark {
+
+	final private static int BLOCK_SIZE = 10000;
+
+	@Param({"100000"})
+	public int numRows;
+
+	@Param({"20"})
+	public int numAttributes;
+
+	@Param({"10"})
+	public int cardinality;
+
+	@Param({"50"})
+	public int numTrees;
+
+	private Tree tree;
+	private Forest forest;
+	private ColumnarData block;
+	private DataInstance[] rows;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ColumnarData data = SyntheticData.generate(numRows, numAttributes, cardinality, 42L);
+		tree = new Tree(new TreeData(data), false);
+		forest = new Forest(new TreeData(data), numTrees, Runtime.getRuntime().availableProcessors(), 42L);
+
+		block = SyntheticData.generate(BLOCK_SIZE, numAttributes, cardinality, 7L);
+		rows = new DataInstance[BLOCK_SIZE];
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			rows[i] = block.getInstance(i);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK_SIZE)
+	public void treeGetLabel(Blackhole blackhole) {
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			blackhole.consume(tree.getLabel(rows[i]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK_SIZE)
+	public int[] treePredictBatch() {
+		return tree.predictBatch(block);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK_SIZE)
+	public void forestGetLabel(Blackhole blackhole) {
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			blackhole.consume(forest.getLabel(rows[i]));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK_SIZE)
+	public int[] forestPredictBatch() {
+		return forest.predictBatch(block);
+	}
+}
@@ -0,0 +1,77 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import classification.DecisionTree;
+
+import data.ColumnarData;
+import data.DataFileLoader;
+
+import tree.TreeData;
+
+/**
+ * Throughput of loading a tab-separated data file.
+ *
+ * @author Tianyi Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParsingBenchmark {
+
+	@Param({"100000"})
+	public int numRows;
+
+	@Param({"20"})
+	public int numAttributes;
+
+	@Param({"10"})
+	public int cardinality;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = SyntheticData.writeFile(numRows, numAttributes, cardinality, 42L);
+	}
+
+	@Benchmark
+	public TreeData processDataGeneral() throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			return DecisionTree.processDataGeneral(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public ColumnarData mappedLoad() throws IOException {
+		return DataFileLoader.load(file.getPath());
+	}
+
+	@Benchmark
+	public ColumnarData mappedLoadSingleThread() throws IOException {
+		return DataFileLoader.load(file.getPath(), 1);
+	}
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import data.ColumnarData;
+import data.ColumnarDataBuilder;
+
+/**
+ * Generates reproducible synthetic data sets for the benchmarks.
+ *
+ * Attribute values are uniform in [0, cardinality). The label is +1 when a noisy
+ * sum over the first few attributes is above the mean, so the trees have real
+ * structure to find.
+ *
+ * @author Tianyi Wang
+ */
+public class SyntheticData {
+
+	// Number of leading attributes the label depends on.
+	final private static int NUM_INFORMATIVE = 4;
+
+	private static int getLabel(int[] attributes, int cardinality, SplittableRandom random) {
+		int numInformative = Math.min(NUM_INFORMATIVE, attributes.length);
+		int sum = 0;
+		for (int i = 0; i < numInformative; i++) {
+			sum += attributes[i];
+		}
+		int noise = random.nextInt(cardinality) - cardinality / 2;
+		return 2 * (sum + noise) >= numInformative * (cardinality - 1) ? +1 : -1;
+	}
+
+	/**
+	 * @param numRows number of rows.
+	 * @param numAttributes number of attributes per row.
+	 * @param cardinality number of distinct values per attribute.
+	 * @param seed seed of the generator.
+	 * @return the generated {@link ColumnarData}.
+	 */
+	public static ColumnarData generate(int numRows, int numAttributes, int cardinality, long seed) {
+		SplittableRandom random = new SplittableRandom(seed);
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		int[] attributes = new int[numAttributes];
+		for (int row = 0; row < numRows; row++) {
+			for (int i = 0; i < numAttributes; i++) {
+				attributes[i] = random.nextInt(cardinality);
+			}
+			builder.addRow(getLabel(attributes, cardinality, random), attributes);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Write the same data as {@link #generate(int, int, int, long)} in the
+	 * tab-separated input format to a temporary file.
+	 *
+	 * @return the file, deleted when the JVM exits.
+	 */
+	public static File writeFile(int numRows, int numAttributes, int cardinality, long seed) throws IOException {
+		File file = File.createTempFile("synthetic", ".txt");
+		file.deleteOnExit();
+
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] attributes = new int[numAttributes];
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			StringBuilder line = new StringBuilder();
+			for (int row = 0; row < numRows; row++) {
+				for (int i = 0; i < numAttributes; i++) {
+					attributes[i] = random.nextInt(cardinality);
+				}
+				line.setLength(0);
+				line.append(getLabel(attributes, cardinality, random) == +1 ? "+1" : "-1");
+				for (int i = 0; i < numAttributes; i++) {
+					line.append('\t').append(attributes[i]);
+				}
+				line.append('\n');
+				writer.write(line.toString());
+			}
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import data.ColumnarData;
+
+import forest.Forest;
+
+import tree.Tree;
+import tree.TreeData;
+
+/**
+ * Time to build a single tree and a whole forest.
+ *
+ * The split search of a node is private to {@link Tree}; a pruned C4.5 tree spends
+ * nearly all of its build time in it, so <code>prunedTree</code> tracks it closely.
+ *
+ * @author Tianyi Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TrainingBenchmark {
+
+	@Param({"100000"})
+	public int numRows;
+
+	@Param({"20"})
+	public int numAttributes;
+
+	@Param({"10"})
+	public int cardinality;
+
+	@Param({"10"})
+	public int numTrees;
+
+	private ColumnarData data;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		data = SyntheticData.generate(numRows, numAttributes, cardinality, 42L);
+	}
+
+	@Benchmark
+	public Tree prunedTree() {
+		return new Tree(new TreeData(data), false);
+	}
+
+	@Benchmark
+	public Tree prunedTreeParallel() {
+		return new Tree(new TreeData(data), false, ForkJoinPool.commonPool());
+	}
+
+	@Benchmark
+	public Tree randomTree() {
+		return new Tree(new TreeData(data), true);
+	}
+
+	@Benchmark
+	public Forest forest() {
+		return new Forest(new TreeData(data), numTrees, Runtime.getRuntime().availableProcessors(), 42L);
+	}
+}
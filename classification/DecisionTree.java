@@ -1,16 +1,22 @@
 package classification;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
+import metrics.Metrics;
+
+import tree.LevelWiseTreeBuilder;
+import tree.MappedModel;
+import tree.ModelFile;
+import tree.Predictor;
 import tree.Tree;
 import tree.TreeData;
 
+import data.ColumnarDataBuilder;
+import data.ColumnarFile;
+import data.DataFileLoader;
 import data.DataInstance;
 
 /**
@@ -21,42 +27,61 @@ public class DecisionTree {
 	private static Tree decisionTree = null;
 	
 	public static void main(String[] args) {
-		if (args.length != 2) {
-			System.out.println("DecisionTree train_file test_file");
-			return;
-		}
-		
-		String trainingFileName = args[0];
-		String testingFileName = args[1];
-		
-		BufferedReader trainingBufferReader = null;
-		BufferedReader testingBufferReader = null;
-		try {
-			trainingBufferReader = new BufferedReader(new FileReader(trainingFileName));
-			testingBufferReader = new BufferedReader(new FileReader(testingFileName));
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+		// -disk trains from an on-disk columnar copy of the training file instead of the heap,
+		// -metrics json_file records training and inference figures and writes them at the end.
+		boolean onDisk = false;
+		String metricsFileName = null;
+		int numOptions = 0;
+		while (numOptions < args.length) {
+			if (args[numOptions].equals("-disk")) {
+				onDisk = true;
+				numOptions++;
+			} else if (args[numOptions].equals("-metrics") && numOptions + 1 < args.length) {
+				metricsFileName = args[numOptions + 1];
+				numOptions += 2;
+			} else {
+				break;
+			}
 		}
-		
-		// Start to train.
-		processTrainingData(trainingBufferReader);
-		
-		try {
-			trainingBufferReader.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (metricsFileName != null) {
+			Metrics.enable();
 		}
-
-		// Start to evaluate.
-		processTestingData(testingBufferReader);
 		
 		try {
-			testingBufferReader.close();
+			if (args.length - numOptions == 3 && args[numOptions].equals("-model")) {
+				// Score with a model saved by an earlier run, without training.
+				processTestingData(ModelFile.load(args[numOptions + 1]), args[numOptions + 2]);
+			} else if (args.length - numOptions == 2 || args.length - numOptions == 3) {
+				String trainingFileName = args[numOptions];
+				String testingFileName = args[numOptions + 1];
+				
+				// Start to train.
+				if (onDisk) {
+					processTrainingDataOnDisk(trainingFileName);
+				} else {
+					processTrainingData(trainingFileName);
+				}
+				
+				if (args.length - numOptions == 3) {
+					decisionTree.save(args[numOptions + 2]);
+				}
+				
+				// Start to evaluate.
+				processTestingData(testingFileName);
+			} else {
+				System.out.println("DecisionTree [-disk] [-metrics json_file] train_file test_file [model_file]");
+				System.out.println("DecisionTree [-metrics json_file] -model model_file test_file");
+				return;
+			}
+			
+			if (metricsFileName != null) {
+				Metrics.get().writeJson(metricsFileName);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
-
+	
 	/**
 	 * Read in data and convert/store them in customized data structure.
 	 * 
@@ -64,87 +89,106 @@ public class DecisionTree {
 	 * @return a customized data structure {@link TreeData}.
 	 */
 	public static TreeData processDataGeneral(BufferedReader bufferReader) {
-		ArrayList<DataInstance> result = new ArrayList<DataInstance>();
-		int numPositiveClass = 0;
-		int numNegativeClass = 0;
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
 		
 		String line;
 		
 		try {
 			while ((line = bufferReader.readLine()) != null) {
-				DataInstance dataInstance = new DataInstance(line);
-				result.add(dataInstance);
-				
-				if (dataInstance.getLabel() == 1) {
-					numPositiveClass++;
-				} else {
-					numNegativeClass++;
-				}
+				builder.addRow(new DataInstance(line));
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		
-		// Create attributes list.
-		int attributesNum = result.get(0).getAttributes().size();
-		HashSet<Integer> attributes = new HashSet<Integer>(attributesNum);
-		for (int i = 0; i < attributesNum; i++) {
-			attributes.add(i);
+		return new TreeData(builder.build());
+	}
+	
+	/**
+	 * Load a data file through the memory-mapped {@link DataFileLoader}.
+	 * 
+	 * @param fileName path to the data file.
+	 * @return a customized data structure {@link TreeData}.
+	 */
+	public static TreeData processDataGeneral(String fileName) throws IOException {
+		return new TreeData(DataFileLoader.load(fileName));
+	}
+	
+	/**
+	 * Convert a data file into an on-disk {@link ColumnarFile} in the directory for
+	 * temporary files, see the java.io.tmpdir property. The file is deleted when the
+	 * JVM exits.
+	 * 
+	 * @param fileName path to the data file.
+	 * @return the columnar file.
+	 */
+	public static File convertOnDisk(String fileName) throws IOException {
+		File columnarFile = File.createTempFile(new File(fileName).getName() + ".", ".columns");
+		columnarFile.deleteOnExit();
+		try {
+			ColumnarFile.convert(fileName, columnarFile.getPath());
+		} catch (IOException e) {
+			columnarFile.delete();
+			throw e;
 		}
-		
-		return new TreeData(result, numPositiveClass, numNegativeClass, attributes);
+		return columnarFile;
+	}
+	
+	/**
+	 * Convert a data file into a temporary {@link ColumnarFile}, see {@link #convertOnDisk(String)},
+	 * and map it. Only the labels and the row indices are read into the heap.
+	 * 
+	 * @param fileName path to the data file.
+	 * @return a customized data structure {@link TreeData}.
+	 */
+	public static TreeData processDataOnDisk(String fileName) throws IOException {
+		return new TreeData(ColumnarFile.open(convertOnDisk(fileName).getPath()));
 	}
 	
 	/**
 	 * Build the classifier with the training data.
 	 * 
-	 * @param trainingBufferReader {@link BufferedReader} for reading training data.
+	 * @param trainingFileName path to the training data file.
 	 */
-	private static void processTrainingData(BufferedReader trainingBufferReader) {
-		TreeData trainingTreeData = processDataGeneral(trainingBufferReader);
-		decisionTree = new Tree(trainingTreeData, false); 
+	private static void processTrainingData(String trainingFileName) throws IOException {
+		TreeData trainingTreeData = processDataGeneral(trainingFileName);
+		decisionTree = new Tree(trainingTreeData, false, ForkJoinPool.commonPool());
 	}
 	
 	/**
-	 * Evaluate the classifier with the testing data.
+	 * Build the classifier level by level from an on-disk copy of the training data,
+	 * for training sets larger than the heap. Builds the same tree as
+	 * {@link #processTrainingData(String)}.
 	 * 
-	 * @param testingBufferReader {@link BufferedReader} for reading testing data.
+	 * @param trainingFileName path to the training data file.
 	 */
-	private static void processTestingData(BufferedReader testingBufferReader) {
+	private static void processTrainingDataOnDisk(String trainingFileName) throws IOException {
+		TreeData trainingTreeData = processDataOnDisk(trainingFileName);
+		decisionTree = new LevelWiseTreeBuilder(trainingTreeData, false).build();
+	}
+	
+	/**
+	 * Evaluate the classifier with the testing data, streaming the testing file in
+	 * blocks so any file size can be evaluated.
+	 * 
+	 * @param testingFileName path to the testing data file.
+	 */
+	private static void processTestingData(String testingFileName) throws IOException {
 		if (decisionTree == null) {
 			System.out.println("Decision Tree has not been constructed!");
 			return;
 		}
 		
-		TreeData testingTreeData = processDataGeneral(testingBufferReader);
-		
-		int numTP = 0;
-		int numFN = 0;
-		int numFP = 0;
-		int numTN = 0;
-		
-		Iterator<DataInstance> itr = testingTreeData.data.iterator();
-		while (itr.hasNext()) {
-			DataInstance dataInstance = itr.next();
-			int predictedLabel = decisionTree.getLabel(dataInstance);
-			int realLabel = dataInstance.getLabel();
-			
-			if (predictedLabel == realLabel && predictedLabel == +1) {
-				numTP++;
-			} else if (predictedLabel == realLabel && predictedLabel == -1) {
-				numTN++;
-			} else if (predictedLabel != realLabel && predictedLabel == +1) {
-				numFP++;
-			} else if (predictedLabel != realLabel && predictedLabel == -1) {
-				numFN++;
-			}
-		}
-		
-		// Output the quality evaluation:
-		// true positive, false negative, false positive, and true negative.
-		System.out.println(numTP);
-		System.out.println(numFN);
-		System.out.println(numFP);
-		System.out.println(numTN);
+		processTestingData(decisionTree, testingFileName);
+	}
+	
+	/**
+	 * Evaluate a classifier with the testing data.
+	 * 
+	 * @param predictor the classifier, e.g. a {@link MappedModel} loaded from a model file.
+	 * @param testingFileName path to the testing data file.
+	 */
+	private static void processTestingData(Predictor predictor, String testingFileName) throws IOException {
+		StreamingEvaluator.evaluate(predictor, testingFileName).print();
 	}
 }
\ No newline at end of file
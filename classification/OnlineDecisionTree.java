@@ -0,0 +1,74 @@
+package classification;
+
+import java.io.IOException;
+
+import tree.HoeffdingTree;
+import tree.Tree;
+
+import data.ColumnarData;
+import data.RowBlockReader;
+
+/**
+ * Learns a {@link HoeffdingTree} by streaming the training file once, in blocks, so
+ * that rows can be learned as they arrive instead of rebuilding on the whole file.
+ *
+ * @author Tianyi Wang
+ */
+public class OnlineDecisionTree {
+
+	public static void main(String[] args) {
+		// -leaves n bounds the memory by letting at most n leaves count values at once.
+		int maxActiveLeaves = Integer.MAX_VALUE;
+		int numOptions = 0;
+		while (numOptions < args.length) {
+			if (args[numOptions].equals("-leaves") && numOptions + 1 < args.length) {
+				maxActiveLeaves = Integer.parseInt(args[numOptions + 1]);
+				numOptions += 2;
+			} else {
+				break;
+			}
+		}
+
+		if (args.length - numOptions != 2 && args.length - numOptions != 3) {
+			System.out.println("OnlineDecisionTree [-leaves n] train_file test_file [model_file]");
+			return;
+		}
+
+		try {
+			// Start to train.
+			Tree decisionTree = processTrainingData(args[numOptions], maxActiveLeaves).toTree();
+			if (args.length - numOptions == 3) {
+				decisionTree.save(args[numOptions + 2]);
+			}
+
+			// Start to evaluate.
+			StreamingEvaluator.evaluate(decisionTree, args[numOptions + 1]).print();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Learn from every row of the training file, one block at a time.
+	 *
+	 * @param trainingFileName path to the training data file.
+	 * @param maxActiveLeaves most leaves counting their attributes' values at once.
+	 * @return the {@link HoeffdingTree}.
+	 */
+	private static HoeffdingTree processTrainingData(String trainingFileName, int maxActiveLeaves)
+			throws IOException {
+		RowBlockReader reader = new RowBlockReader(trainingFileName, StreamingEvaluator.DEFAULT_BLOCK_SIZE);
+		try {
+			HoeffdingTree hoeffdingTree = new HoeffdingTree(reader.getNumAttributes(),
+					HoeffdingTree.DEFAULT_GRACE_PERIOD, HoeffdingTree.DEFAULT_DELTA,
+					HoeffdingTree.DEFAULT_TIE_THRESHOLD, maxActiveLeaves);
+			ColumnarData block = reader.newBlock();
+			while (reader.readBlock(block) > 0) {
+				hoeffdingTree.update(block);
+			}
+			return hoeffdingTree;
+		} finally {
+			reader.close();
+		}
+	}
+}
\ No newline at end of file
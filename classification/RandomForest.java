@@ -1,15 +1,17 @@
 package classification;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.Iterator;
-
-import data.DataInstance;
+import java.util.ArrayList;
 
 import forest.Forest;
+import forest.ForestCoordinator;
+
+import metrics.Metrics;
 
+import tree.MappedModel;
+import tree.ModelFile;
+import tree.Predictor;
+import tree.Tree;
 import tree.TreeData;
 
 /**
@@ -17,97 +19,194 @@ import tree.TreeData;
  */
 public class RandomForest {
 
+	// Heap taken by every tree being built, per training row: the bootstrap weights,
+	// the tree's rows and partition buffer (ints), and its bit sets (about 2 bytes).
+	final private static long DISK_TREE_BYTES_PER_ROW = 14;
+	
 	private static Forest forest;
 	
 	public static void main(String[] args) {
-		if (args.length != 2) {
-			System.out.println("RandomForest train_file test_file");
-			return;
-		}
-		
-		String trainingFileName = args[0];
-		String testingFileName = args[1];
-		
-		BufferedReader trainingBufferReader = null;
-		BufferedReader testingBufferReader = null;
-		try {
-			trainingBufferReader = new BufferedReader(new FileReader(trainingFileName));
-			testingBufferReader = new BufferedReader(new FileReader(testingFileName));
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+		// -disk trains from an on-disk columnar copy of the training file instead of the heap,
+		// -workers n builds the trees in n worker JVMs on this machine,
+		// -metrics json_file records training and inference figures and writes them at the end,
+		// -mtry n evaluates n random attributes at every node instead of the square root of their number,
+		// -compact shares the equal leaves and subtrees of the trees once they are built.
+		boolean onDisk = false;
+		boolean compact = false;
+		int numWorkers = 0;
+		int numSampledAttributes = Tree.SQRT_ATTRIBUTES;
+		String metricsFileName = null;
+		int numOptions = 0;
+		while (numOptions < args.length) {
+			if (args[numOptions].equals("-disk")) {
+				onDisk = true;
+				numOptions++;
+			} else if (args[numOptions].equals("-workers") && numOptions + 1 < args.length) {
+				numWorkers = Integer.parseInt(args[numOptions + 1]);
+				numOptions += 2;
+			} else if (args[numOptions].equals("-metrics") && numOptions + 1 < args.length) {
+				metricsFileName = args[numOptions + 1];
+				numOptions += 2;
+			} else if (args[numOptions].equals("-mtry") && numOptions + 1 < args.length) {
+				numSampledAttributes = Integer.parseInt(args[numOptions + 1]);
+				numOptions += 2;
+			} else if (args[numOptions].equals("-compact")) {
+				compact = true;
+				numOptions++;
+			} else {
+				break;
+			}
 		}
-		
-		// Start to train.
-		processTrainingData(trainingBufferReader);
-		
-		try {
-			trainingBufferReader.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (metricsFileName != null) {
+			Metrics.enable();
 		}
-
-		// Start to evaluate.
-		processTestingData(testingBufferReader);
 		
 		try {
-			testingBufferReader.close();
+			if (args.length - numOptions == 3 && args[numOptions].equals("-model")) {
+				// Score with a model saved by an earlier run, without training.
+				processTestingData(ModelFile.load(args[numOptions + 1]), args[numOptions + 2]);
+			} else if (args.length - numOptions == 2 || args.length - numOptions == 3) {
+				String trainingFileName = args[numOptions];
+				String testingFileName = args[numOptions + 1];
+				
+				// Start to train.
+				if (numWorkers > 0) {
+					processTrainingDataWithWorkers(trainingFileName, onDisk, numWorkers, numSampledAttributes);
+				} else if (onDisk) {
+					processTrainingDataOnDisk(trainingFileName, numSampledAttributes);
+				} else {
+					processTrainingData(trainingFileName, numSampledAttributes);
+				}
+				if (compact) {
+					System.out.println(forest.compact());
+				}
+				
+				if (args.length - numOptions == 3) {
+					forest.save(args[numOptions + 2]);
+				}
+				
+				// Start to evaluate.
+				processTestingData(testingFileName);
+			} else {
+				System.out.println("RandomForest [-disk] [-workers n] [-metrics json_file] [-mtry n] [-compact] "
+								+ "train_file test_file [model_file]");
+				System.out.println("RandomForest [-metrics json_file] -model model_file test_file");
+				return;
+			}
+			
+			if (metricsFileName != null) {
+				Metrics.get().writeJson(metricsFileName);
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * @param trainingTreeData the training data.
+	 * @param numSampledAttributes attributes evaluated at every node, or {@link Tree#SQRT_ATTRIBUTES}.
+	 * @return a forest of {@link Forest#FOREST_K} trees built with every available processor.
+	 */
+	private static Forest newForest(TreeData trainingTreeData, int numSampledAttributes) {
+		return new Forest(trainingTreeData, Forest.FOREST_K, Runtime.getRuntime().availableProcessors(),
+						numSampledAttributes, System.nanoTime());
+	}
+	
+	/**
+	 * Build the trees of an on-disk forest at most as many at a time as fit in half the
+	 * heap, each taking about {@link #DISK_TREE_BYTES_PER_ROW} bytes per row.
+	 * 
+	 * @param numRows number of rows of the training data.
+	 * @return the number of trees to build at the same time.
+	 */
+	private static int getDiskParallelism(int numRows) {
+		long numTrees = Runtime.getRuntime().maxMemory() / 2 / (DISK_TREE_BYTES_PER_ROW * Math.max(1, numRows));
+		return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), numTrees));
+	}
+	
 	/**
 	 * Build the forest with the training data.
 	 * 
-	 * @param trainingBufferReader {@link BufferedReader} for reading training data.
+	 * @param trainingFileName path to the training data file.
+	 * @param numSampledAttributes attributes evaluated at every node, or {@link Tree#SQRT_ATTRIBUTES}.
 	 */
-	private static void processTrainingData(BufferedReader trainingBufferReader) {
-		TreeData trainingTreeData = DecisionTree.processDataGeneral(trainingBufferReader);
+	private static void processTrainingData(String trainingFileName, int numSampledAttributes)
+			throws IOException {
+		TreeData trainingTreeData = DecisionTree.processDataGeneral(trainingFileName);
 		
 		// Build the forest.
-		forest = new Forest(trainingTreeData);
+		forest = newForest(trainingTreeData, numSampledAttributes);
 	}
 	
 	/**
-	 * Evaluate the forest with the testing data.
+	 * Build the forest from an on-disk copy of the training data, for training sets
+	 * larger than the heap.
 	 * 
-	 * @param testingBufferReader {@link BufferedReader} for reading testing data.
+	 * @param trainingFileName path to the training data file.
+	 * @param numSampledAttributes attributes evaluated at every node, or {@link Tree#SQRT_ATTRIBUTES}.
 	 */
-	private static void processTestingData(BufferedReader testingBufferReader) {
+	private static void processTrainingDataOnDisk(String trainingFileName, int numSampledAttributes)
+			throws IOException {
+		TreeData trainingTreeData = DecisionTree.processDataOnDisk(trainingFileName);
+		
+		// Build the forest, as many trees at a time as the heap holds.
+		forest = new Forest(trainingTreeData, Forest.FOREST_K, getDiskParallelism(trainingTreeData.data.getNumRows()),
+						numSampledAttributes, System.nanoTime());
+	}
+	
+	/**
+	 * Build the forest in worker JVMs started on this machine, see {@link ForestCoordinator}.
+	 * 
+	 * @param trainingFileName path to the training data file.
+	 * @param onDisk whether the workers map an on-disk copy of the training data.
+	 * @param numWorkers the number of worker JVMs.
+	 * @param numSampledAttributes attributes evaluated at every node, or {@link Tree#SQRT_ATTRIBUTES}.
+	 */
+	private static void processTrainingDataWithWorkers(String trainingFileName, boolean onDisk,
+													int numWorkers, int numSampledAttributes) throws IOException {
+		String[] dataArgs = new String[] { trainingFileName };
+		if (onDisk) {
+			dataArgs = new String[] { "-columns", DecisionTree.convertOnDisk(trainingFileName).getPath() };
+		}
+		
+		ArrayList<Process> workers = new ArrayList<Process>();
+		ForestCoordinator coordinator = new ForestCoordinator(0, Forest.FOREST_K, numSampledAttributes,
+															System.nanoTime());
+		try {
+			for (int i = 0; i < numWorkers; i++) {
+				workers.add(coordinator.startLocalWorker(dataArgs));
+			}
+			forest = coordinator.build();
+		} finally {
+			coordinator.close();
+			for (Process worker : workers) {
+				worker.destroy();
+			}
+		}
+	}
+	
+	/**
+	 * Evaluate the forest with the testing data, streaming the testing file in
+	 * blocks so any file size can be evaluated.
+	 * 
+	 * @param testingFileName path to the testing data file.
+	 */
+	private static void processTestingData(String testingFileName) throws IOException {
 		if (forest == null) {
 			System.out.println("Random Forest has not been constructed!");
 			return;
 		}
 		
-		TreeData testingTreeData = DecisionTree.processDataGeneral(testingBufferReader);
-		
-		int numTP = 0;
-		int numFN = 0;
-		int numFP = 0;
-		int numTN = 0;
-		
-		Iterator<DataInstance> itr = testingTreeData.data.iterator();
-		while (itr.hasNext()) {
-			DataInstance dataInstance = itr.next();
-			int predictedLabel = forest.getLabel(dataInstance);
-			int realLabel = dataInstance.getLabel();
-			
-			if (predictedLabel == realLabel && predictedLabel == +1) {
-				numTP++;
-			} else if (predictedLabel == realLabel && predictedLabel == -1) {
-				numTN++;
-			} else if (predictedLabel != realLabel && predictedLabel == +1) {
-				numFP++;
-			} else if (predictedLabel != realLabel && predictedLabel == -1) {
-				numFN++;
-			}
-		}
-
-		// Output the quality evaluation:
-		// true positive, false negative, false positive, and true negative.
-		System.out.println(numTP);
-		System.out.println(numFN);
-		System.out.println(numFP);
-		System.out.println(numTN);
+		processTestingData(forest, testingFileName);
+	}
+	
+	/**
+	 * Evaluate a classifier with the testing data.
+	 * 
+	 * @param predictor the classifier, e.g. a {@link MappedModel} loaded from a model file.
+	 * @param testingFileName path to the testing data file.
+	 */
+	private static void processTestingData(Predictor predictor, String testingFileName) throws IOException {
+		StreamingEvaluator.evaluate(predictor, testingFileName).print();
 	}
 }
\ No newline at end of file
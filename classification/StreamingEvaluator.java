@@ -0,0 +1,205 @@
+package classification;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import data.Column;
+import data.ColumnarData;
+import data.RowBlockReader;
+
+import tree.Predictor;
+
+/**
+ * Evaluates a classifier over a testing file of any size with bounded memory.
+ *
+ * The calling thread parses the file into a fixed pool of reusable row blocks and
+ * hands them to worker threads through a bounded queue. The workers label every
+ * block, add to their own confusion counts and give the block back to the reader,
+ * so parsing and prediction overlap and at most the pool's blocks are in memory.
+ *
+ * @author Tianyi Wang
+ */
+public class StreamingEvaluator {
+
+	final public static int DEFAULT_BLOCK_SIZE = 1 << 14;
+	
+	// Markers passed through the queues.
+	final private static ColumnarData END_OF_FILE = new ColumnarData(new byte[0], new Column[0]);
+	final private static ColumnarData FAILED = new ColumnarData(new byte[0], new Column[0]);
+
+	/**
+	 * True positive, false negative, false positive and true negative counts.
+	 */
+	public static class ConfusionCounts {
+		public long numTP;
+		public long numFN;
+		public long numFP;
+		public long numTN;
+
+		public void add(int predictedLabel, int realLabel) {
+			if (predictedLabel == realLabel && predictedLabel == +1) {
+				numTP++;
+			} else if (predictedLabel == realLabel && predictedLabel == -1) {
+				numTN++;
+			} else if (predictedLabel != realLabel && predictedLabel == +1) {
+				numFP++;
+			} else if (predictedLabel != realLabel && predictedLabel == -1) {
+				numFN++;
+			}
+		}
+
+		public void add(ConfusionCounts other) {
+			numTP += other.numTP;
+			numFN += other.numFN;
+			numFP += other.numFP;
+			numTN += other.numTN;
+		}
+
+		/**
+		 * Output the quality evaluation:
+		 * true positive, false negative, false positive, and true negative.
+		 */
+		public void print() {
+			System.out.println(numTP);
+			System.out.println(numFN);
+			System.out.println(numFP);
+			System.out.println(numTN);
+		}
+	}
+
+	/**
+	 * Labels the blocks taken from the queue until it gets the end marker.
+	 */
+	private static class Worker extends Thread {
+		private final Predictor predictor;
+		private final BlockingQueue<ColumnarData> fullBlocks;
+		private final BlockingQueue<ColumnarData> freeBlocks;
+		private final ConfusionCounts counts;
+		private volatile Throwable failure;
+
+		public Worker(Predictor predictor, BlockingQueue<ColumnarData> fullBlocks,
+					BlockingQueue<ColumnarData> freeBlocks) {
+			super("evaluation-worker");
+			this.predictor = predictor;
+			this.fullBlocks = fullBlocks;
+			this.freeBlocks = freeBlocks;
+			this.counts = new ConfusionCounts();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					ColumnarData block = fullBlocks.take();
+					if (block == END_OF_FILE) {
+						return;
+					}
+
+					int[] predictedLabels = predictor.predictBatch(block);
+					for (int row = 0; row < block.getNumRows(); row++) {
+						counts.add(predictedLabels[row], block.getLabel(row));
+					}
+					freeBlocks.put(block);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (RuntimeException e) {
+				failure = e;
+				// Wake the reader up so it stops reading.
+				freeBlocks.offer(FAILED);
+			}
+		}
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Evaluate with one worker per available processor.
+	 *
+	 * @param predictor the classifier to evaluate.
+	 * @param testingFileName path to the testing data file.
+	 * @return the confusion counts over the whole file.
+	 */
+	public static ConfusionCounts evaluate(Predictor predictor, String testingFileName) throws IOException {
+		return evaluate(predictor, testingFileName, DEFAULT_BLOCK_SIZE,
+						Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	/**
+	 * Evaluate a classifier over a testing file.
+	 *
+	 * @param predictor the classifier to evaluate.
+	 * @param testingFileName path to the testing data file.
+	 * @param blockSize number of rows per block.
+	 * @param numWorkers number of threads labeling blocks.
+	 * @return the confusion counts over the whole file.
+	 */
+	public static ConfusionCounts evaluate(Predictor predictor, String testingFileName, int blockSize,
+										int numWorkers) throws IOException {
+		RowBlockReader reader = new RowBlockReader(testingFileName, blockSize);
+		try {
+			// Two blocks per worker: one being labeled while the next one is parsed.
+			int numBlocks = 2 * numWorkers;
+			BlockingQueue<ColumnarData> freeBlocks = new ArrayBlockingQueue<ColumnarData>(numBlocks + numWorkers);
+			BlockingQueue<ColumnarData> fullBlocks = new ArrayBlockingQueue<ColumnarData>(numBlocks + numWorkers);
+			for (int i = 0; i < numBlocks; i++) {
+				freeBlocks.add(reader.newBlock());
+			}
+
+			ArrayList<Worker> workers = new ArrayList<Worker>(numWorkers);
+			for (int i = 0; i < numWorkers; i++) {
+				Worker worker = new Worker(predictor, fullBlocks, freeBlocks);
+				worker.setDaemon(true);
+				worker.start();
+				workers.add(worker);
+			}
+
+			try {
+				boolean read = false;
+				try {
+					while (true) {
+						ColumnarData block = freeBlocks.take();
+						if (block == FAILED) {
+							break;
+						}
+						if (reader.readBlock(block) == 0) {
+							break;
+						}
+						fullBlocks.put(block);
+					}
+					read = true;
+				} finally {
+					if (!read) {
+						// Reading failed, e.g. on a malformed line: stop the workers waiting for blocks.
+						for (Worker worker : workers) {
+							worker.interrupt();
+						}
+					}
+				}
+				for (int i = 0; i < numWorkers; i++) {
+					fullBlocks.put(END_OF_FILE);
+				}
+
+				ConfusionCounts counts = new ConfusionCounts();
+				for (Worker worker : workers) {
+					worker.join();
+					if (worker.failure != null) {
+						throw new IllegalStateException("Failed to label a block.", worker.failure);
+					}
+					counts.add(worker.counts);
+				}
+				return counts;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (Worker worker : workers) {
+					worker.interrupt();
+				}
+				throw new IOException("Interrupted while evaluating " + testingFileName + ".", e);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+}
\ No newline at end of file
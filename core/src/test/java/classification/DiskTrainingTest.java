@@ -0,0 +1,126 @@
+package classification;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Trains in forked JVMs with a heap too small for the training data.
+ *
+ * @author Tianyi Wang
+ */
+public class DiskTrainingTest {
+
+	// 400000 rows of 32 attributes take about 26MB of text and far more as rows in the heap.
+	private static final int NUM_ROWS = 400000;
+	private static final int NUM_ATTRIBUTES = 32;
+	private static final String SMALL_HEAP = "-Xmx24m";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static class Run {
+		int exitCode;
+		String output;
+	}
+
+	/**
+	 * Write rows whose labels follow two of the attributes, with some noise.
+	 */
+	private static void writeData(File file, int numRows, long seed) throws IOException {
+		Random random = new Random(seed);
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			for (int i = 0; i < numRows; i++) {
+				int[] attributes = new int[NUM_ATTRIBUTES];
+				for (int j = 0; j < NUM_ATTRIBUTES; j++) {
+					attributes[j] = random.nextInt(8);
+				}
+				boolean positive = (attributes[0] + attributes[1] > 7) != (random.nextInt(10) == 0);
+				writer.write(positive ? "1" : "-1");
+				for (int j = 0; j < NUM_ATTRIBUTES; j++) {
+					writer.write("\t" + attributes[j]);
+				}
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Run {@link DecisionTree} in a new JVM with the classes under test.
+	 */
+	private Run runDecisionTree(String heap, String... args) throws Exception {
+		String classPath = new File(DecisionTree.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add(heap);
+		command.add("-Djava.io.tmpdir=" + folder.getRoot().getPath());
+		command.add("-cp");
+		command.add(classPath);
+		command.add(DecisionTree.class.getName());
+		command.addAll(Arrays.asList(args));
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		InputStream in = process.getInputStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int length;
+		while ((length = in.read(buffer)) != -1) {
+			out.write(buffer, 0, length);
+		}
+		Run run = new Run();
+		run.exitCode = process.waitFor();
+		run.output = out.toString("UTF-8").trim();
+		return run;
+	}
+
+	@Test
+	public void trainsOnDiskWithSmallHeap() throws Exception {
+		File inputFolder = folder.newFolder("input");
+		File train = new File(inputFolder, "train.txt");
+		File test = new File(inputFolder, "test.txt");
+		writeData(train, NUM_ROWS, 1);
+		writeData(test, NUM_ROWS / 4, 2);
+
+		Run inMemory = runDecisionTree(SMALL_HEAP, train.getPath(), test.getPath());
+		assertTrue("in-memory training should not fit in " + SMALL_HEAP + ": " + inMemory.output,
+				inMemory.output.contains("OutOfMemoryError"));
+
+		Run onDisk = runDecisionTree(SMALL_HEAP, "-disk", train.getPath(), test.getPath());
+		assertEquals(onDisk.output, 0, onDisk.exitCode);
+		assertFalse(onDisk.output, onDisk.output.contains("Error"));
+
+		Run reference = runDecisionTree("-Xmx512m", train.getPath(), test.getPath());
+		assertEquals(reference.output, 0, reference.exitCode);
+		assertTrue(reference.output, reference.output.matches("\\d+\\s+\\d+\\s+\\d+\\s+\\d+"));
+		assertEquals(reference.output, onDisk.output);
+
+		// The columnar copy was neither left next to the input nor in the temporary directory.
+		assertArrayEquals(new String[] { "test.txt", "train.txt" }, sorted(inputFolder.list()));
+		for (String name : folder.getRoot().list()) {
+			assertFalse(name, name.endsWith(".columns"));
+		}
+	}
+
+	private static String[] sorted(String[] names) {
+		Arrays.sort(names);
+		return names;
+	}
+}
@@ -0,0 +1,112 @@
+package classification;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import data.ColumnarData;
+import data.DataInstance;
+
+import tree.Predictor;
+
+/**
+ * @author Tianyi Wang
+ */
+public class StreamingEvaluatorTest {
+
+	private static final int NUM_ROWS = 20000;
+	private static final int NUM_WORKERS = 3;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Labels every row by the parity of its first attribute.
+	 */
+	private static final Predictor PARITY = new Predictor() {
+		@Override
+		public int getLabel(DataInstance dataInstance) {
+			return dataInstance.getAttributes()[0] % 2 == 0 ? +1 : -1;
+		}
+
+		@Override
+		public int getLabel(ColumnarData data, int row) {
+			return data.getValue(row, 0) % 2 == 0 ? +1 : -1;
+		}
+
+		@Override
+		public int[] predictBatch(ColumnarData data) {
+			int[] labels = new int[data.getNumRows()];
+			for (int row = 0; row < labels.length; row++) {
+				labels[row] = getLabel(data, row);
+			}
+			return labels;
+		}
+	};
+
+	/**
+	 * Write rows labeled +1, with a line in the end to append, e.g. a malformed one.
+	 */
+	private File writeData(String lastLine) throws IOException {
+		File file = folder.newFile();
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			for (int i = 0; i < NUM_ROWS; i++) {
+				writer.write("1\t" + i + "\t" + (i % 7));
+				writer.newLine();
+			}
+			if (lastLine != null) {
+				writer.write(lastLine);
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private static int countWorkers() {
+		int numWorkers = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("evaluation-worker") && thread.isAlive()) {
+				numWorkers++;
+			}
+		}
+		return numWorkers;
+	}
+
+	@Test
+	public void countsEveryRow() throws IOException {
+		StreamingEvaluator.ConfusionCounts counts = StreamingEvaluator.evaluate(PARITY, writeData(null).getPath(),
+																			100, NUM_WORKERS);
+		assertEquals(NUM_ROWS / 2, counts.numTP);
+		assertEquals(NUM_ROWS / 2, counts.numFN);
+		assertEquals(0, counts.numFP + counts.numTN);
+	}
+
+	@Test
+	public void stopsWorkersOnMalformedLine() throws Exception {
+		String fileName = writeData("1\t12x\t3").getPath();
+		int numWorkersBefore = countWorkers();
+		try {
+			StreamingEvaluator.evaluate(PARITY, fileName, 100, NUM_WORKERS);
+			fail("The malformed line was read.");
+		} catch (NumberFormatException e) {
+			// Expected.
+		}
+
+		long deadline = System.nanoTime() + 10000000000L;
+		while (countWorkers() > numWorkersBefore && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(numWorkersBefore, countWorkers());
+	}
+}
@@ -0,0 +1,142 @@
+package data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import tree.Tree;
+import tree.TreeData;
+
+/**
+ * Trees counting binary attributes with popcounts over {@link BitColumn}s must be
+ * the same as trees counting them row by row from byte codes.
+ *
+ * @author Tianyi Wang
+ */
+public class BitColumnTest {
+
+	// Not a multiple of 64, and above the rows searched in parallel.
+	private static final int NUM_ROWS = 20011;
+
+	/**
+	 * @return rows with mostly binary attributes and a few wider ones.
+	 */
+	private static ColumnarData newBinaryData(long seed) {
+		Random random = new Random(seed);
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		for (int i = 0; i < NUM_ROWS; i++) {
+			int[] attributes = new int[] { random.nextInt(2), random.nextInt(2), 5 * random.nextInt(2) - 3,
+											random.nextInt(2), random.nextInt(2), random.nextInt(4), random.nextInt(50) };
+			boolean positive = (attributes[0] + attributes[1] + attributes[3] + attributes[5] > 3)
+								!= (random.nextInt(5) == 0);
+			builder.addRow(positive ? +1 : -1, attributes);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return the same data with every binary attribute in byte codes instead of bits.
+	 */
+	private static ColumnarData toByteCodes(ColumnarData data) {
+		byte[] labels = new byte[data.getNumRows()];
+		for (int row = 0; row < labels.length; row++) {
+			labels[row] = (byte) data.getLabel(row);
+		}
+		Column[] columns = new Column[data.getNumAttributes()];
+		for (int attribute = 0; attribute < columns.length; attribute++) {
+			DictionaryColumn column = DictionaryColumn.encode(data.getColumn(attribute));
+			if (column instanceof BitColumn) {
+				int[] dictionary = new int[column.getNumCodes()];
+				for (int code = 0; code < dictionary.length; code++) {
+					dictionary[code] = column.getValue(code);
+				}
+				byte[] codes = new byte[labels.length];
+				for (int row = 0; row < codes.length; row++) {
+					codes[row] = (byte) column.getCode(row);
+				}
+				column = new DictionaryColumn.ByteCodes(dictionary, codes);
+			}
+			columns[attribute] = column;
+		}
+		return new ColumnarData(labels, columns);
+	}
+
+	/**
+	 * @return the rows with random weights from 0 to 5.
+	 */
+	private static TreeData weigh(TreeData treeData, long seed) {
+		Random random = new Random(seed);
+		int[] weights = new int[treeData.data.getNumRows()];
+		int numPositive = 0;
+		int numNegative = 0;
+		for (int row = 0; row < weights.length; row++) {
+			weights[row] = random.nextInt(6);
+			if (treeData.data.getLabel(row) == +1) {
+				numPositive += weights[row];
+			} else {
+				numNegative += weights[row];
+			}
+		}
+		return new TreeData(treeData.data, treeData.rows, treeData.from, treeData.to, weights, numPositive,
+							numNegative, treeData.attributes);
+	}
+
+	/**
+	 * @return the compiled nodes of the tree, as {@link Tree#write(java.io.DataOutput)} writes them.
+	 */
+	private static int[] getNodes(Tree tree) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		tree.write(new DataOutputStream(bytes));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		in.readInt();
+		int[] nodes = new int[in.readInt()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = in.readInt();
+		}
+		return nodes;
+	}
+
+	private static void assertSameTrees(TreeData bits, TreeData bytes, ForkJoinPool pool) throws IOException {
+		for (long seed = 1; seed <= 3; seed++) {
+			assertArrayEquals(getNodes(new Tree(bits, false, Tree.SQRT_ATTRIBUTES, seed, pool)),
+							getNodes(new Tree(bytes, false, Tree.SQRT_ATTRIBUTES, seed, pool)));
+			assertArrayEquals(getNodes(new Tree(bits, true, 3, seed, pool)),
+							getNodes(new Tree(bytes, true, 3, seed, pool)));
+		}
+	}
+
+	@Test
+	public void countsBitsLikeByteCodes() throws IOException {
+		ColumnarData data = newBinaryData(1);
+		ColumnarData byteData = toByteCodes(data);
+		assertTrue(data.getColumn(0) instanceof BitColumn);
+		assertTrue(data.getColumn(2) instanceof BitColumn);
+		assertFalse(byteData.getColumn(0) instanceof BitColumn);
+
+		assertSameTrees(new TreeData(data), new TreeData(byteData), null);
+		assertSameTrees(weigh(new TreeData(data), 2), weigh(new TreeData(byteData), 2), null);
+	}
+
+	@Test
+	public void countsBitsLikeByteCodesInParallel() throws IOException {
+		ColumnarData data = newBinaryData(3);
+		ColumnarData byteData = toByteCodes(data);
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			assertSameTrees(new TreeData(data), new TreeData(byteData), pool);
+			assertSameTrees(weigh(new TreeData(data), 4), weigh(new TreeData(byteData), 4), pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author Tianyi Wang
+ */
+public class LineParserTest {
+
+	private static int[] parse(String line) {
+		byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+		LineParser parser = new LineParser();
+		assertEquals(bytes.length, parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, 0));
+		return Arrays.copyOf(parser.fields, parser.numFields);
+	}
+
+	private static void assertMalformed(String line) {
+		try {
+			parse(line);
+			fail("Parsed " + line.trim() + ".");
+		} catch (NumberFormatException e) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void parsesSignedFields() {
+		assertArrayEquals(new int[] { 1, -3, 0, 42 }, parse("+1\t-3\t0\t42\r\n"));
+		assertArrayEquals(new int[] { -1, Integer.MAX_VALUE, Integer.MIN_VALUE },
+						parse("-1\t2147483647\t-2147483648\n"));
+	}
+
+	@Test
+	public void rejectsOverflow() {
+		assertMalformed("1\t2147483648\n");
+		assertMalformed("1\t-2147483649\n");
+		assertMalformed("1\t99999999999\n");
+		assertMalformed("1\t4294967297\n");
+		assertMalformed("1\t12x\n");
+	}
+}
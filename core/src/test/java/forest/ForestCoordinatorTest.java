@@ -0,0 +1,228 @@
+package forest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import data.DataFileLoader;
+
+import tree.Tree;
+import tree.TreeData;
+
+/**
+ * @author Tianyi Wang
+ */
+public class ForestCoordinatorTest {
+
+	private static final int NUM_ROWS = 20000;
+	private static final int NUM_ATTRIBUTES = 10;
+	private static final int NUM_TREES = 12;
+	private static final long SEED = 42;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File writeData() throws IOException {
+		File file = folder.newFile("train.txt");
+		Random random = new Random(1);
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			for (int i = 0; i < NUM_ROWS; i++) {
+				int[] attributes = new int[NUM_ATTRIBUTES];
+				for (int j = 0; j < NUM_ATTRIBUTES; j++) {
+					attributes[j] = random.nextInt(5);
+				}
+				boolean positive = (attributes[0] + attributes[1] + attributes[2] > 6) != (random.nextInt(8) == 0);
+				writer.write(positive ? "1" : "-1");
+				for (int j = 0; j < NUM_ATTRIBUTES; j++) {
+					writer.write("\t" + attributes[j]);
+				}
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * @return the compiled nodes of the tree, as {@link Tree#write(java.io.DataOutput)} writes them.
+	 */
+	private static int[] getNodes(Tree tree) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		tree.write(new DataOutputStream(bytes));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		in.readInt();
+		int[] nodes = new int[in.readInt()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = in.readInt();
+		}
+		return nodes;
+	}
+
+	private static Future<Forest> build(ExecutorService executor, final ForestCoordinator coordinator) {
+		return executor.submit(new Callable<Forest>() {
+			@Override
+			public Forest call() throws IOException {
+				return coordinator.build();
+			}
+		});
+	}
+
+	private static Future<Void> runWorker(ExecutorService executor, final ForestCoordinator coordinator,
+										final TreeData treeData) {
+		return executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				ForestWorker.run(InetAddress.getLoopbackAddress().getHostAddress(), coordinator.getPort(), treeData);
+				return null;
+			}
+		});
+	}
+
+	private static void assertSameForest(TreeData treeData, List<Tree> trees) throws IOException {
+		List<Tree> expected = new Forest(treeData, NUM_TREES, 1, SEED).getTrees();
+		assertEquals(NUM_TREES, trees.size());
+		for (int i = 0; i < NUM_TREES; i++) {
+			assertArrayEquals("tree " + i, getNodes(expected.get(i)), getNodes(trees.get(i)));
+			assertEquals("tree " + i, expected.get(i).getOutOfBagError(), trees.get(i).getOutOfBagError(), 0);
+			assertTrue("tree " + i, trees.get(i).getBuildTime() > 0);
+		}
+	}
+
+	/**
+	 * @return the cause of the build's failure, after asserting it failed.
+	 */
+	private static Throwable getFailure(Future<Forest> forest) throws Exception {
+		try {
+			forest.get(1, TimeUnit.MINUTES);
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+		fail("The forest was built.");
+		return null;
+	}
+
+	@Test
+	public void buildsSameForestAfterLosingWorker() throws Exception {
+		File train = writeData();
+		TreeData treeData = new TreeData(DataFileLoader.load(train.getPath()));
+		ForestCoordinator coordinator = new ForestCoordinator(0, NUM_TREES, SEED);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Process killedWorker = null;
+		Process worker = null;
+		try {
+			Future<Forest> forest = build(executor, coordinator);
+
+			// The first worker is killed once it has sent a few trees back.
+			killedWorker = coordinator.startLocalWorker(train.getPath());
+			long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+			while (coordinator.getNumBuilt() < 2) {
+				assertTrue("The worker built no trees.", System.nanoTime() < deadline && killedWorker.isAlive());
+				Thread.sleep(5);
+			}
+			// The second one, still starting, builds the rest, the lost tree included.
+			worker = coordinator.startLocalWorker(train.getPath());
+			killedWorker.destroyForcibly().waitFor();
+			assertTrue(coordinator.getNumBuilt() < NUM_TREES);
+
+			assertSameForest(treeData, forest.get(2, TimeUnit.MINUTES).getTrees());
+			coordinator.close();
+			assertEquals(0, worker.waitFor());
+		} finally {
+			if (killedWorker != null) {
+				killedWorker.destroyForcibly();
+			}
+			if (worker != null) {
+				worker.destroyForcibly();
+			}
+			coordinator.close();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void handsStuckWorkersTreeToAnotherWorker() throws Exception {
+		TreeData treeData = new TreeData(DataFileLoader.load(writeData().getPath()));
+		ForestCoordinator coordinator = new ForestCoordinator(0, NUM_TREES, SEED);
+		coordinator.setWorkerTimeout(2000);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Socket stuckWorker = new Socket(InetAddress.getLoopbackAddress(), coordinator.getPort());
+		try {
+			Future<Forest> forest = build(executor, coordinator);
+
+			// A worker taking a tree and never answering, while its connection stays open.
+			DataOutputStream out = new DataOutputStream(stuckWorker.getOutputStream());
+			out.writeInt(ForestCoordinator.MAGIC);
+			out.writeInt(treeData.data.getNumRows());
+			out.writeInt(treeData.data.getNumAttributes());
+			out.writeInt(treeData.numPositiveClass);
+			out.writeInt(treeData.numNegativeClass);
+			out.flush();
+			DataInputStream in = new DataInputStream(stuckWorker.getInputStream());
+			assertEquals(ForestCoordinator.BUILD_TREE, in.readInt());
+
+			Future<Void> worker = runWorker(executor, coordinator, treeData);
+			assertSameForest(treeData, forest.get(2, TimeUnit.MINUTES).getTrees());
+			coordinator.close();
+			worker.get(1, TimeUnit.MINUTES);
+		} finally {
+			stuckWorker.close();
+			coordinator.close();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failsOnceLocalWorkersAreGone() throws Exception {
+		ForestCoordinator coordinator = new ForestCoordinator(0, NUM_TREES, SEED);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Future<Forest> forest = build(executor, coordinator);
+			// The worker can't load its data and exits.
+			Process worker = coordinator.startLocalWorker(new File(folder.getRoot(), "missing.txt").getPath());
+			worker.waitFor();
+			assertTrue(getFailure(forest) instanceof IOException);
+		} finally {
+			coordinator.close();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failsWhenNoWorkerConnects() throws Exception {
+		ForestCoordinator coordinator = new ForestCoordinator(0, NUM_TREES, SEED);
+		coordinator.setWorkerTimeout(300);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			assertTrue(getFailure(build(executor, coordinator)) instanceof IOException);
+		} finally {
+			coordinator.close();
+			executor.shutdownNow();
+		}
+	}
+}
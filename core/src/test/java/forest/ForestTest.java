@@ -0,0 +1,198 @@
+package forest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import data.ColumnarData;
+import data.ColumnarDataBuilder;
+
+import metrics.Metrics;
+
+import tree.Tree;
+import tree.TreeCompactor;
+import tree.TreeData;
+
+/**
+ * @author Tianyi Wang
+ */
+public class ForestTest {
+
+	private static final int NUM_ROWS = 3001;
+	private static final int NUM_TEST_ROWS = 10007;
+	private static final int NUM_ATTRIBUTES = 8;
+
+	/**
+	 * @return rows labeled by a few attributes with much noise, so the trees often disagree.
+	 */
+	private static ColumnarData newNoisyData(int numRows, long seed) {
+		Random random = new Random(seed);
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		for (int i = 0; i < numRows; i++) {
+			int[] attributes = new int[NUM_ATTRIBUTES];
+			for (int j = 0; j < NUM_ATTRIBUTES; j++) {
+				attributes[j] = random.nextInt(5);
+			}
+			boolean positive = (attributes[0] + attributes[1] + attributes[2] > 6) != (random.nextInt(3) == 0);
+			builder.addRow(positive ? +1 : -1, attributes);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * The labels of a full count over all the trees, a tie going to -1.
+	 *
+	 * @param numTreesEvaluated receives, at index 0, the trees needed until the majority is certain.
+	 * @param numTies receives, at index 0, the rows whose full count is a tie.
+	 */
+	private static int[] countAllVotes(List<Tree> trees, ColumnarData data, long[] numTreesEvaluated,
+										int[] numTies) {
+		int numTrees = trees.size();
+		int[] labels = new int[data.getNumRows()];
+		for (int row = 0; row < labels.length; row++) {
+			int positiveVotes = 0;
+			int negativeVotes = 0;
+			int numDecisive = 0;
+			for (int i = 0; i < numTrees; i++) {
+				if (trees.get(i).getCompiledTree().getLabel(data, row) == +1) {
+					positiveVotes++;
+				} else {
+					negativeVotes++;
+				}
+				int numRemaining = numTrees - i - 1;
+				if (numDecisive == 0 && (positiveVotes > negativeVotes + numRemaining
+										|| negativeVotes >= positiveVotes + numRemaining)) {
+					numDecisive = i + 1;
+				}
+			}
+			labels[row] = positiveVotes > negativeVotes ? +1 : -1;
+			numTreesEvaluated[0] += numDecisive;
+			if (positiveVotes == negativeVotes) {
+				numTies[0]++;
+			}
+		}
+		return labels;
+	}
+
+	/**
+	 * @return the compiled nodes of the tree, as {@link Tree#write(java.io.DataOutput)} writes them.
+	 */
+	private static int[] getNodes(Tree tree) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		tree.write(new DataOutputStream(bytes));
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		in.readInt();
+		int[] nodes = new int[in.readInt()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = in.readInt();
+		}
+		return nodes;
+	}
+
+	private static void assertExactVote(int numTrees) {
+		Metrics.enable();
+		Forest forest = new Forest(new TreeData(newNoisyData(NUM_ROWS, 1)), numTrees, 1, 42);
+		ColumnarData data = newNoisyData(NUM_TEST_ROWS, 2);
+		assertEquals(0, forest.getMinAgreement(), 0);
+
+		long[] numTreesEvaluated = new long[1];
+		int[] numTies = new int[1];
+		int[] expected = countAllVotes(forest.getTrees(), data, numTreesEvaluated, numTies);
+		if (numTrees % 2 == 0) {
+			assertTrue("No tie among the rows.", numTies[0] > 0);
+		}
+		assertTrue("No vote stopped early.", numTreesEvaluated[0] < (long) NUM_TEST_ROWS * numTrees);
+
+		Metrics metrics = Metrics.get();
+		long rowsVoted = metrics.getRowsVoted();
+		long treesEvaluated = metrics.getTreesEvaluated();
+		assertArrayEquals(expected, forest.predictBatch(data));
+		assertEquals(NUM_TEST_ROWS, metrics.getRowsVoted() - rowsVoted);
+		assertEquals(numTreesEvaluated[0], metrics.getTreesEvaluated() - treesEvaluated);
+
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			treesEvaluated = metrics.getTreesEvaluated();
+			assertArrayEquals(expected, forest.predictBatch(data, pool));
+			assertEquals(numTreesEvaluated[0], metrics.getTreesEvaluated() - treesEvaluated);
+		} finally {
+			pool.shutdown();
+		}
+
+		treesEvaluated = metrics.getTreesEvaluated();
+		long treeLabelCalls = metrics.getTreeLabelCalls();
+		for (int row = 0; row < NUM_TEST_ROWS; row++) {
+			assertEquals("row " + row, expected[row], forest.getLabel(data, row));
+			assertEquals("row " + row, expected[row], forest.getLabel(data.getInstance(row)));
+		}
+		assertEquals(2 * numTreesEvaluated[0], metrics.getTreesEvaluated() - treesEvaluated);
+		// The trees voting are not timed one by one.
+		assertEquals(treeLabelCalls, metrics.getTreeLabelCalls());
+	}
+
+	@Test
+	public void stopsExactVoteWithoutChangingLabelsOfEvenForest() {
+		assertExactVote(50);
+	}
+
+	@Test
+	public void stopsExactVoteWithoutChangingLabelsOfOddForest() {
+		assertExactVote(9);
+	}
+
+	@Test
+	public void buildsSameForestWithAnyParallelism() throws IOException {
+		TreeData treeData = new TreeData(newNoisyData(NUM_ROWS, 3));
+		List<Tree> expected = new Forest(treeData, 20, 1, 7).getTrees();
+		List<Tree> trees = new Forest(treeData, 20, 4, 7).getTrees();
+		ForkJoinPool pool = new ForkJoinPool(3);
+		List<Tree> pooledTrees;
+		try {
+			pooledTrees = new Forest(treeData, 20, pool, 7).getTrees();
+		} finally {
+			pool.shutdown();
+		}
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals("tree " + i, getNodes(expected.get(i)), getNodes(trees.get(i)));
+			assertArrayEquals("tree " + i, getNodes(expected.get(i)), getNodes(pooledTrees.get(i)));
+			assertEquals("tree " + i, expected.get(i).getOutOfBagError(), trees.get(i).getOutOfBagError(), 0);
+		}
+	}
+
+	@Test
+	public void compactsWithoutChangingLabels() {
+		Forest forest = new Forest(new TreeData(newNoisyData(NUM_ROWS, 4)), 30, 1, 11);
+		ColumnarData data = newNoisyData(NUM_TEST_ROWS, 5);
+		int[] expected = forest.predictBatch(data);
+		int[][] treeLabels = new int[forest.getNumTrees()][NUM_TEST_ROWS];
+		for (int i = 0; i < forest.getNumTrees(); i++) {
+			for (int row = 0; row < NUM_TEST_ROWS; row++) {
+				treeLabels[i][row] = forest.getTrees().get(i).getLabel(data, row);
+			}
+		}
+
+		TreeCompactor compactor = forest.compact();
+		assertTrue(compactor.getNumNodesAfter() < compactor.getNumNodesBefore());
+		assertTrue(compactor.getBytesAfter() < compactor.getBytesBefore());
+		assertArrayEquals(expected, forest.predictBatch(data));
+		for (int i = 0; i < forest.getNumTrees(); i++) {
+			Tree tree = forest.getTrees().get(i);
+			for (int row = 0; row < NUM_TEST_ROWS; row++) {
+				assertEquals("tree " + i + ", row " + row, treeLabels[i][row], tree.getLabel(data, row));
+				assertEquals("tree " + i + ", row " + row, treeLabels[i][row],
+							tree.getCompiledTree().getLabel(data, row));
+			}
+		}
+	}
+}
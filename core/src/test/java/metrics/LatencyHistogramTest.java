@@ -0,0 +1,63 @@
+package metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Tianyi Wang
+ */
+public class LatencyHistogramTest {
+
+	private static void assertWithin(long expected, long actual) {
+		// 16 buckets per power of two: a percentile is at most 1/16 above the latency.
+		assertTrue("expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected + expected / 16 + 1);
+	}
+
+	@Test
+	public void keepsSubMicrosecondLatencies() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(100);
+		}
+		histogram.record(900);
+
+		assertEquals(100, histogram.getCount());
+		assertWithin(100, histogram.getPercentileNanos(50));
+		assertWithin(100, histogram.getPercentileNanos(99));
+		assertWithin(900, histogram.getPercentileNanos(100));
+		assertEquals(0, histogram.getPercentileMicros(100));
+	}
+
+	@Test
+	public void countsSmallLatenciesExactly() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long nanos = 0; nanos < 16; nanos++) {
+			histogram.record(nanos);
+		}
+		histogram.record(-5);
+
+		assertEquals(0, histogram.getPercentileNanos(1));
+		assertEquals(7, histogram.getPercentileNanos(50));
+		assertEquals(15, histogram.getPercentileNanos(100));
+	}
+
+	@Test
+	public void reportsLongLatenciesInMicroseconds() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(3000000000L);
+		assertWithin(3000000000L, histogram.getPercentileNanos(50));
+		assertWithin(3000000, histogram.getPercentileMicros(50));
+	}
+
+	@Test
+	public void resetForgetsTheLatencies() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1234);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentileNanos(99));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,52 @@
+package tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import data.ColumnarData;
+import data.ColumnarDataBuilder;
+
+/**
+ * @author Tianyi Wang
+ */
+public class HoeffdingTreeTest {
+
+	@Test
+	public void convertsWideSplitInValueOrder() {
+		// Values told apart by their parity, negative ones included, arriving in random order.
+		List<Integer> values = new ArrayList<Integer>();
+		for (int value = -3000; value < 3000; value++) {
+			values.add(value);
+		}
+		Random random = new Random(1);
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		for (int pass = 0; pass < 4; pass++) {
+			Collections.shuffle(values, random);
+			for (int value : values) {
+				builder.addRow((value & 1) == 0 ? +1 : -1, new int[] { value, random.nextInt(3) });
+			}
+		}
+		ColumnarData data = builder.build();
+
+		HoeffdingTree hoeffdingTree = new HoeffdingTree(2);
+		hoeffdingTree.update(data);
+		Tree tree = hoeffdingTree.toTree();
+
+		Tree.DecisionTreeNode root = (Tree.DecisionTreeNode) tree.getRootNode();
+		assertEquals(0, root.attributeIndex);
+		assertTrue(root.childValues.length > 1000);
+		for (int i = 1; i < root.childValues.length; i++) {
+			assertTrue(root.childValues[i - 1] < root.childValues[i]);
+		}
+		for (int row = 0; row < data.getNumRows(); row++) {
+			assertEquals(hoeffdingTree.getLabel(data, row), tree.getLabel(data, row));
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package tree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import data.ColumnarData;
+import data.ColumnarDataBuilder;
+
+/**
+ * @author Tianyi Wang
+ */
+public class LevelWiseTreeBuilderTest {
+
+	private static final int NUM_ROWS = 5003;
+
+	/**
+	 * @return rows with a binary, a few small, a wide and an ID-like attribute, the
+	 *         labels following some of them with noise.
+	 */
+	private static ColumnarData newMixedData(long seed) {
+		Random random = new Random(seed);
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		for (int i = 0; i < NUM_ROWS; i++) {
+			int[] attributes = new int[] { random.nextInt(2), random.nextInt(3), random.nextInt(5) - 2,
+											random.nextInt(7), random.nextInt(300), random.nextInt(3000), i };
+			boolean positive = (attributes[0] + attributes[1] + attributes[3] > 4) != (random.nextInt(6) == 0);
+			builder.addRow(positive ? +1 : -1, attributes);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @return the rows weighted like a bootstrap sample, some of them left out.
+	 */
+	private static TreeData newBootstrapData(ColumnarData data, long seed) {
+		TreeData treeData = new TreeData(data);
+		Random random = new Random(seed);
+		int[] weights = new int[data.getNumRows()];
+		int numPositive = 0;
+		int numNegative = 0;
+		for (int i = 0; i < data.getNumRows(); i++) {
+			int row = random.nextInt(data.getNumRows());
+			weights[row]++;
+			if (data.getLabel(row) == +1) {
+				numPositive++;
+			} else {
+				numNegative++;
+			}
+		}
+		return new TreeData(data, treeData.rows, 0, data.getNumRows(), weights, numPositive, numNegative,
+							treeData.attributes);
+	}
+
+	private static void assertSameTree(TreeData treeData, boolean randomlySelectAttri, int numSampledAttributes,
+									long seed) {
+		int[] expected = new Tree(treeData, randomlySelectAttri, numSampledAttributes, seed, null)
+				.getCompiledTree().getNodes();
+		int[] actual = new LevelWiseTreeBuilder(treeData, randomlySelectAttri, numSampledAttributes, seed).build()
+				.getCompiledTree().getNodes();
+		assertTrue(expected.length > 1);
+		assertArrayEquals("randomly " + randomlySelectAttri + ", mtry " + numSampledAttributes + ", seed " + seed,
+						expected, actual);
+	}
+
+	@Test
+	public void buildsSameDecisionTree() {
+		for (long seed = 1; seed <= 3; seed++) {
+			ColumnarData data = newMixedData(seed);
+			assertSameTree(new TreeData(data), false, Tree.SQRT_ATTRIBUTES, seed);
+			assertSameTree(newBootstrapData(data, seed), false, Tree.SQRT_ATTRIBUTES, seed);
+		}
+	}
+
+	@Test
+	public void buildsSameRandomTree() {
+		for (long seed = 1; seed <= 3; seed++) {
+			ColumnarData data = newMixedData(seed);
+			for (int numSampledAttributes : new int[] { Tree.SQRT_ATTRIBUTES, 1, 4, 7 }) {
+				assertSameTree(new TreeData(data), true, numSampledAttributes, seed);
+				assertSameTree(newBootstrapData(data, seed), true, numSampledAttributes, seed);
+			}
+		}
+	}
+}
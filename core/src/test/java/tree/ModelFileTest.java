@@ -0,0 +1,122 @@
+package tree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import data.ColumnarData;
+import data.ColumnarDataBuilder;
+
+import forest.Forest;
+
+/**
+ * @author Tianyi Wang
+ */
+public class ModelFileTest {
+
+	private static final int NUM_ROWS = 3001;
+	private static final int NUM_ATTRIBUTES = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static ColumnarData newData(long seed) {
+		Random random = new Random(seed);
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		for (int i = 0; i < NUM_ROWS; i++) {
+			int[] attributes = new int[NUM_ATTRIBUTES];
+			for (int j = 0; j < NUM_ATTRIBUTES; j++) {
+				attributes[j] = random.nextInt(6) - 2;
+			}
+			boolean positive = (attributes[0] + attributes[1] > 2) != (random.nextInt(4) == 0);
+			builder.addRow(positive ? +1 : -1, attributes);
+		}
+		return builder.build();
+	}
+
+	private static void flipByte(File file, long position) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(position);
+			int b = raf.read();
+			raf.seek(position);
+			raf.write(b ^ 0x10);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void assertNotLoaded(File file) {
+		try {
+			ModelFile.load(file.getPath());
+			fail("Loaded the damaged " + file.getName() + ".");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void loadsSavedForest() throws IOException {
+		ColumnarData data = newData(1);
+		Forest forest = new Forest(new TreeData(data), 20, 1, 5);
+		File file = folder.newFile("forest.model");
+		forest.save(file.getPath());
+
+		MappedModel model = ModelFile.load(file.getPath());
+		assertEquals(20, model.getNumTrees());
+		assertEquals(NUM_ATTRIBUTES, model.getNumAttributes());
+		int[] expected = forest.predictBatch(data);
+		assertArrayEquals(expected, model.predictBatch(data));
+		for (int row = 0; row < NUM_ROWS; row++) {
+			assertEquals("row " + row, expected[row], model.getLabel(data, row));
+			assertEquals("row " + row, expected[row], model.getLabel(data.getInstance(row)));
+		}
+	}
+
+	@Test
+	public void loadsSavedTree() throws IOException {
+		ColumnarData data = newData(2);
+		Tree tree = new Tree(new TreeData(data), false);
+		File file = folder.newFile("tree.model");
+		tree.save(file.getPath());
+
+		MappedModel model = ModelFile.load(file.getPath());
+		assertEquals(1, model.getNumTrees());
+		for (int row = 0; row < NUM_ROWS; row++) {
+			assertEquals("row " + row, tree.getLabel(data, row), model.getLabel(data, row));
+		}
+	}
+
+	@Test
+	public void rejectsDamagedFile() throws IOException {
+		Forest forest = new Forest(new TreeData(newData(3)), 5, 1, 5);
+		File magic = folder.newFile("magic.model");
+		forest.save(magic.getPath());
+		flipByte(magic, 0);
+		assertNotLoaded(magic);
+
+		File payload = folder.newFile("payload.model");
+		forest.save(payload.getPath());
+		flipByte(payload, payload.length() - 3);
+		assertNotLoaded(payload);
+
+		File truncated = folder.newFile("truncated.model");
+		forest.save(truncated.getPath());
+		RandomAccessFile raf = new RandomAccessFile(truncated, "rw");
+		try {
+			raf.setLength(truncated.length() - 4);
+		} finally {
+			raf.close();
+		}
+		assertNotLoaded(truncated);
+	}
+}
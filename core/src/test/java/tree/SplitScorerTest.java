@@ -0,0 +1,122 @@
+package tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import data.ColumnarData;
+import data.ColumnarDataBuilder;
+
+/**
+ * @author Tianyi Wang
+ */
+public class SplitScorerTest {
+
+	private static final int NUM_VALUES = 6;
+
+	/**
+	 * @return the exact gain ratio of splitting the rows on an attribute.
+	 */
+	private static double getExactGainRatio(ColumnarData data, int attribute) {
+		int[] positive = new int[NUM_VALUES];
+		int[] negative = new int[NUM_VALUES];
+		int numPositive = 0;
+		for (int row = 0; row < data.getNumRows(); row++) {
+			if (data.getLabel(row) == +1) {
+				positive[data.getValue(row, attribute)]++;
+				numPositive++;
+			} else {
+				negative[data.getValue(row, attribute)]++;
+			}
+		}
+		int[] counters = new int[NUM_VALUES];
+		int numCounters = 0;
+		for (int value = 0; value < NUM_VALUES; value++) {
+			if (positive[value] + negative[value] > 0) {
+				counters[numCounters++] = value;
+			}
+		}
+		int numRows = data.getNumRows();
+		return SplitScorer.getExactGainRatio(SplitScorer.getInfo(numPositive, numRows - numPositive), positive,
+											negative, counters, numCounters, numRows);
+	}
+
+	/**
+	 * @return rows with an attribute, its mirror image, which ties with it, and noise.
+	 */
+	private static ColumnarData newTiedData(long seed) {
+		Random random = new Random(seed);
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		int numRows = 50 + random.nextInt(500);
+		for (int i = 0; i < numRows; i++) {
+			int value = random.nextInt(NUM_VALUES);
+			int label = random.nextInt(NUM_VALUES) < value ? +1 : -1;
+			builder.addRow(label, new int[] { value, NUM_VALUES - 1 - value, random.nextInt(NUM_VALUES) });
+		}
+		return builder.build();
+	}
+
+	private static void assertRoot(String message, int expectedAttribute, Tree tree) {
+		if (expectedAttribute == -1) {
+			assertTrue(message, tree.getRootNode() instanceof Tree.LabelTreeNode);
+		} else {
+			assertEquals(message, expectedAttribute, ((Tree.DecisionTreeNode) tree.getRootNode()).attributeIndex);
+		}
+	}
+
+	@Test
+	public void scoresAreCloseToExactGainRatios() {
+		Random random = new Random(1);
+		SplitScorer.ensureCapacity(1 << 21);
+		for (int i = 0; i < 10000; i++) {
+			int numCounters = 1 + random.nextInt(20);
+			int bound = random.nextBoolean() ? 10 : 100000;
+			int[] positive = new int[numCounters];
+			int[] negative = new int[numCounters];
+			int[] counters = new int[numCounters];
+			int numPositive = 0;
+			int numNegative = 0;
+			for (int j = 0; j < numCounters; j++) {
+				positive[j] = random.nextInt(bound);
+				negative[j] = 1 + random.nextInt(bound);
+				counters[j] = j;
+				numPositive += positive[j];
+				numNegative += negative[j];
+			}
+			int totalCount = numPositive + numNegative;
+
+			double score = SplitScorer.getGainRatio(SplitScorer.getWeightedEntropy(numPositive, numNegative),
+													positive, negative, counters, numCounters, totalCount);
+			double exact = SplitScorer.getExactGainRatio(SplitScorer.getInfo(numPositive, numNegative), positive,
+														negative, counters, numCounters, totalCount);
+			assertEquals(exact, score, SplitScorer.TIE_TOLERANCE / 100);
+		}
+	}
+
+	@Test
+	public void breaksTiesByExactGainRatio() {
+		for (long seed = 1; seed <= 200; seed++) {
+			ColumnarData data = newTiedData(seed);
+
+			// The first attribute with the highest exact gain ratio, as C4.5 always picked.
+			int expected = -1;
+			double best = -1;
+			for (int attribute = 0; attribute < data.getNumAttributes(); attribute++) {
+				double gainRatio = getExactGainRatio(data, attribute);
+				if (gainRatio > best) {
+					best = gainRatio;
+					expected = attribute;
+				}
+			}
+			if (best < Tree.GAIN_RATIO_THRESHOLD) {
+				expected = -1;
+			}
+
+			assertRoot("seed " + seed, expected, new Tree(new TreeData(data), false));
+			assertRoot("seed " + seed, expected, new LevelWiseTreeBuilder(new TreeData(data), false).build());
+		}
+	}
+}
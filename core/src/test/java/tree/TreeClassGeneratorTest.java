@@ -0,0 +1,74 @@
+package tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+import data.ColumnarData;
+import data.ColumnarDataBuilder;
+
+/**
+ * @author Tianyi Wang
+ */
+public class TreeClassGeneratorTest {
+
+	private static final int NUM_ROWS = 20000;
+
+	/**
+	 * @return rows whose labels are only told apart by their ID, so the root splits on the ID.
+	 */
+	private static ColumnarData newIdData() {
+		Random random = new Random(1);
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		for (int id = 0; id < NUM_ROWS; id++) {
+			builder.addRow(random.nextBoolean() ? +1 : -1, new int[] { id, id % 3 });
+		}
+		return builder.build();
+	}
+
+	private static void assertSameLabels(Tree tree, RowPredictor predictor, int numAttributes, int maxValue) {
+		Random random = new Random(2);
+		for (int i = 0; i < 2 * NUM_ROWS; i++) {
+			int[] attributes = new int[numAttributes];
+			for (int j = 0; j < numAttributes; j++) {
+				attributes[j] = random.nextInt(maxValue + 2) - 1;
+			}
+			assertEquals(Arrays.toString(attributes), tree.getCompiledTree().getLabel(attributes),
+						predictor.predict(attributes));
+		}
+	}
+
+	@Test
+	public void generatesTreeWithWideRoot() {
+		Tree tree = new Tree(new TreeData(newIdData()), false);
+		Tree.DecisionTreeNode root = (Tree.DecisionTreeNode) tree.getRootNode();
+		assertEquals(0, root.attributeIndex);
+		assertTrue(root.childValues.length * 8 > TreeClassGenerator.MAX_METHOD_SIZE);
+
+		RowPredictor predictor = tree.generatePredictor();
+		assertSameLabels(tree, predictor, 2, NUM_ROWS);
+	}
+
+	@Test
+	public void generatesWideNodeBelowNarrowRoot() {
+		int numValues = 5000;
+		int[] values = new int[numValues];
+		Tree.TreeNode[] leaves = new Tree.TreeNode[numValues];
+		for (int i = 0; i < numValues; i++) {
+			values[i] = 2 * i;
+			leaves[i] = new Tree.LabelTreeNode(i % 3 == 0 ? +1 : -1);
+		}
+		Tree.DecisionTreeNode wide = new Tree.DecisionTreeNode(1, true, values, leaves);
+		Tree.DecisionTreeNode root = new Tree.DecisionTreeNode(0, false, new int[] { 0, 1 },
+															new Tree.TreeNode[] { wide, new Tree.LabelTreeNode(+1) });
+		Tree tree = new Tree(root, 2);
+
+		RowPredictor predictor = TreeClassGenerator.generate(Collections.singletonList(tree));
+		assertSameLabels(tree, predictor, 2, 2 * numValues);
+	}
+}
\ No newline at end of file
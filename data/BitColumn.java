@@ -0,0 +1,41 @@
+package data;
+
+/**
+ * A {@link DictionaryColumn} of at most two distinct values, packed one bit per
+ * row: the bit of a row is its code. Word i holds rows 64i to 64i + 63, lowest
+ * bit first, so counts over many rows come from {@link Long#bitCount(long)}.
+ *
+ * @author Tianyi Wang
+ */
+public final class BitColumn extends DictionaryColumn {
+	private final long[] words;
+	private final int size;
+
+	BitColumn(int[] dictionary, int[] codes, int size) {
+		super(dictionary);
+		this.words = new long[(size + 63) >>> 6];
+		this.size = size;
+		for (int i = 0; i < size; i++) {
+			if (codes[i] == 1) {
+				words[i >>> 6] |= 1L << i;
+			}
+		}
+	}
+
+	@Override
+	public int getCode(int row) {
+		return (int) (words[row >>> 6] >>> row) & 1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the packed codes, not a copy.
+	 */
+	public long[] getWords() {
+		return words;
+	}
+}
\ No newline at end of file
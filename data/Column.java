@@ -0,0 +1,68 @@
+package data;
+
+/**
+ * One attribute of a {@link ColumnarData} set, stored as a primitive array.
+ *
+ * @author Tianyi Wang
+ */
+public abstract class Column {
+
+	/**
+	 * @param row index of the row.
+	 * @return the attribute value of the row.
+	 */
+	public abstract int get(int row);
+
+	/**
+	 * @return number of rows stored in this column.
+	 */
+	public abstract int size();
+
+	/**
+	 * Create a column holding the first <code>size</code> values, dictionary encoded
+	 * so that the tree builder can count rows by value code, see {@link DictionaryColumn}.
+	 *
+	 * @param values the attribute values.
+	 * @param size number of valid entries in <code>values</code>.
+	 * @return the new {@link Column}.
+	 */
+	public static Column create(int[] values, int size) {
+		return DictionaryColumn.encode(values, size);
+	}
+
+	/**
+	 * Wrap values as they are, without encoding them, e.g. for small batches of rows
+	 * that are only labeled.
+	 *
+	 * @param values the attribute values, one per row; not copied.
+	 * @return the new {@link Column}.
+	 */
+	public static Column wrap(int[] values) {
+		return new IntColumn(values);
+	}
+
+	/**
+	 * A plain column of ints, used for reusable blocks that are rewritten in place.
+	 */
+	static final class IntColumn extends Column {
+		private final int[] values;
+
+		IntColumn(int[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public int get(int row) {
+			return values[row];
+		}
+
+		void set(int row, int value) {
+			values[row] = value;
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package data;
+
+/**
+ * A data set stored column by column: one primitive {@link Column} per
+ * attribute and a packed label array.
+ *
+ * @author Tianyi Wang
+ */
+public class ColumnarData {
+	private int numRows;
+	private final byte[] labels;		// either +1 or -1.
+	private final Column[] columns;
+
+	public ColumnarData(byte[] labels, Column[] columns) {
+		this.numRows = labels.length;
+		this.labels = labels;
+		this.columns = columns;
+	}
+	
+	/**
+	 * Only the first <code>numRows</code> entries of the arrays are rows of the set.
+	 * Used for reusable blocks, see {@link RowBlockReader}.
+	 */
+	ColumnarData(byte[] labels, Column[] columns, int numRows) {
+		this.numRows = numRows;
+		this.labels = labels;
+		this.columns = columns;
+	}
+	
+	void setNumRows(int numRows) {
+		this.numRows = numRows;
+	}
+	
+	void setLabel(int row, int label) {
+		labels[row] = (byte) label;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumAttributes() {
+		return columns.length;
+	}
+
+	public int getLabel(int row) {
+		return labels[row];
+	}
+
+	public int getValue(int row, int attribute) {
+		return columns[attribute].get(row);
+	}
+
+	public Column getColumn(int attribute) {
+		return columns[attribute];
+	}
+
+	/**
+	 * @param row index of the row.
+	 * @return a copy of the row as a {@link DataInstance}.
+	 */
+	public DataInstance getInstance(int row) {
+		int[] attributes = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			attributes[i] = columns[i].get(row);
+		}
+		return new DataInstance(labels[row], attributes);
+	}
+
+	/**
+	 * For debugging purpose.
+	 */
+	@Override
+	public String toString() {
+		return "ColumnarData [numRows=" + numRows + ", numAttributes="
+				+ columns.length + "]";
+	}
+}
\ No newline at end of file
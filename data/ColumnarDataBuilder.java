@@ -0,0 +1,130 @@
+package data;
+
+/**
+ * Accumulates rows into growable primitive columns and turns them into a
+ * {@link ColumnarData} once all the rows have been added.
+ *
+ * @author Tianyi Wang
+ */
+public class ColumnarDataBuilder {
+	private int numRows;
+	private byte[] labels;
+	private int[][] columns;
+
+	public ColumnarDataBuilder() {
+		this.numRows = 0;
+		this.labels = new byte[16];
+		this.columns = null;
+	}
+
+	private void grow() {
+		int capacity = labels.length * 2;
+
+		byte[] newLabels = new byte[capacity];
+		System.arraycopy(labels, 0, newLabels, 0, numRows);
+		labels = newLabels;
+
+		for (int i = 0; i < columns.length; i++) {
+			int[] newColumn = new int[capacity];
+			System.arraycopy(columns[i], 0, newColumn, 0, numRows);
+			columns[i] = newColumn;
+		}
+	}
+
+	public void addRow(int label, int[] attributes) {
+		if (columns == null) {
+			columns = new int[attributes.length][labels.length];
+		} else if (attributes.length != columns.length) {
+			throw new IllegalArgumentException("Expected " + columns.length
+					+ " attributes but got " + attributes.length + ".");
+		}
+		if (numRows == labels.length) {
+			grow();
+		}
+
+		labels[numRows] = (byte) label;
+		for (int i = 0; i < attributes.length; i++) {
+			columns[i][numRows] = attributes[i];
+		}
+		numRows++;
+	}
+
+	public void addRow(DataInstance dataInstance) {
+		addRow(dataInstance.getLabel(), dataInstance.getAttributes());
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	/**
+	 * Concatenate the rows of several builders, in order, into one {@link ColumnarData}.
+	 * The builders are emptied in the process.
+	 * 
+	 * @param parts the builders to concatenate.
+	 * @return the {@link ColumnarData} holding all the rows.
+	 */
+	public static ColumnarData merge(ColumnarDataBuilder[] parts) {
+		int totalRows = 0;
+		int numAttributes = -1;
+		for (ColumnarDataBuilder part : parts) {
+			if (part.numRows == 0) {
+				continue;
+			}
+			if (numAttributes == -1) {
+				numAttributes = part.columns.length;
+			} else if (numAttributes != part.columns.length) {
+				throw new IllegalArgumentException("Expected " + numAttributes
+						+ " attributes but got " + part.columns.length + ".");
+			}
+			totalRows += part.numRows;
+		}
+		if (numAttributes == -1) {
+			numAttributes = 0;
+		}
+
+		byte[] packedLabels = new byte[totalRows];
+		int offset = 0;
+		for (ColumnarDataBuilder part : parts) {
+			System.arraycopy(part.labels, 0, packedLabels, offset, part.numRows);
+			offset += part.numRows;
+		}
+
+		Column[] packedColumns = new Column[numAttributes];
+		int[] wide = new int[totalRows];
+		for (int i = 0; i < numAttributes; i++) {
+			offset = 0;
+			for (ColumnarDataBuilder part : parts) {
+				if (part.numRows == 0) {
+					continue;
+				}
+				System.arraycopy(part.columns[i], 0, wide, offset, part.numRows);
+				offset += part.numRows;
+				part.columns[i] = null;
+			}
+			packedColumns[i] = Column.create(wide, totalRows);
+		}
+		for (ColumnarDataBuilder part : parts) {
+			part.columns = null;
+			part.numRows = 0;
+		}
+
+		return new ColumnarData(packedLabels, packedColumns);
+	}
+
+	public ColumnarData build() {
+		byte[] packedLabels = new byte[numRows];
+		System.arraycopy(labels, 0, packedLabels, 0, numRows);
+
+		int numAttributes = columns == null ? 0 : columns.length;
+		Column[] packedColumns = new Column[numAttributes];
+		for (int i = 0; i < numAttributes; i++) {
+			packedColumns[i] = Column.create(columns[i], numRows);
+			// Release the wide copy as soon as it has been packed.
+			columns[i] = null;
+		}
+		columns = null;
+
+		return new ColumnarData(packedLabels, packedColumns);
+	}
+}
\ No newline at end of file
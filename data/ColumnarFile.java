@@ -0,0 +1,358 @@
+package data;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * An on-disk columnar copy of a data file, for training on data sets larger than
+ * the heap. The columns are dictionary encoded like {@link DictionaryColumn}s and
+ * stay on disk: {@link #open(String)} maps them, so only the labels and the
+ * dictionaries are read into the heap.
+ *
+ * Layout, little-endian:
+ * <pre>
+ *   header      MAGIC, VERSION, numRows, numAttributes          (4 ints)
+ *   dictionary  width, numCodes, numCodes values                (per attribute)
+ *   labels      numRows bytes, +1 or -1
+ *   columns     numRows codes of width bytes                    (per attribute)
+ * </pre>
+ * Every section starts at a multiple of 8 bytes.
+ *
+ * @author Tianyi Wang
+ */
+public class ColumnarFile {
+
+	final public static int MAGIC = 0x4D434446;		// "FDCM" once written little-endian.
+	final public static int VERSION = 1;
+
+	// Rows parsed per block while converting.
+	final private static int BLOCK_SIZE = 1 << 14;
+
+	// Columns are mapped in segments of this many bytes, a multiple of every code width.
+	final private static int SEGMENT_BITS = 30;
+
+	/**
+	 * Distinct values of a column, in an open addressing hash set.
+	 */
+	private static class ValueSet {
+		private int[] values;
+		private boolean[] used;
+		private int size;
+
+		public ValueSet() {
+			this.values = new int[16];
+			this.used = new boolean[16];
+			this.size = 0;
+		}
+
+		private static int slot(int value, int mask) {
+			int hash = value * 0x9E3779B9;
+			return (hash ^ (hash >>> 16)) & mask;
+		}
+
+		public void add(int value) {
+			int mask = values.length - 1;
+			int i = slot(value, mask);
+			while (used[i]) {
+				if (values[i] == value) {
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			values[i] = value;
+			used[i] = true;
+			size++;
+
+			if (2 * size > values.length) {
+				int[] oldValues = values;
+				boolean[] oldUsed = used;
+				values = new int[oldValues.length * 2];
+				used = new boolean[oldValues.length * 2];
+				mask = values.length - 1;
+				for (int j = 0; j < oldValues.length; j++) {
+					if (oldUsed[j]) {
+						int k = slot(oldValues[j], mask);
+						while (used[k]) {
+							k = (k + 1) & mask;
+						}
+						values[k] = oldValues[j];
+						used[k] = true;
+					}
+				}
+			}
+		}
+
+		public int[] toSortedArray() {
+			int[] result = new int[size];
+			int n = 0;
+			for (int i = 0; i < values.length; i++) {
+				if (used[i]) {
+					result[n++] = values[i];
+				}
+			}
+			Arrays.sort(result);
+			return result;
+		}
+	}
+
+	/**
+	 * A {@link DictionaryColumn} reading its codes from mapped segments of the file.
+	 */
+	static final class MappedCodes extends DictionaryColumn {
+		private final MappedByteBuffer[] segments;
+		private final int width;
+		private final int size;
+
+		MappedCodes(int[] dictionary, MappedByteBuffer[] segments, int width, int size) {
+			super(dictionary);
+			this.segments = segments;
+			this.width = width;
+			this.size = size;
+		}
+
+		@Override
+		public int getCode(int row) {
+			long pos = (long) row * width;
+			MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+			int offset = (int) (pos & ((1 << SEGMENT_BITS) - 1));
+			switch (width) {
+			case 1:
+				return segment.get(offset) & 0xFF;
+			case 2:
+				return segment.getShort(offset) & 0xFFFF;
+			default:
+				return segment.getInt(offset);
+			}
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private static long align(long offset) {
+		return (offset + 7) & ~7L;
+	}
+
+	/**
+	 * @param numCodes number of distinct values of a column.
+	 * @return number of bytes per code.
+	 */
+	private static int getWidth(int numCodes) {
+		if (numCodes <= 1 << 8) {
+			return 1;
+		} else if (numCodes <= 1 << 16) {
+			return 2;
+		}
+		return 4;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int numRead = channel.read(buffer, position);
+			if (numRead < 0) {
+				throw new IOException("Unexpected end of columnar file.");
+			}
+			position += numRead;
+		}
+		buffer.flip();
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Convert a tab-separated data file into a columnar file. The data file is read
+	 * twice, once to build the dictionaries and once to write the codes, a block of
+	 * rows at a time.
+	 *
+	 * @param dataFileName path to the data file.
+	 * @param columnarFileName path of the columnar file to write.
+	 */
+	public static void convert(String dataFileName, String columnarFileName) throws IOException {
+		// First pass: the distinct values of every column.
+		int numAttributes;
+		int numRows = 0;
+		ValueSet[] valueSets;
+		RowBlockReader reader = new RowBlockReader(dataFileName, BLOCK_SIZE);
+		try {
+			numAttributes = reader.getNumAttributes();
+			valueSets = new ValueSet[numAttributes];
+			for (int i = 0; i < numAttributes; i++) {
+				valueSets[i] = new ValueSet();
+			}
+			ColumnarData block = reader.newBlock();
+			int blockRows;
+			while ((blockRows = reader.readBlock(block)) > 0) {
+				for (int i = 0; i < numAttributes; i++) {
+					Column column = block.getColumn(i);
+					for (int row = 0; row < blockRows; row++) {
+						valueSets[i].add(column.get(row));
+					}
+				}
+				numRows += blockRows;
+			}
+		} finally {
+			reader.close();
+		}
+
+		int[][] dictionaries = new int[numAttributes][];
+		int[] widths = new int[numAttributes];
+		long offset = 4 * 4;
+		for (int i = 0; i < numAttributes; i++) {
+			dictionaries[i] = valueSets[i].toSortedArray();
+			valueSets[i] = null;
+			widths[i] = getWidth(dictionaries[i].length);
+			offset += 4 * (2 + dictionaries[i].length);
+		}
+		long labelsOffset = align(offset);
+		long[] columnOffsets = new long[numAttributes];
+		offset = align(labelsOffset + numRows);
+		for (int i = 0; i < numAttributes; i++) {
+			columnOffsets[i] = offset;
+			offset = align(offset + (long) numRows * widths[i]);
+		}
+
+		RandomAccessFile file = new RandomAccessFile(columnarFileName, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			file.setLength(0);
+
+			// Header and dictionaries.
+			ByteBuffer buffer = ByteBuffer.allocate((int) labelsOffset).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(numRows);
+			buffer.putInt(numAttributes);
+			for (int i = 0; i < numAttributes; i++) {
+				buffer.putInt(widths[i]);
+				buffer.putInt(dictionaries[i].length);
+				for (int value : dictionaries[i]) {
+					buffer.putInt(value);
+				}
+			}
+			buffer.position(buffer.capacity());
+			writeFully(channel, buffer, 0);
+
+			// Second pass: the labels and the codes, block by block.
+			buffer = ByteBuffer.allocate(4 * BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			reader = new RowBlockReader(dataFileName, BLOCK_SIZE);
+			try {
+				ColumnarData block = reader.newBlock();
+				int firstRow = 0;
+				int blockRows;
+				while ((blockRows = reader.readBlock(block)) > 0) {
+					for (int row = 0; row < blockRows; row++) {
+						buffer.put((byte) block.getLabel(row));
+					}
+					writeFully(channel, buffer, labelsOffset + firstRow);
+
+					for (int i = 0; i < numAttributes; i++) {
+						Column column = block.getColumn(i);
+						int[] dictionary = dictionaries[i];
+						for (int row = 0; row < blockRows; row++) {
+							int code = Arrays.binarySearch(dictionary, column.get(row));
+							if (widths[i] == 1) {
+								buffer.put((byte) code);
+							} else if (widths[i] == 2) {
+								buffer.putShort((short) code);
+							} else {
+								buffer.putInt(code);
+							}
+						}
+						writeFully(channel, buffer, columnOffsets[i] + (long) firstRow * widths[i]);
+					}
+					firstRow += blockRows;
+				}
+			} finally {
+				reader.close();
+			}
+			file.setLength(offset);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Open a columnar file written by {@link #convert(String, String)}. The columns
+	 * are mapped rather than read, so the returned data takes about one byte of
+	 * heap per row, for the labels.
+	 *
+	 * @param columnarFileName path to the columnar file.
+	 * @return the {@link ColumnarData}, whose columns are {@link DictionaryColumn}s.
+	 */
+	public static ColumnarData open(String columnarFileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(columnarFileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+
+			ByteBuffer buffer = ByteBuffer.allocate(4 * 4).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, buffer, 0);
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(columnarFileName + " is not a columnar file.");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported columnar file version " + version + ".");
+			}
+			int numRows = buffer.getInt();
+			int numAttributes = buffer.getInt();
+
+			int[][] dictionaries = new int[numAttributes][];
+			int[] widths = new int[numAttributes];
+			long offset = 4 * 4;
+			for (int i = 0; i < numAttributes; i++) {
+				buffer = ByteBuffer.allocate(2 * 4).order(ByteOrder.LITTLE_ENDIAN);
+				readFully(channel, buffer, offset);
+				widths[i] = buffer.getInt();
+				int numCodes = buffer.getInt();
+				offset += 2 * 4;
+
+				buffer = ByteBuffer.allocate(4 * numCodes).order(ByteOrder.LITTLE_ENDIAN);
+				readFully(channel, buffer, offset);
+				dictionaries[i] = new int[numCodes];
+				buffer.asIntBuffer().get(dictionaries[i]);
+				offset += 4 * numCodes;
+			}
+
+			offset = align(offset);
+			byte[] labels = new byte[numRows];
+			readFully(channel, ByteBuffer.wrap(labels), offset);
+			offset = align(offset + numRows);
+
+			Column[] columns = new Column[numAttributes];
+			for (int i = 0; i < numAttributes; i++) {
+				long length = (long) numRows * widths[i];
+				MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length >>> SEGMENT_BITS) + 1)];
+				for (int j = 0; j < segments.length; j++) {
+					long start = (long) j << SEGMENT_BITS;
+					segments[j] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start,
+											Math.min(1L << SEGMENT_BITS, length - start));
+					segments[j].order(ByteOrder.LITTLE_ENDIAN);
+				}
+				columns[i] = new MappedCodes(dictionaries[i], segments, widths[i], numRows);
+				offset = align(offset + length);
+			}
+
+			// The mappings stay valid after the file is closed.
+			return new ColumnarData(labels, columns);
+		} finally {
+			file.close();
+		}
+	}
+}
\ No newline at end of file
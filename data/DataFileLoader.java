@@ -0,0 +1,179 @@
+package data;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a <code>label&lt;TAB&gt;attribute&lt;TAB&gt;...</code> data file into a
+ * {@link ColumnarData} without going through {@link String}s.
+ *
+ * The file is memory-mapped, cut into chunks at line boundaries and every chunk
+ * is parsed on its own thread straight from the mapped bytes into primitive columns.
+ *
+ * @author Tianyi Wang
+ */
+public class DataFileLoader {
+
+	// A single mapping can not exceed 2GB, keep chunks well below that.
+	final private static long MAX_CHUNK_SIZE = 1L << 30;
+
+	// Not worth starting another thread for less than this.
+	final private static long MIN_CHUNK_SIZE = 1L << 20;
+
+	/**
+	 * Parses one mapped chunk of the file.
+	 */
+	private static class ChunkParser implements Callable<ColumnarDataBuilder> {
+		private final MappedByteBuffer buffer;
+		private final long chunkStart;
+
+		public ChunkParser(MappedByteBuffer buffer, long chunkStart) {
+			this.buffer = buffer;
+			this.chunkStart = chunkStart;
+		}
+
+		@Override
+		public ColumnarDataBuilder call() {
+			ColumnarDataBuilder builder = new ColumnarDataBuilder();
+			LineParser parser = new LineParser();
+			int[] row = null;
+
+			int limit = buffer.limit();
+			int pos = 0;
+			while (pos < limit) {
+				pos = parser.parse(buffer, pos, limit, chunkStart);
+
+				int numFields = parser.numFields;
+				if (numFields == 0) {
+					// Empty line.
+					continue;
+				}
+				if (row == null) {
+					row = new int[numFields - 1];
+				}
+				if (numFields - 1 != row.length) {
+					throw new IllegalArgumentException("Expected " + row.length + " attributes but got "
+							+ (numFields - 1) + " near byte " + (chunkStart + pos) + ".");
+				}
+				System.arraycopy(parser.fields, 1, row, 0, row.length);
+				builder.addRow(parser.fields[0], row);
+			}
+
+			return builder;
+		}
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	/**
+	 * Find the first position after <code>position</code> that starts a new line.
+	 *
+	 * @param channel the file.
+	 * @param position where to start looking.
+	 * @param size size of the file.
+	 * @return the start of the next line, or <code>size</code>.
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Load the data file using one thread per available processor.
+	 *
+	 * @param fileName path to the data file.
+	 * @return the loaded {@link ColumnarData}.
+	 */
+	public static ColumnarData load(String fileName) throws IOException {
+		return load(fileName, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Load the data file.
+	 *
+	 * @param fileName path to the data file.
+	 * @param numThreads number of threads used for parsing.
+	 * @return the loaded {@link ColumnarData}.
+	 */
+	public static ColumnarData load(String fileName, int numThreads) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+
+			// Decide how many chunks to cut the file into.
+			long numChunks = Math.max(1, Math.min(numThreads, size / MIN_CHUNK_SIZE));
+			numChunks = Math.max(numChunks, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+			long targetChunkSize = (size + numChunks - 1) / Math.max(1, numChunks);
+
+			ArrayList<ChunkParser> parsers = new ArrayList<ChunkParser>();
+			long start = 0;
+			while (start < size) {
+				long end = start + targetChunkSize >= size ? size
+						: nextLineStart(channel, start + targetChunkSize - 1, size);
+				if (end - start > Integer.MAX_VALUE) {
+					throw new IOException("Line too long near byte " + start + ".");
+				}
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+				parsers.add(new ChunkParser(buffer, start));
+				start = end;
+			}
+
+			ColumnarDataBuilder[] parts = new ColumnarDataBuilder[parsers.size()];
+			if (parsers.size() == 1 || numThreads <= 1) {
+				for (int i = 0; i < parts.length; i++) {
+					parts[i] = parsers.get(i).call();
+				}
+			} else {
+				ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, parsers.size()));
+				try {
+					ArrayList<Future<ColumnarDataBuilder>> futures = new ArrayList<Future<ColumnarDataBuilder>>();
+					for (ChunkParser parser : parsers) {
+						futures.add(executor.submit(parser));
+					}
+					for (int i = 0; i < parts.length; i++) {
+						parts[i] = futures.get(i).get();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while loading " + fileName + ".", e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new IOException("Failed to load " + fileName + ".", e.getCause());
+				} finally {
+					executor.shutdownNow();
+				}
+			}
+
+			return ColumnarDataBuilder.merge(parts);
+		} finally {
+			file.close();
+		}
+	}
+}
\ No newline at end of file
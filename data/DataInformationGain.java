@@ -1,14 +0,0 @@
-package data;
-
-/**
- * @author Tianyi Wang
- */
-public class DataInformationGain {
-	public int numPositive;
-	public int numNegative;
-	
-	public DataInformationGain() {
-		numPositive = 0;
-		numNegative = 0;
-	}
-}
\ No newline at end of file
@@ -1,36 +1,40 @@
 package data;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * @author Tianyi Wang
  */
 public class DataInstance {
 	private int label;					// either +1 or -1.
-	private ArrayList<Integer> attributes;
+	private int[] attributes;
 
 	public DataInstance(String line) {
-		attributes = new ArrayList<Integer>();
-		
 		String[] all = line.split("\t");
 		if (all[0].charAt(0) == '+') {
 			all[0] = all[0].substring(1);
 		}
 		label = Integer.parseInt(all[0]);
-		
+
+		attributes = new int[all.length - 1];
 		for (int i = 1; i < all.length; i++) {
 			if (all[i].charAt(0) == '+') {
 				all[i] = all[i].substring(1);
 			}
-			attributes.add(Integer.parseInt(all[i]));
+			attributes[i - 1] = Integer.parseInt(all[i]);
 		}
 	}
-	
+
+	public DataInstance(int label, int[] attributes) {
+		this.label = label;
+		this.attributes = attributes;
+	}
+
 	public int getLabel() {
 		return label;
 	}
-	
-	public ArrayList<Integer> getAttributes() {
+
+	public int[] getAttributes() {
 		return attributes;
 	}
 
@@ -39,7 +43,7 @@ public class DataInstance {
 	 */
 	@Override
 	public String toString() {
-		return "DataInstance [label=" + label + ", attributes=" + attributes
+		return "DataInstance [label=" + label + ", attributes=" + Arrays.toString(attributes)
 				+ "]";
 	}
 }
\ No newline at end of file
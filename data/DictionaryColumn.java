@@ -0,0 +1,238 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Column} storing, for every row, the dense code 0..k-1 of its value
+ * instead of the value itself. Codes follow the sorted order of the k distinct
+ * values of the column, and the dictionary maps every code back to its value.
+ * The codes are stored as single bits, unsigned bytes, unsigned shorts or ints
+ * depending on k, see {@link BitColumn} for the binary attributes.
+ *
+ * @author Tianyi Wang
+ */
+public abstract class DictionaryColumn extends Column {
+
+	// Columns with a value range up to this size are encoded through a lookup table.
+	final private static int MAX_TABLE_RANGE = 1 << 16;
+
+	private final int[] dictionary;		// the distinct values, sorted; code i stands for dictionary[i].
+
+	DictionaryColumn(int[] dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	/**
+	 * @param values the attribute values.
+	 * @param size number of valid entries in <code>values</code>.
+	 * @param min smallest value.
+	 * @param max largest value.
+	 * @param codes filled with the code of every value.
+	 * @return the sorted distinct values.
+	 */
+	private static int[] encodeWithTable(int[] values, int size, int min, int max, int[] codes) {
+		int[] table = new int[max - min + 1];
+		for (int i = 0; i < size; i++) {
+			table[values[i] - min] = 1;
+		}
+
+		int numCodes = 0;
+		for (int i = 0; i < table.length; i++) {
+			if (table[i] != 0) {
+				table[i] = numCodes++;
+			} else {
+				table[i] = -1;
+			}
+		}
+		int[] dictionary = new int[numCodes];
+		for (int i = 0; i < table.length; i++) {
+			if (table[i] != -1) {
+				dictionary[table[i]] = min + i;
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			codes[i] = table[values[i] - min];
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Same as {@link #encodeWithTable(int[], int, int, int, int[])} for columns whose
+	 * value range is too wide for a table.
+	 */
+	private static int[] encodeWithSort(int[] values, int size, int[] codes) {
+		int[] sorted = Arrays.copyOf(values, size);
+		Arrays.sort(sorted);
+		int numCodes = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1]) {
+				sorted[numCodes++] = sorted[i];
+			}
+		}
+		int[] dictionary = Arrays.copyOf(sorted, numCodes);
+
+		for (int i = 0; i < size; i++) {
+			codes[i] = Arrays.binarySearch(dictionary, values[i]);
+		}
+		return dictionary;
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * @param row index of the row.
+	 * @return the code of the row's value, between 0 and {@link #getNumCodes()}, exclusive.
+	 */
+	public abstract int getCode(int row);
+
+	@Override
+	public int get(int row) {
+		return dictionary[getCode(row)];
+	}
+
+	/**
+	 * @return number of distinct values of the column.
+	 */
+	public int getNumCodes() {
+		return dictionary.length;
+	}
+
+	/**
+	 * @param code a code of this column.
+	 * @return the attribute value the code stands for.
+	 */
+	public int getValue(int code) {
+		return dictionary[code];
+	}
+
+	/**
+	 * @param value an attribute value.
+	 * @return the code of the value, or -1 if the column does not hold the value.
+	 */
+	public int getCodeOf(int value) {
+		int code = Arrays.binarySearch(dictionary, value);
+		return code < 0 ? -1 : code;
+	}
+
+	/**
+	 * Encode the first <code>size</code> values.
+	 *
+	 * @param values the attribute values.
+	 * @param size number of valid entries in <code>values</code>.
+	 * @return the new {@link DictionaryColumn}.
+	 */
+	public static DictionaryColumn encode(int[] values, int size) {
+		int min = 0;
+		int max = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || values[i] < min) {
+				min = values[i];
+			}
+			if (i == 0 || values[i] > max) {
+				max = values[i];
+			}
+		}
+
+		int[] codes = new int[size];
+		int[] dictionary;
+		if ((long) max - min < MAX_TABLE_RANGE || (long) max - min < size) {
+			dictionary = encodeWithTable(values, size, min, max, codes);
+		} else {
+			dictionary = encodeWithSort(values, size, codes);
+		}
+
+		if (dictionary.length <= 2) {
+			return new BitColumn(dictionary, codes, size);
+		} else if (dictionary.length <= 1 << 8) {
+			byte[] column = new byte[size];
+			for (int i = 0; i < size; i++) {
+				column[i] = (byte) codes[i];
+			}
+			return new ByteCodes(dictionary, column);
+		} else if (dictionary.length <= 1 << 16) {
+			short[] column = new short[size];
+			for (int i = 0; i < size; i++) {
+				column[i] = (short) codes[i];
+			}
+			return new ShortCodes(dictionary, column);
+		}
+		return new IntCodes(dictionary, codes);
+	}
+
+	/**
+	 * @param column any {@link Column}.
+	 * @return the column itself if it is already encoded, an encoded copy otherwise.
+	 */
+	public static DictionaryColumn encode(Column column) {
+		if (column instanceof DictionaryColumn) {
+			return (DictionaryColumn) column;
+		}
+
+		int size = column.size();
+		int[] values = new int[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = column.get(i);
+		}
+		return encode(values, size);
+	}
+
+	static final class ByteCodes extends DictionaryColumn {
+		private final byte[] codes;
+
+		ByteCodes(int[] dictionary, byte[] codes) {
+			super(dictionary);
+			this.codes = codes;
+		}
+
+		@Override
+		public int getCode(int row) {
+			return codes[row] & 0xFF;
+		}
+
+		@Override
+		public int size() {
+			return codes.length;
+		}
+	}
+
+	static final class ShortCodes extends DictionaryColumn {
+		private final short[] codes;
+
+		ShortCodes(int[] dictionary, short[] codes) {
+			super(dictionary);
+			this.codes = codes;
+		}
+
+		@Override
+		public int getCode(int row) {
+			return codes[row] & 0xFFFF;
+		}
+
+		@Override
+		public int size() {
+			return codes.length;
+		}
+	}
+
+	static final class IntCodes extends DictionaryColumn {
+		private final int[] codes;
+
+		IntCodes(int[] dictionary, int[] codes) {
+			super(dictionary);
+			this.codes = codes;
+		}
+
+		@Override
+		public int getCode(int row) {
+			return codes[row];
+		}
+
+		@Override
+		public int size() {
+			return codes.length;
+		}
+	}
+}
\ No newline at end of file
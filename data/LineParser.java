@@ -0,0 +1,81 @@
+package data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses one <code>label&lt;TAB&gt;attribute&lt;TAB&gt;...</code> line of signed
+ * integers straight from bytes into a reusable field array.
+ *
+ * @author Tianyi Wang
+ */
+class LineParser {
+	int[] fields;
+	int numFields;
+
+	public LineParser() {
+		this.fields = new int[16];
+		this.numFields = 0;
+	}
+
+	/**
+	 * Parse the line starting at <code>pos</code>. The line ends at a '\n' or at
+	 * <code>limit</code>; a '\r' before the '\n' is ignored. An empty line leaves
+	 * {@link #numFields} at 0.
+	 *
+	 * @param buffer the bytes to parse.
+	 * @param pos where the line starts.
+	 * @param limit end of the bytes that may be read, exclusive.
+	 * @param offset position of <code>buffer</code> in the file, for error messages.
+	 * @return the position after the line.
+	 */
+	public int parse(ByteBuffer buffer, int pos, int limit, long offset) {
+		numFields = 0;
+		while (pos < limit) {
+			byte b = buffer.get(pos);
+			if (b == '\n') {
+				return pos + 1;
+			}
+			if (b == '\r') {
+				pos++;
+				continue;
+			}
+
+			// Parse one signed integer field.
+			boolean negative = false;
+			if (b == '+' || b == '-') {
+				negative = b == '-';
+				pos++;
+			}
+			// Accumulated negatively, as Integer.MIN_VALUE has no positive counterpart.
+			int start = pos;
+			int min = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+			int value = 0;
+			while (pos < limit) {
+				b = buffer.get(pos);
+				if (b < '0' || b > '9') {
+					break;
+				}
+				int digit = b - '0';
+				if (value < min / 10 || value * 10 < min + digit) {
+					throw new NumberFormatException("Malformed integer at byte " + (offset + pos) + ".");
+				}
+				value = value * 10 - digit;
+				pos++;
+			}
+			if (pos == start || (pos < limit && b != '\t' && b != '\n' && b != '\r')) {
+				throw new NumberFormatException("Malformed integer at byte " + (offset + pos) + ".");
+			}
+			if (pos < limit && b == '\t') {
+				pos++;
+			}
+
+			if (numFields == fields.length) {
+				int[] newFields = new int[fields.length * 2];
+				System.arraycopy(fields, 0, newFields, 0, numFields);
+				fields = newFields;
+			}
+			fields[numFields++] = negative ? value : -value;
+		}
+		return pos;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+package data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a data file sequentially in blocks of at most a fixed number of rows,
+ * parsing every block into a reusable {@link ColumnarData}, so memory stays the
+ * same whatever the size of the file.
+ *
+ * @author Tianyi Wang
+ */
+public class RowBlockReader implements Closeable {
+
+	final private static int BUFFER_SIZE = 1 << 20;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int blockSize;
+	private final LineParser parser;
+
+	private ByteBuffer buffer;
+	private long bufferOffset;			// position of the start of buffer in the file.
+	private boolean endOfFile;
+	private int numAttributes;
+
+	/**
+	 * @param fileName path to the data file.
+	 * @param blockSize maximum number of rows per block.
+	 */
+	public RowBlockReader(String fileName, int blockSize) throws IOException {
+		this.file = new RandomAccessFile(fileName, "r");
+		this.channel = file.getChannel();
+		this.blockSize = blockSize;
+		this.parser = new LineParser();
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buffer.limit(0);
+		this.bufferOffset = 0;
+		this.endOfFile = false;
+		this.numAttributes = -1;
+
+		// Look at the first line to learn the number of attributes.
+		while (numAttributes == -1 && hasLine()) {
+			int pos = buffer.position();
+			parser.parse(buffer, pos, lineEnd(), bufferOffset);
+			if (parser.numFields > 0) {
+				numAttributes = parser.numFields - 1;
+			} else {
+				buffer.position(lineEnd() < buffer.limit() ? lineEnd() + 1 : buffer.limit());
+			}
+		}
+		if (numAttributes == -1) {
+			numAttributes = 0;
+		}
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	/**
+	 * @return the position of the '\n' ending the line at the buffer position, or the
+	 *         buffer limit when the line is the last one of the file.
+	 */
+	private int lineEnd() {
+		int limit = buffer.limit();
+		for (int i = buffer.position(); i < limit; i++) {
+			if (buffer.get(i) == '\n') {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Make sure a whole line is in the buffer, reading more of the file if needed.
+	 *
+	 * @return false if the file has been read entirely.
+	 */
+	private boolean hasLine() throws IOException {
+		while (true) {
+			if (buffer.hasRemaining() && (lineEnd() < buffer.limit() || endOfFile)) {
+				return true;
+			}
+			if (endOfFile) {
+				return false;
+			}
+
+			// Keep the partial line, growing the buffer if it fills the buffer entirely.
+			bufferOffset += buffer.position();
+			buffer.compact();
+			if (!buffer.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+			if (channel.read(buffer) < 0) {
+				endOfFile = true;
+			}
+			buffer.flip();
+		}
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	public int getNumAttributes() {
+		return numAttributes;
+	}
+
+	/**
+	 * @return a new empty block able to hold {@link #readBlock(ColumnarData)}'s rows.
+	 */
+	public ColumnarData newBlock() {
+		Column[] columns = new Column[numAttributes];
+		for (int i = 0; i < numAttributes; i++) {
+			columns[i] = new Column.IntColumn(new int[blockSize]);
+		}
+		return new ColumnarData(new byte[blockSize], columns, 0);
+	}
+
+	/**
+	 * Parse the next rows of the file into a block created by {@link #newBlock()},
+	 * replacing its previous content.
+	 *
+	 * @param block the block to fill.
+	 * @return the number of rows read; 0 at the end of the file.
+	 */
+	public synchronized int readBlock(ColumnarData block) throws IOException {
+		int numRows = 0;
+		while (numRows < blockSize && hasLine()) {
+			int pos = buffer.position();
+			int end = lineEnd();
+			parser.parse(buffer, pos, end, bufferOffset);
+			buffer.position(end < buffer.limit() ? end + 1 : end);
+
+			if (parser.numFields == 0) {
+				// Empty line.
+				continue;
+			}
+			if (parser.numFields - 1 != numAttributes) {
+				throw new IllegalArgumentException("Expected " + numAttributes + " attributes but got "
+						+ (parser.numFields - 1) + " near byte " + (bufferOffset + pos) + ".");
+			}
+
+			block.setLabel(numRows, parser.fields[0]);
+			for (int i = 0; i < numAttributes; i++) {
+				((Column.IntColumn) block.getColumn(i)).set(numRows, parser.fields[i + 1]);
+			}
+			numRows++;
+		}
+		block.setNumRows(numRows);
+		return numRows;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
\ No newline at end of file
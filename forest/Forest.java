@@ -1,102 +1,740 @@
 package forest;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
+import data.ColumnarData;
+import data.ColumnarDataBuilder;
 import data.DataInstance;
 
+import metrics.Metrics;
+
+import tree.CompiledTree;
+import tree.ModelFile;
+import tree.Predictor;
+import tree.RowPredictor;
 import tree.Tree;
+import tree.TreeClassGenerator;
+import tree.TreeCompactor;
 import tree.TreeData;
 
 /**
  * @author Tianyi Wang
  */
-public class Forest {
-	final private static int FOREST_K = 50;
+public class Forest implements Predictor {
+	final public static int FOREST_K = 50;
+	
+	// Number of rows voted on by all the trees before moving on to the next rows.
+	final private static int PREDICT_BLOCK_SIZE = 1 << 12;
+	
+	// Votes a row needs before it may be decided by agreement rather than by majority.
+	final public static int MIN_AGREEMENT_VOTES = 5;
+	
+	// Most older rows kept to be mixed with the new rows when the forest is refreshed.
+	final public static int RESERVOIR_SIZE = 1 << 14;
+	
+	// Which trees refresh() replaces.
+	final public static int REPLACE_OLDEST = 0;
+	final public static int REPLACE_WORST = 1;
 	
 	private ArrayList<Tree> forest = null;
 	
-	private Random random;
+	private long seed;
+	
+	// Attributes evaluated at every node of every tree, or Tree.SQRT_ATTRIBUTES.
+	private int numSampledAttributes = Tree.SQRT_ATTRIBUTES;
+	
+	// Share of the votes cast a label needs to stop the voting early, or 0 to only stop
+	// once the majority is certain.
+	private volatile double minAgreement = 0;
+	
+	// Uniform sample of every row the forest was trained on so far, filled by the first refresh().
+	private DataInstance[] reservoir = new DataInstance[0];
+	private long numRowsSeen = 0;
+	
+	// Draws of the reservoir and seeds of the trees built by refresh().
+	private SplittableRandom random;
 
 	/*************************** PRIVATE METHODS ***************************/
 
+	/**
+	 * Build one tree of the forest on a bootstrap sample of the data.
+	 * 
+	 * @param treeData the data used to generate all the trees.
+	 * @param numSampledAttributes attributes evaluated at every node, or {@link Tree#SQRT_ATTRIBUTES}.
+	 * @param treeSeed seed of the random stream owned by this tree.
+	 * @return the new {@link Tree}.
+	 */
+	static Tree generateTree(TreeData treeData, int numSampledAttributes, long treeSeed) {
+		SplittableRandom random = new SplittableRandom(treeSeed);
+		ColumnarData data = treeData.data;
+		int treeSize = treeData.to - treeData.from;
+		
+		// Sample the data: every draw adds one to the weight of the drawn row.
+		int[] weights = new int[data.getNumRows()];
+		int numPositive = 0;
+		int numNegative = 0;
+		for (int j = 0; j < treeSize; j++) {
+			int row = treeData.rows[treeData.from + random.nextInt(treeSize)];
+			weights[row]++;
+			if (data.getLabel(row) == +1) {
+				numPositive++;
+			} else {
+				numNegative++;
+			}
+		}
+		
+		// Build the new TreeData over the same rows, weighted by the sample.
+		TreeData sampleTreeData = new TreeData(data, treeData.rows, treeData.from, treeData.to, weights,
+											numPositive, numNegative, treeData.attributes);
+		
+		// The attributes of every node are drawn from the same stream, after the sample.
+		return new Tree(sampleTreeData, true, numSampledAttributes, random.nextLong(), null);
+	}
+	
+	/**
+	 * Derive the seed of every tree from the master seed. The i-th tree always gets
+	 * the same seed, so the forest does not depend on the order trees are built in.
+	 * 
+	 * @param seed the master seed.
+	 * @param numTrees the number of trees in the forest.
+	 * @return the per-tree seeds.
+	 */
+	static long[] getTreeSeeds(long seed, int numTrees) {
+		SplittableRandom master = new SplittableRandom(seed);
+		long[] treeSeeds = new long[numTrees];
+		for (int i = 0; i < numTrees; i++) {
+			treeSeeds[i] = master.nextLong();
+		}
+		return treeSeeds;
+	}
+
+	/**
+	 * Build one tree per seed on bootstrap samples of the same data.
+	 * 
+	 * @param treeData the data used to generate all the trees.
+	 * @param treeSeeds the seed of every tree.
+	 * @param pool the pool the trees are built in.
+	 * @return the trees, in the order of their seeds.
+	 */
+	private List<Tree> generateTrees(final TreeData treeData, long[] treeSeeds, ForkJoinPool pool) {
+		final int numSampledAttributes = this.numSampledAttributes;
+		
+		List<Callable<Tree>> tasks = new ArrayList<Callable<Tree>>(treeSeeds.length);
+		for (int i = 0; i < treeSeeds.length; i++) {
+			final long treeSeed = treeSeeds[i];
+			tasks.add(new Callable<Tree>() {
+				@Override
+				public Tree call() {
+					return generateTree(treeData, numSampledAttributes, treeSeed);
+				}
+			});
+		}
+		
+		List<Tree> trees = new ArrayList<Tree>(treeSeeds.length);
+		try {
+			for (Future<Tree> future : pool.invokeAll(tasks)) {
+				trees.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while building the forest.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to build the forest.", e.getCause());
+		}
+		return trees;
+	}
+	
 	/**
 	 * Generate the Random Forest (RI).
 	 * 
 	 * @param treeData the data used to generate all the trees.
 	 * @param numTrees the number of trees to generate for this forest.
+	 * @param pool the pool the trees are built in.
 	 */
-	private void generateRandomForest(TreeData treeData, int numTrees) {
-		int treeSize = treeData.data.size();
+	private void generateRandomForest(TreeData treeData, int numTrees, ForkJoinPool pool) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		forest.addAll(generateTrees(treeData, getTreeSeeds(seed, numTrees), pool));
+		if (Metrics.isEnabled()) {
+			Metrics.get().forestBuilt(System.nanoTime() - start);
+		}
 		
-		for (int i = 0; i < numTrees; i++) {
-			// Sample the data.
-			ArrayList<DataInstance> data = new ArrayList<DataInstance>();
-			int numPositive = 0;
-			int numNegative = 0;
-			for (int j = 0; j < treeSize; j++) {
-				DataInstance temp = treeData.data.get(random.nextInt(treeSize));
-				data.add(temp);
-				if (temp.getLabel() == +1) {
-					numPositive++;
+		this.random = new SplittableRandom(~seed);
+	}
+	
+	/**
+	 * Offer every row of the data to the reservoir, keeping a uniform sample of all the
+	 * rows offered so far (Algorithm R).
+	 * 
+	 * @param treeData the rows to offer.
+	 */
+	private void addToReservoir(TreeData treeData) {
+		for (int i = treeData.from; i < treeData.to; i++) {
+			int row = treeData.rows[i];
+			if (numRowsSeen < RESERVOIR_SIZE) {
+				if (numRowsSeen == reservoir.length) {
+					reservoir = Arrays.copyOf(reservoir, Math.min(RESERVOIR_SIZE, Math.max(16, 2 * reservoir.length)));
+				}
+				reservoir[(int) numRowsSeen] = treeData.data.getInstance(row);
+			} else {
+				long slot = random.nextLong(numRowsSeen + 1);
+				if (slot < RESERVOIR_SIZE) {
+					reservoir[(int) slot] = treeData.data.getInstance(row);
+				}
+			}
+			numRowsSeen++;
+		}
+	}
+	
+	/**
+	 * @param numTrees number of trees to pick.
+	 * @param replacement {@link #REPLACE_OLDEST} or {@link #REPLACE_WORST}.
+	 * @param data holds the new rows first, to measure the trees on.
+	 * @param numNewRows number of new rows.
+	 * @param pool the pool the trees are measured in.
+	 * @return the positions of the trees to replace.
+	 */
+	private Integer[] selectTrees(int numTrees, int replacement, final ColumnarData data, final int numNewRows,
+								ForkJoinPool pool) {
+		int numForestTrees = forest.size();
+		final long[] keys = new long[numForestTrees];
+		Integer[] order = new Integer[numForestTrees];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numForestTrees);
+		for (int i = 0; i < numForestTrees; i++) {
+			final int index = i;
+			final Tree tree = forest.get(i);
+			if (replacement == REPLACE_OLDEST) {
+				keys[i] = tree.getBuildTime();
+			} else {
+				// Every new row is out of the bag of the current trees; most errors first.
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						int[] labels = new int[numNewRows];
+						tree.getCompiledTree().predictBatch(data, 0, numNewRows, labels);
+						for (int row = 0; row < numNewRows; row++) {
+							if (labels[row] != data.getLabel(row)) {
+								keys[index]--;
+							}
+						}
+						return null;
+					}
+				});
+			}
+			order[i] = i;
+		}
+		try {
+			for (Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while measuring the forest.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to measure the forest.", e.getCause());
+		}
+		
+		// A stable sort, so that equal trees are replaced in the order of the forest.
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer tree1, Integer tree2) {
+				return Long.compare(keys[tree1], keys[tree2]);
+			}
+		});
+		return Arrays.copyOf(order, numTrees);
+	}
+	
+	/**
+	 * @param positiveVotes number of trees voting +1 so far.
+	 * @param negativeVotes number of trees voting -1 so far.
+	 * @param numTrees number of trees of the forest.
+	 * @param minAgreement see {@link #setMinAgreement(double)}.
+	 * @return whether the remaining trees need not vote.
+	 */
+	private static boolean isDecided(int positiveVotes, int negativeVotes, int numTrees, double minAgreement) {
+		// The leading label can no longer be overtaken; a tie goes to -1.
+		int numRemaining = numTrees - positiveVotes - negativeVotes;
+		if (positiveVotes > negativeVotes + numRemaining || negativeVotes >= positiveVotes + numRemaining) {
+			return true;
+		}
+		
+		int numVotes = positiveVotes + negativeVotes;
+		return minAgreement > 0 && numVotes >= MIN_AGREEMENT_VOTES
+				&& Math.max(positiveVotes, negativeVotes) >= minAgreement * numVotes;
+	}
+	
+	/**
+	 * Label a block of rows tree by tree, so that one tree stays in cache for the whole
+	 * block. A row drops out of the block as soon as its vote is decided.
+	 * 
+	 * @param compiledTrees the trees of the forest.
+	 * @param data the {@link ColumnarData} holding the rows.
+	 * @param from first row to label, inclusive.
+	 * @param to last row to label, exclusive.
+	 * @param labels receives the label of every row at the row's index.
+	 * @param minAgreement see {@link #setMinAgreement(double)}.
+	 */
+	private static void predictBlock(CompiledTree[] compiledTrees, ColumnarData data, int from, int to,
+									int[] labels, double minAgreement) {
+		int numTrees = compiledTrees.length;
+		int[] positiveVotes = new int[to - from];
+		int[] negativeVotes = new int[to - from];
+		
+		// Rows still voting, compacted after every tree.
+		int[] undecided = new int[to - from];
+		for (int row = from; row < to; row++) {
+			undecided[row - from] = row;
+		}
+		int numUndecided = to - from;
+		long numTreesEvaluated = 0;
+		
+		for (int i = 0; i < numTrees && numUndecided > 0; i++) {
+			CompiledTree compiledTree = compiledTrees[i];
+			numTreesEvaluated += numUndecided;
+			int numLeft = 0;
+			for (int j = 0; j < numUndecided; j++) {
+				int row = undecided[j];
+				if (compiledTree.getLabel(data, row) == +1) {
+					positiveVotes[row - from]++;
 				} else {
-					numNegative++;
+					negativeVotes[row - from]++;
+				}
+				if (!isDecided(positiveVotes[row - from], negativeVotes[row - from], numTrees, minAgreement)) {
+					undecided[numLeft++] = row;
 				}
 			}
-			
-			// Build the new TreeData using the sampled data.
-			TreeData sampleTreeData = new TreeData(data, numPositive, numNegative,
-												new HashSet<Integer>(treeData.attributes));
-			
-			Tree curTree = new Tree(sampleTreeData, true);
-			forest.add(curTree);
+			numUndecided = numLeft;
+		}
+		
+		// A tie goes to -1, as in getLabel.
+		for (int row = from; row < to; row++) {
+			labels[row] = positiveVotes[row - from] > negativeVotes[row - from] ? +1 : -1;
+		}
+		if (Metrics.isEnabled()) {
+			Metrics.get().rowsVoted(to - from, numTreesEvaluated);
 		}
 	}
 	
+	private CompiledTree[] getCompiledTrees() {
+		CompiledTree[] compiledTrees = new CompiledTree[forest.size()];
+		for (int i = 0; i < compiledTrees.length; i++) {
+			compiledTrees[i] = forest.get(i).getCompiledTree();
+		}
+		return compiledTrees;
+	}
+	
+	/**
+	 * Ask the trees in order, stopping once the vote is decided. The compiled trees vote,
+	 * so that the forest's latency is not also recorded once per tree.
+	 * 
+	 * @param dataInstance the row to label.
+	 * @return the label voted by the majority of the trees.
+	 */
+	private int vote(DataInstance dataInstance) {
+		int numTrees = forest.size();
+		double minAgreement = this.minAgreement;
+		int positiveVotes = 0;
+		int negativeVotes = 0;
+		for (int i = 0; i < numTrees; i++) {
+			if (forest.get(i).getCompiledTree().getLabel(dataInstance) == +1) {
+				positiveVotes++;
+			} else {
+				negativeVotes++;
+			}
+			if (isDecided(positiveVotes, negativeVotes, numTrees, minAgreement)) {
+				break;
+			}
+		}
+		
+		if (Metrics.isEnabled()) {
+			Metrics.get().rowsVoted(1, positiveVotes + negativeVotes);
+		}
+		return positiveVotes > negativeVotes ? +1 : -1;
+	}
+	
+	/**
+	 * Ask the trees in order, stopping once the vote is decided.
+	 * 
+	 * @param data the {@link ColumnarData} holding the row.
+	 * @param row index of the row to label.
+	 * @return the label voted by the majority of the trees.
+	 */
+	private int vote(ColumnarData data, int row) {
+		int numTrees = forest.size();
+		double minAgreement = this.minAgreement;
+		int positiveVotes = 0;
+		int negativeVotes = 0;
+		for (int i = 0; i < numTrees; i++) {
+			if (forest.get(i).getCompiledTree().getLabel(data, row) == +1) {
+				positiveVotes++;
+			} else {
+				negativeVotes++;
+			}
+			if (isDecided(positiveVotes, negativeVotes, numTrees, minAgreement)) {
+				break;
+			}
+		}
+		
+		if (Metrics.isEnabled()) {
+			Metrics.get().rowsVoted(1, positiveVotes + negativeVotes);
+		}
+		return positiveVotes > negativeVotes ? +1 : -1;
+	}
+	
+	/**
+	 * Assemble a forest from trees built elsewhere, see {@link ForestCoordinator}.
+	 * 
+	 * @param trees the trees, in the order of their seeds.
+	 * @param seed the master seed the trees were built with.
+	 */
+	Forest(List<Tree> trees, long seed) {
+		this.seed = seed;
+		this.forest = new ArrayList<Tree>(trees);
+		this.random = new SplittableRandom(~seed);
+	}
+	
 	/*************************** PUBLIC METHODS ***************************/
 
+	/**
+	 * Build a forest of {@link #FOREST_K} trees using every available processor.
+	 * 
+	 * @param treeData data used to construct the forest.
+	 */
 	public Forest(TreeData treeData) {
-		this.random = new Random();
-
-		forest = new ArrayList<Tree>(FOREST_K);
-
-		generateRandomForest(treeData, FOREST_K);
+		this(treeData, FOREST_K, Runtime.getRuntime().availableProcessors(), System.nanoTime());
 	}
 	
-	public int getLabel(DataInstance dataInstance) {
-		HashMap<Integer, Integer> labelToCount = new HashMap<Integer, Integer>();
-		
-		Iterator<Tree> itr = forest.iterator();
-		while (itr.hasNext()) {
-			Tree curTree = itr.next();
-			
-			int curLabel = curTree.getLabel(dataInstance);
-			
-			if (labelToCount.containsKey(curLabel)) {
-				int oldCount = labelToCount.get(curLabel);
-				oldCount++;
-				labelToCount.put(curLabel, oldCount);
-			} else {
-				labelToCount.put(curLabel, 1);
+	/**
+	 * Build a forest in a private {@link ForkJoinPool}.
+	 * 
+	 * @param treeData data used to construct the forest.
+	 * @param numTrees the number of trees to generate.
+	 * @param parallelism the number of trees built at the same time.
+	 * @param seed the master seed; the same seed always gives the same forest.
+	 */
+	public Forest(TreeData treeData, int numTrees, int parallelism, long seed) {
+		this(treeData, numTrees, parallelism, Tree.SQRT_ATTRIBUTES, seed);
+	}
+	
+	/**
+	 * Build a forest in a private {@link ForkJoinPool}.
+	 * 
+	 * @param treeData data used to construct the forest.
+	 * @param numTrees the number of trees to generate.
+	 * @param parallelism the number of trees built at the same time.
+	 * @param numSampledAttributes attributes evaluated at every node (mtry), or {@link Tree#SQRT_ATTRIBUTES}.
+	 * @param seed the master seed; the same seed always gives the same forest.
+	 */
+	public Forest(TreeData treeData, int numTrees, int parallelism, int numSampledAttributes, long seed) {
+		this.seed = seed;
+		this.numSampledAttributes = numSampledAttributes;
+		this.forest = new ArrayList<Tree>(numTrees);
+		
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			generateRandomForest(treeData, numTrees, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Build a forest in the given pool.
+	 * 
+	 * @param treeData data used to construct the forest.
+	 * @param numTrees the number of trees to generate.
+	 * @param pool the pool the trees are built in.
+	 * @param seed the master seed; the same seed always gives the same forest.
+	 */
+	public Forest(TreeData treeData, int numTrees, ForkJoinPool pool, long seed) {
+		this.seed = seed;
+		this.forest = new ArrayList<Tree>(numTrees);
+		
+		generateRandomForest(treeData, numTrees, pool);
+	}
+	
+	public int getNumTrees() {
+		return forest.size();
+	}
+	
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * @return the trees of the forest, in the order they were generated.
+	 */
+	public List<Tree> getTrees() {
+		return Collections.unmodifiableList(forest);
+	}
+	
+	/**
+	 * Retrain some of the trees on new rows, mixed with the rows of earlier refreshes only,
+	 * see {@link #refresh(TreeData, TreeData, int, int, int)}.
+	 * 
+	 * @param newData the new rows.
+	 * @param numTrees number of trees to replace.
+	 * @param replacement {@link #REPLACE_OLDEST} to replace the trees built first, or
+	 *        {@link #REPLACE_WORST} those with the most errors on the new rows.
+	 * @param parallelism the number of trees built at the same time.
+	 * @return the positions of the replaced trees in {@link #getTrees()}.
+	 */
+	public int[] refresh(TreeData newData, int numTrees, int replacement, int parallelism) {
+		return refresh(newData, null, numTrees, replacement, parallelism);
+	}
+	
+	/**
+	 * Retrain some of the trees on new rows and keep the others as they are, so that the
+	 * cost is that of the replaced trees only. Every replacement is built on a bootstrap
+	 * sample of the new rows mixed with a uniform sample of at most {@link #RESERVOIR_SIZE}
+	 * older rows: those the forest was built on, sampled by the first refresh, and those
+	 * of earlier refreshes. The new rows then join that sample. Not to be called while the
+	 * forest is labeling rows.
+	 * 
+	 * @param newData the new rows.
+	 * @param trainingData the rows the forest was built on, or null when they are not at
+	 *        hand, e.g. for a forest assembled by a {@link ForestCoordinator}; only the first
+	 *        refresh samples them.
+	 * @param numTrees number of trees to replace.
+	 * @param replacement {@link #REPLACE_OLDEST} to replace the trees built first, or
+	 *        {@link #REPLACE_WORST} those with the most errors on the new rows.
+	 * @param parallelism the number of trees built at the same time.
+	 * @return the positions of the replaced trees in {@link #getTrees()}.
+	 */
+	public int[] refresh(TreeData newData, TreeData trainingData, int numTrees, int replacement, int parallelism) {
+		if (numTrees < 0 || numTrees > forest.size()) {
+			throw new IllegalArgumentException("Cannot replace " + numTrees + " of " + forest.size() + " trees.");
+		}
+		if (replacement != REPLACE_OLDEST && replacement != REPLACE_WORST) {
+			throw new IllegalArgumentException("Unknown replacement: " + replacement);
+		}
+		if (trainingData != null && numRowsSeen == 0) {
+			addToReservoir(trainingData);
+		}
+		// The new rows first, then the older ones.
+		ColumnarDataBuilder builder = new ColumnarDataBuilder();
+		for (int i = newData.from; i < newData.to; i++) {
+			builder.addRow(newData.data.getInstance(newData.rows[i]));
+		}
+		int reservoirSize = (int) Math.min(numRowsSeen, RESERVOIR_SIZE);
+		for (int i = 0; i < reservoirSize; i++) {
+			builder.addRow(reservoir[i]);
+		}
+		TreeData mixedData = new TreeData(builder.build());
+		mixedData.attributes = newData.attributes;
+		
+		long[] treeSeeds = new long[numTrees];
+		for (int i = 0; i < numTrees; i++) {
+			treeSeeds[i] = random.nextLong();
+		}
+		Integer[] replaced;
+		List<Tree> trees;
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			replaced = selectTrees(numTrees, replacement, mixedData.data, newData.to - newData.from, pool);
+			trees = generateTrees(mixedData, treeSeeds, pool);
+		} finally {
+			pool.shutdown();
+		}
+		
+		ArrayList<Tree> refreshed = new ArrayList<Tree>(forest);
+		int[] positions = new int[numTrees];
+		for (int i = 0; i < numTrees; i++) {
+			positions[i] = replaced[i];
+			refreshed.set(positions[i], trees.get(i));
+		}
+		forest = refreshed;
+		addToReservoir(newData);
+		return positions;
+	}
+	
+	/**
+	 * Share the equal leaves and subtrees of all the trees, see {@link TreeCompactor}.
+	 * Not to be called while the forest is labeling rows.
+	 * 
+	 * @return the compactor, reporting the nodes and heap before and after.
+	 */
+	public TreeCompactor compact() {
+		TreeCompactor compactor = new TreeCompactor();
+		for (Tree tree : forest) {
+			compactor.compact(tree);
+		}
+		return compactor;
+	}
+	
+	/**
+	 * Write the forest to a model file, see {@link ModelFile}.
+	 * 
+	 * @param fileName path of the file to write.
+	 */
+	public void save(String fileName) throws IOException {
+		ModelFile.write(forest, forest.get(0).getNumAttributes(), fileName);
+	}
+	
+	/**
+	 * Let a row's vote stop early once one label has a large enough share of the votes
+	 * cast so far, after at least {@link #MIN_AGREEMENT_VOTES} votes. The labels may then
+	 * differ from those of the full vote. By default the voting only stops once the
+	 * majority is certain, which always gives the labels of the full vote.
+	 * 
+	 * @param minAgreement share of the votes, above 0.5 and at most 1, or 0 for the exact vote.
+	 */
+	public void setMinAgreement(double minAgreement) {
+		if (minAgreement != 0 && (minAgreement <= 0.5 || minAgreement > 1)) {
+			throw new IllegalArgumentException("The agreement must be in (0.5, 1], or 0: " + minAgreement);
+		}
+		this.minAgreement = minAgreement;
+	}
+	
+	public double getMinAgreement() {
+		return minAgreement;
+	}
+	
+	/**
+	 * Reorder the trees so that those agreeing most often with the whole forest vote
+	 * first, which lets early voting stop sooner. The labels of the exact vote do not
+	 * change. Not to be called while the forest is labeling rows.
+	 * 
+	 * @param data sample rows to measure the agreement on, e.g. the training data.
+	 */
+	public void orderTreesByAgreement(ColumnarData data) {
+		int numTrees = forest.size();
+		int numRows = data.getNumRows();
+		int[][] treeLabels = new int[numTrees][numRows];
+		int[] positiveVotes = new int[numRows];
+		for (int i = 0; i < numTrees; i++) {
+			forest.get(i).getCompiledTree().predictBatch(data, 0, numRows, treeLabels[i]);
+			for (int row = 0; row < numRows; row++) {
+				if (treeLabels[i][row] == +1) {
+					positiveVotes[row]++;
+				}
 			}
 		}
 		
-		int maxCountLabel = -1;
-		int maxCount = -1;
-		for (Map.Entry<Integer, Integer> entry : labelToCount.entrySet()) {
-			Integer label = entry.getKey();
-			Integer count = entry.getValue();
-			
-			if (count > maxCount) {
-				maxCountLabel = label;
-				maxCount = count;
+		final int[] agreements = new int[numTrees];
+		Integer[] order = new Integer[numTrees];
+		for (int i = 0; i < numTrees; i++) {
+			for (int row = 0; row < numRows; row++) {
+				int label = positiveVotes[row] > numTrees - positiveVotes[row] ? +1 : -1;
+				if (treeLabels[i][row] == label) {
+					agreements[i]++;
+				}
 			}
+			order[i] = i;
 		}
-
-		return maxCountLabel;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer tree1, Integer tree2) {
+				return agreements[tree2] - agreements[tree1];
+			}
+		});
+		
+		ArrayList<Tree> ordered = new ArrayList<Tree>(numTrees);
+		for (int i = 0; i < numTrees; i++) {
+			ordered.add(forest.get(order[i]));
+		}
+		forest = ordered;
+	}
+	
+	public int getLabel(DataInstance dataInstance) {
+		if (!Metrics.isEnabled()) {
+			return vote(dataInstance);
+		}
+		long start = System.nanoTime();
+		int label = vote(dataInstance);
+		Metrics.get().forestLabeled(System.nanoTime() - start);
+		return label;
+	}
+	
+	/**
+	 * @param data the {@link ColumnarData} holding the row.
+	 * @param row index of the row to label.
+	 * @return the label voted by the majority of the trees.
+	 */
+	public int getLabel(ColumnarData data, int row) {
+		if (!Metrics.isEnabled()) {
+			return vote(data, row);
+		}
+		long start = System.nanoTime();
+		int label = vote(data, row);
+		Metrics.get().forestLabeled(System.nanoTime() - start);
+		return label;
+	}
+	
+	/**
+	 * Generate a JVM class whose code is the top of every tree of the forest, see {@link TreeClassGenerator}.
+	 * 
+	 * @return the {@link RowPredictor}, giving the same labels as {@link #getLabel(DataInstance)}
+	 *         with the exact vote.
+	 */
+	public RowPredictor generatePredictor() {
+		return TreeClassGenerator.generate(forest);
+	}
+	
+	/**
+	 * Label every row of a block.
+	 * 
+	 * @param data the {@link ColumnarData} holding the rows.
+	 * @return the label voted by the majority of the trees for every row.
+	 */
+	public int[] predictBatch(ColumnarData data) {
+		return predictBatch(data, null);
+	}
+	
+	/**
+	 * Label every row of a block, splitting the block across the threads of a pool.
+	 * 
+	 * @param data the {@link ColumnarData} holding the rows.
+	 * @param pool the pool to label in, or null to label on the calling thread.
+	 * @return the label voted by the majority of the trees for every row.
+	 */
+	public int[] predictBatch(final ColumnarData data, ForkJoinPool pool) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		final CompiledTree[] compiledTrees = getCompiledTrees();
+		final double minAgreement = this.minAgreement;
+		final int numRows = data.getNumRows();
+		final int[] labels = new int[numRows];
+		
+		if (pool == null || numRows <= PREDICT_BLOCK_SIZE) {
+			for (int from = 0; from < numRows; from += PREDICT_BLOCK_SIZE) {
+				predictBlock(compiledTrees, data, from, Math.min(numRows, from + PREDICT_BLOCK_SIZE), labels,
+							minAgreement);
+			}
+		} else {
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected void compute() {
+					ForkJoinTask<?>[] blocks = new ForkJoinTask<?>[(numRows + PREDICT_BLOCK_SIZE - 1) / PREDICT_BLOCK_SIZE];
+					for (int i = 0; i < blocks.length; i++) {
+						final int from = i * PREDICT_BLOCK_SIZE;
+						final int to = Math.min(numRows, from + PREDICT_BLOCK_SIZE);
+						blocks[i] = ForkJoinTask.adapt(new Runnable() {
+							@Override
+							public void run() {
+								predictBlock(compiledTrees, data, from, to, labels, minAgreement);
+							}
+						});
+					}
+					invokeAll(blocks);
+				}
+			});
+		}
+		if (Metrics.isEnabled()) {
+			Metrics.get().batchPredicted(numRows, System.nanoTime() - start);
+		}
+		return labels;
 	}
 }
\ No newline at end of file
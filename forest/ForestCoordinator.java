@@ -0,0 +1,335 @@
+package forest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import tree.Tree;
+
+/**
+ * Builds a {@link Forest} with the help of {@link ForestWorker} processes.
+ *
+ * The coordinator listens on a local port. Every worker connects, loads the same
+ * training data and then builds the trees it is handed, one at a time, sending
+ * every tree back. A tree is identified by its index in the forest and built from
+ * the same per-tree seed as {@link Forest#Forest(tree.TreeData, int, int, int, long)}
+ * would use, so the assembled forest is identical to a single-process one. The
+ * tree of a worker that disconnects, or doesn't answer within the worker timeout,
+ * is handed to another worker. Building fails once no worker is left to build it.
+ *
+ * Protocol, big-endian:
+ * <pre>
+ *   worker:      MAGIC, numRows, numAttributes, numPositive, numNegative
+ *   coordinator: BUILD_TREE, index, seed, mtry  or SHUTDOWN
+ *   worker:      TREE, index, tree              (see Tree#write)
+ * </pre>
+ *
+ * @author Tianyi Wang
+ */
+public class ForestCoordinator implements Closeable {
+
+	final static int MAGIC = 0x46574B52;
+	final static int BUILD_TREE = 1;
+	final static int TREE = 2;
+	final static int SHUTDOWN = 3;
+
+	// How often a connection waiting for a tree to hand out checks whether the forest is done.
+	final private static long POLL_MILLIS = 100;
+
+	// How long a worker may take to answer, e.g. to build a tree, before it is dropped.
+	final public static long DEFAULT_WORKER_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+	/**
+	 * Hands trees out to one worker until the forest is done or the worker goes away.
+	 */
+	private class WorkerConnection extends Thread {
+		private final Socket socket;
+
+		public WorkerConnection(Socket socket) {
+			super("forest-worker-" + socket.getPort());
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+			connected();
+			try {
+				socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, workerTimeoutMillis));
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+				if (in.readInt() != MAGIC) {
+					throw new IOException("Not a forest worker.");
+				}
+				long[] fingerprint = new long[4];
+				for (int i = 0; i < fingerprint.length; i++) {
+					fingerprint[i] = in.readInt();
+				}
+				checkFingerprint(fingerprint);
+
+				while (true) {
+					Integer index = takeTree();
+					if (index == null) {
+						out.writeInt(SHUTDOWN);
+						out.flush();
+						return;
+					}
+
+					try {
+						out.writeInt(BUILD_TREE);
+						out.writeInt(index);
+						out.writeLong(treeSeeds[index]);
+						out.writeInt(numSampledAttributes);
+						out.flush();
+
+						if (in.readInt() != TREE || in.readInt() != index) {
+							throw new IOException("Unexpected answer from the worker.");
+						}
+						treeBuilt(index, Tree.read(in));
+					} catch (IOException e) {
+						// Let another worker build it.
+						pending.addFirst(index);
+						throw e;
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("Lost forest worker " + socket.getRemoteSocketAddress() + ": " + e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Nothing left to do with the socket.
+				}
+				disconnected();
+			}
+		}
+	}
+
+	private final ServerSocket serverSocket;
+	private final long seed;
+	private final long[] treeSeeds;
+	private final int numSampledAttributes;
+	private final Tree[] trees;
+	private final LinkedBlockingDeque<Integer> pending;		// indices of the trees left to hand out.
+	private int numBuilt;									// guarded by this.
+	private long[] fingerprint;								// of the first worker's data, guarded by this.
+	private final ArrayList<Process> localWorkers;			// started by startLocalWorker(), guarded by this.
+	private int numConnected;								// workers connected now, guarded by this.
+	private int numConnections;								// workers connected so far, guarded by this.
+	private volatile long workerTimeoutMillis;
+
+	/**
+	 * @param port the local port to listen on, or 0 for any free port.
+	 * @param numTrees the number of trees of the forest.
+	 * @param seed the master seed; the same seed always gives the same forest.
+	 */
+	public ForestCoordinator(int port, int numTrees, long seed) throws IOException {
+		this(port, numTrees, Tree.SQRT_ATTRIBUTES, seed);
+	}
+
+	/**
+	 * @param port the local port to listen on, or 0 for any free port.
+	 * @param numTrees the number of trees of the forest.
+	 * @param numSampledAttributes attributes evaluated at every node (mtry), or {@link Tree#SQRT_ATTRIBUTES}.
+	 * @param seed the master seed; the same seed always gives the same forest.
+	 */
+	public ForestCoordinator(int port, int numTrees, int numSampledAttributes, long seed) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.seed = seed;
+		this.treeSeeds = Forest.getTreeSeeds(seed, numTrees);
+		this.numSampledAttributes = numSampledAttributes;
+		this.trees = new Tree[numTrees];
+		this.pending = new LinkedBlockingDeque<Integer>();
+		for (int i = 0; i < numTrees; i++) {
+			pending.add(i);
+		}
+		this.numBuilt = 0;
+		this.localWorkers = new ArrayList<Process>();
+		this.workerTimeoutMillis = DEFAULT_WORKER_TIMEOUT_MILLIS;
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	/**
+	 * Every worker must have loaded the same data as the first one.
+	 */
+	private synchronized void checkFingerprint(long[] workerFingerprint) throws IOException {
+		if (fingerprint == null) {
+			fingerprint = workerFingerprint;
+		} else if (!Arrays.equals(fingerprint, workerFingerprint)) {
+			throw new IOException("The worker loaded different data: " + Arrays.toString(workerFingerprint)
+								+ " instead of " + Arrays.toString(fingerprint) + ".");
+		}
+	}
+
+	private synchronized void connected() {
+		numConnected++;
+		numConnections++;
+	}
+
+	private synchronized void disconnected() {
+		numConnected--;
+		notifyAll();
+	}
+
+	/**
+	 * @return whether a worker is connected, or a local worker is running and may still connect.
+	 */
+	private synchronized boolean hasLiveWorker() {
+		if (numConnected > 0) {
+			return true;
+		}
+		if (numConnections >= localWorkers.size()) {
+			return false;
+		}
+		for (Process worker : localWorkers) {
+			if (worker.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized boolean isDone() {
+		return numBuilt == trees.length;
+	}
+
+	/**
+	 * @return the index of the next tree to build, or null once the forest is done.
+	 */
+	private Integer takeTree() throws InterruptedException {
+		while (true) {
+			Integer index = pending.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if (index != null) {
+				return index;
+			}
+			if (isDone()) {
+				return null;
+			}
+		}
+	}
+
+	private synchronized void treeBuilt(int index, Tree tree) {
+		if (trees[index] == null) {
+			trees[index] = tree;
+			numBuilt++;
+			notifyAll();
+		}
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Set how long a worker may take to answer, e.g. to build a tree, before it is dropped
+	 * and its tree handed to another worker. Also how long {@link #build()} waits without
+	 * any worker before failing, unless local workers were started.
+	 *
+	 * @param workerTimeoutMillis the timeout in milliseconds, {@link #DEFAULT_WORKER_TIMEOUT_MILLIS} by default.
+	 */
+	public void setWorkerTimeout(long workerTimeoutMillis) {
+		this.workerTimeoutMillis = workerTimeoutMillis;
+	}
+
+	/**
+	 * @return the number of trees the workers have sent back so far.
+	 */
+	public synchronized int getNumBuilt() {
+		return numBuilt;
+	}
+
+	/**
+	 * Start a {@link ForestWorker} JVM on this machine, with the same class path.
+	 *
+	 * @param dataArgs the worker's data arguments, see {@link ForestWorker#main(String[])}.
+	 * @return the worker process.
+	 */
+	public Process startLocalWorker(String... dataArgs) throws IOException {
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ForestWorker.class.getName());
+		command.add(InetAddress.getLoopbackAddress().getHostAddress());
+		command.add(Integer.toString(getPort()));
+		command.addAll(Arrays.asList(dataArgs));
+		Process worker = new ProcessBuilder(command).inheritIO().start();
+		synchronized (this) {
+			localWorkers.add(worker);
+		}
+		return worker;
+	}
+
+	/**
+	 * Accept workers until every tree has been built. Workers may connect at any time,
+	 * before or during the build, but building fails once no worker is left: at once
+	 * when local workers were started and all of them are gone, otherwise after the
+	 * worker timeout without any worker connected.
+	 *
+	 * @return the forest, identical to a single-process build with the same seed.
+	 */
+	public Forest build() throws IOException {
+		Thread acceptor = new Thread("forest-coordinator") {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						WorkerConnection connection = new WorkerConnection(serverSocket.accept());
+						connection.setDaemon(true);
+						connection.start();
+					}
+				} catch (IOException e) {
+					// The server socket was closed.
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		try {
+			synchronized (this) {
+				long lastLive = System.nanoTime();
+				while (numBuilt < trees.length) {
+					// Waiting with a timeout, as local workers may exit without ever connecting.
+					wait(POLL_MILLIS);
+					if (hasLiveWorker()) {
+						lastLive = System.nanoTime();
+					} else if (!localWorkers.isEmpty()
+							|| System.nanoTime() - lastLive > workerTimeoutMillis * 1000000L) {
+						throw new IOException("No forest worker left, " + (trees.length - numBuilt) + " of "
+											+ trees.length + " trees not built.");
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while building the forest.", e);
+		}
+
+		return new Forest(Arrays.asList(trees), seed);
+	}
+
+	/**
+	 * Stop accepting workers. Connected workers are told to shut down once they ask
+	 * for more work.
+	 */
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+package forest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+import data.ColumnarFile;
+import data.DataFileLoader;
+
+import tree.Tree;
+import tree.TreeData;
+
+/**
+ * A process building trees for a {@link ForestCoordinator}.
+ *
+ * @author Tianyi Wang
+ */
+public class ForestWorker {
+
+	/**
+	 * Usage: ForestWorker host port train_file, or ForestWorker host port -columns
+	 * columnar_file to map a {@link ColumnarFile} instead of loading the training file.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3 && !(args.length == 4 && args[2].equals("-columns"))) {
+			System.out.println("ForestWorker host port train_file");
+			System.out.println("ForestWorker host port -columns columnar_file");
+			return;
+		}
+
+		try {
+			TreeData treeData;
+			if (args.length == 4) {
+				treeData = new TreeData(ColumnarFile.open(args[3]));
+			} else {
+				treeData = new TreeData(DataFileLoader.load(args[2]));
+			}
+			run(args[0], Integer.parseInt(args[1]), treeData);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Build the trees handed out by a coordinator until it says to shut down.
+	 *
+	 * @param host host of the coordinator.
+	 * @param port port of the coordinator.
+	 * @param treeData the training data, the same for every worker.
+	 */
+	public static void run(String host, int port, TreeData treeData) throws IOException {
+		Socket socket = new Socket(host, port);
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			out.writeInt(ForestCoordinator.MAGIC);
+			out.writeInt(treeData.data.getNumRows());
+			out.writeInt(treeData.data.getNumAttributes());
+			out.writeInt(treeData.numPositiveClass);
+			out.writeInt(treeData.numNegativeClass);
+			out.flush();
+
+			while (in.readInt() == ForestCoordinator.BUILD_TREE) {
+				int index = in.readInt();
+				long treeSeed = in.readLong();
+				int numSampledAttributes = in.readInt();
+				Tree tree = Forest.generateTree(treeData, numSampledAttributes, treeSeed);
+
+				out.writeInt(ForestCoordinator.TREE);
+				out.writeInt(index);
+				tree.write(out);
+				out.flush();
+			}
+		} finally {
+			socket.close();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in log-linear buckets of nanoseconds, 16 buckets per power of
+ * two, so percentiles are within about 6% and recording is one atomic increment.
+ * Latencies under 16 nanoseconds are counted exactly, so even a single tree lookup
+ * of about 100 nanoseconds gets a meaningful percentile.
+ *
+ * @author Tianyi Wang
+ */
+public class LatencyHistogram {
+
+	// Buckets per power of two, and its log.
+	final private static int SUB_BUCKETS = 16;
+	final private static int SUB_BUCKET_BITS = 4;
+
+	private final AtomicLongArray counts;
+
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1));
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private static int getBucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int mantissa = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + mantissa;
+	}
+
+	/**
+	 * @return the largest latency counted in a bucket.
+	 */
+	private static long getUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long mantissa = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + mantissa + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * @param nanos a latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		counts.incrementAndGet(getBucket(Math.max(0, nanos)));
+	}
+
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100.
+	 * @return the latency in nanoseconds below which that percentage of the latencies fall.
+	 */
+	public long getPercentileNanos(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return getUpperBound(i);
+			}
+		}
+		return getUpperBound(counts.length() - 1);
+	}
+	
+	/**
+	 * @param percentile between 0 and 100.
+	 * @return the latency in microseconds below which that percentage of the latencies fall.
+	 */
+	public long getPercentileMicros(double percentile) {
+		return getPercentileNanos(percentile) / 1000;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,346 @@
+package metrics;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of training and inference, for the whole JVM.
+ *
+ * Metrics are off unless {@link #enable()} is called, typically once at the start
+ * of a main. While off, the instrumented code only reads {@link #isEnabled()} and
+ * skips its clock reads, so the hot paths cost one well-predicted branch.
+ *
+ * Trees report once when they are built, so building takes no shared lock per node.
+ * Once enabled, the figures are published as the MBean {@link #OBJECT_NAME} and can
+ * be written as JSON with {@link #writeJson(String)}.
+ *
+ * @author Tianyi Wang
+ */
+public class Metrics implements MetricsMBean {
+
+	final public static String OBJECT_NAME = "decisiontree:type=Metrics";
+
+	// Only set before the metrics are used, so a plain read is enough on the hot paths.
+	private static boolean enabled = false;
+
+	private static final Metrics INSTANCE = new Metrics();
+
+	// Training figures, guarded by this.
+	private long treesBuilt;
+	private long nodesCreated;
+	private long leavesCreated;
+	private int maxDepth;
+	private long rowsScanned;
+	private long selectAttributeNanos;
+	private long partitionNanos;
+	private long forestBuildNanos;
+
+	private final LatencyHistogram treeBuildLatencies;
+	private final LatencyHistogram treeLabelLatencies;
+	private final LatencyHistogram forestLabelLatencies;
+	private final LatencyHistogram predictBatchLatencies;
+	private final AtomicLong rowsPredicted;
+	private final AtomicLong rowsVoted;
+	private final AtomicLong treesEvaluated;
+
+	private Metrics() {
+		this.treeBuildLatencies = new LatencyHistogram();
+		this.treeLabelLatencies = new LatencyHistogram();
+		this.forestLabelLatencies = new LatencyHistogram();
+		this.predictBatchLatencies = new LatencyHistogram();
+		this.rowsPredicted = new AtomicLong();
+		this.rowsVoted = new AtomicLong();
+		this.treesEvaluated = new AtomicLong();
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private static long toMillis(long nanos) {
+		return nanos / 1000000;
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Start recording, and publish the figures over JMX.
+	 */
+	public static synchronized void enable() {
+		if (enabled) {
+			return;
+		}
+		enabled = true;
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(INSTANCE, name);
+			}
+		} catch (JMException e) {
+			// Still record, the figures can be written as JSON.
+			System.err.println("Could not publish the metrics over JMX: " + e);
+		}
+	}
+
+	/**
+	 * @return the metrics of this JVM.
+	 */
+	public static Metrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Record a tree once it has been built.
+	 *
+	 * @param numNodes number of decision nodes of the tree.
+	 * @param numLeaves number of leaves of the tree.
+	 * @param depth length of the longest path from the root to a leaf.
+	 * @param numRowsScanned number of row reads made while building the tree.
+	 * @param selectAttributeNanos time spent searching for the splits.
+	 * @param partitionNanos time spent moving the rows to the children.
+	 * @param buildNanos time taken to build the whole tree.
+	 */
+	public synchronized void treeBuilt(long numNodes, long numLeaves, int depth, long numRowsScanned,
+									long selectAttributeNanos, long partitionNanos, long buildNanos) {
+		this.treesBuilt++;
+		this.nodesCreated += numNodes;
+		this.leavesCreated += numLeaves;
+		this.maxDepth = Math.max(maxDepth, depth);
+		this.rowsScanned += numRowsScanned;
+		this.selectAttributeNanos += selectAttributeNanos;
+		this.partitionNanos += partitionNanos;
+		treeBuildLatencies.record(buildNanos);
+	}
+
+	/**
+	 * @param nanos time taken to build all the trees of a forest.
+	 */
+	public synchronized void forestBuilt(long nanos) {
+		this.forestBuildNanos += nanos;
+	}
+
+	/**
+	 * @param nanos time taken by one call labeling a row with one tree.
+	 */
+	public void treeLabeled(long nanos) {
+		treeLabelLatencies.record(nanos);
+	}
+
+	/**
+	 * @param nanos time taken by one call labeling a row with a forest.
+	 */
+	public void forestLabeled(long nanos) {
+		forestLabelLatencies.record(nanos);
+	}
+
+	/**
+	 * @param numRows number of rows of the batch.
+	 * @param nanos time taken to label the whole batch.
+	 */
+	public void batchPredicted(int numRows, long nanos) {
+		rowsPredicted.addAndGet(numRows);
+		predictBatchLatencies.record(nanos);
+	}
+
+	/**
+	 * @param numRows number of rows a forest voted on.
+	 * @param numTreesEvaluated number of trees that voted, summed over the rows.
+	 */
+	public void rowsVoted(int numRows, long numTreesEvaluated) {
+		rowsVoted.addAndGet(numRows);
+		treesEvaluated.addAndGet(numTreesEvaluated);
+	}
+
+	@Override
+	public synchronized long getTreesBuilt() {
+		return treesBuilt;
+	}
+
+	@Override
+	public synchronized long getNodesCreated() {
+		return nodesCreated;
+	}
+
+	@Override
+	public synchronized long getLeavesCreated() {
+		return leavesCreated;
+	}
+
+	@Override
+	public synchronized int getMaxDepth() {
+		return maxDepth;
+	}
+
+	@Override
+	public synchronized long getRowsScanned() {
+		return rowsScanned;
+	}
+
+	@Override
+	public synchronized long getSelectAttributeMillis() {
+		return toMillis(selectAttributeNanos);
+	}
+
+	@Override
+	public synchronized long getPartitionMillis() {
+		return toMillis(partitionNanos);
+	}
+
+	@Override
+	public long getTreeBuildP50Micros() {
+		return treeBuildLatencies.getPercentileMicros(50);
+	}
+
+	@Override
+	public long getTreeBuildP99Micros() {
+		return treeBuildLatencies.getPercentileMicros(99);
+	}
+
+	@Override
+	public synchronized long getForestBuildMillis() {
+		return toMillis(forestBuildNanos);
+	}
+
+	@Override
+	public long getTreeLabelCalls() {
+		return treeLabelLatencies.getCount();
+	}
+
+	@Override
+	public long getTreeLabelP50Nanos() {
+		return treeLabelLatencies.getPercentileNanos(50);
+	}
+
+	@Override
+	public long getTreeLabelP99Nanos() {
+		return treeLabelLatencies.getPercentileNanos(99);
+	}
+
+	@Override
+	public long getForestLabelCalls() {
+		return forestLabelLatencies.getCount();
+	}
+
+	@Override
+	public long getForestLabelP50Nanos() {
+		return forestLabelLatencies.getPercentileNanos(50);
+	}
+
+	@Override
+	public long getForestLabelP99Nanos() {
+		return forestLabelLatencies.getPercentileNanos(99);
+	}
+
+	@Override
+	public long getRowsVoted() {
+		return rowsVoted.get();
+	}
+
+	@Override
+	public long getTreesEvaluated() {
+		return treesEvaluated.get();
+	}
+
+	@Override
+	public double getMeanTreesPerRow() {
+		long numRows = rowsVoted.get();
+		return numRows == 0 ? 0.0 : (double) treesEvaluated.get() / numRows;
+	}
+
+	@Override
+	public long getBatchesPredicted() {
+		return predictBatchLatencies.getCount();
+	}
+
+	@Override
+	public long getRowsPredicted() {
+		return rowsPredicted.get();
+	}
+
+	@Override
+	public long getPredictBatchP50Micros() {
+		return predictBatchLatencies.getPercentileMicros(50);
+	}
+
+	@Override
+	public long getPredictBatchP99Micros() {
+		return predictBatchLatencies.getPercentileMicros(99);
+	}
+
+	@Override
+	public synchronized void reset() {
+		treesBuilt = 0;
+		nodesCreated = 0;
+		leavesCreated = 0;
+		maxDepth = 0;
+		rowsScanned = 0;
+		selectAttributeNanos = 0;
+		partitionNanos = 0;
+		forestBuildNanos = 0;
+		treeBuildLatencies.reset();
+		treeLabelLatencies.reset();
+		forestLabelLatencies.reset();
+		predictBatchLatencies.reset();
+		rowsPredicted.set(0);
+		rowsVoted.set(0);
+		treesEvaluated.set(0);
+	}
+
+	/**
+	 * @return every figure, as one JSON object with a training and an inference section.
+	 */
+	public synchronized String toJson() {
+		return "{\n"
+			+ "  \"training\": {\n"
+			+ "    \"trees_built\": " + getTreesBuilt() + ",\n"
+			+ "    \"nodes_created\": " + getNodesCreated() + ",\n"
+			+ "    \"leaves_created\": " + getLeavesCreated() + ",\n"
+			+ "    \"max_depth\": " + getMaxDepth() + ",\n"
+			+ "    \"rows_scanned\": " + getRowsScanned() + ",\n"
+			+ "    \"select_attribute_ms\": " + getSelectAttributeMillis() + ",\n"
+			+ "    \"partition_ms\": " + getPartitionMillis() + ",\n"
+			+ "    \"tree_build_p50_us\": " + getTreeBuildP50Micros() + ",\n"
+			+ "    \"tree_build_p99_us\": " + getTreeBuildP99Micros() + ",\n"
+			+ "    \"forest_build_ms\": " + getForestBuildMillis() + "\n"
+			+ "  },\n"
+			+ "  \"inference\": {\n"
+			+ "    \"tree_label_calls\": " + getTreeLabelCalls() + ",\n"
+			+ "    \"tree_label_p50_ns\": " + getTreeLabelP50Nanos() + ",\n"
+			+ "    \"tree_label_p99_ns\": " + getTreeLabelP99Nanos() + ",\n"
+			+ "    \"forest_label_calls\": " + getForestLabelCalls() + ",\n"
+			+ "    \"forest_label_p50_ns\": " + getForestLabelP50Nanos() + ",\n"
+			+ "    \"forest_label_p99_ns\": " + getForestLabelP99Nanos() + ",\n"
+			+ "    \"rows_voted\": " + getRowsVoted() + ",\n"
+			+ "    \"trees_evaluated\": " + getTreesEvaluated() + ",\n"
+			+ String.format("    \"mean_trees_per_row\": %.2f,\n", getMeanTreesPerRow())
+			+ "    \"batches_predicted\": " + getBatchesPredicted() + ",\n"
+			+ "    \"rows_predicted\": " + getRowsPredicted() + ",\n"
+			+ "    \"predict_batch_p50_us\": " + getPredictBatchP50Micros() + ",\n"
+			+ "    \"predict_batch_p99_us\": " + getPredictBatchP99Micros() + "\n"
+			+ "  }\n"
+			+ "}\n";
+	}
+
+	/**
+	 * @param fileName path of the JSON file to write, see {@link #toJson()}.
+	 */
+	public void writeJson(String fileName) throws IOException {
+		Writer writer = new FileWriter(fileName);
+		try {
+			writer.write(toJson());
+		} finally {
+			writer.close();
+		}
+	}
+}
\ No newline at end of file
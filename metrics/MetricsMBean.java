@@ -0,0 +1,64 @@
+package metrics;
+
+/**
+ * The figures of {@link Metrics}, as published over JMX.
+ *
+ * @author Tianyi Wang
+ */
+public interface MetricsMBean {
+
+	// Training.
+
+	long getTreesBuilt();
+
+	long getNodesCreated();
+
+	long getLeavesCreated();
+
+	int getMaxDepth();
+
+	long getRowsScanned();
+
+	long getSelectAttributeMillis();
+
+	long getPartitionMillis();
+
+	long getTreeBuildP50Micros();
+
+	long getTreeBuildP99Micros();
+
+	long getForestBuildMillis();
+
+	// Inference.
+
+	long getTreeLabelCalls();
+
+	long getTreeLabelP50Nanos();
+
+	long getTreeLabelP99Nanos();
+
+	long getForestLabelCalls();
+
+	long getForestLabelP50Nanos();
+
+	long getForestLabelP99Nanos();
+
+	long getRowsVoted();
+
+	long getTreesEvaluated();
+
+	double getMeanTreesPerRow();
+
+	long getBatchesPredicted();
+
+	long getRowsPredicted();
+
+	long getPredictBatchP50Micros();
+
+	long getPredictBatchP99Micros();
+
+	/**
+	 * Zero every figure.
+	 */
+	void reset();
+}
\ No newline at end of file
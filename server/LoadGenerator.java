@@ -0,0 +1,133 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import metrics.LatencyHistogram;
+
+/**
+ * Sends the rows of a data file to a {@link PredictionServer} over several
+ * connections at once, one row at a time per connection, and reports the
+ * throughput and the p50/p99 latencies seen by the clients.
+ *
+ * @author Tianyi Wang
+ */
+public class LoadGenerator {
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private static ArrayList<String> readLines(String fileName) throws IOException {
+		ArrayList<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().isEmpty()) {
+					lines.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Usage: LoadGenerator host port test_file num_connections num_requests
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length != 5) {
+			System.out.println("LoadGenerator host port test_file num_connections num_requests");
+			return;
+		}
+
+		final String host = args[0];
+		final int port = Integer.parseInt(args[1]);
+		final ArrayList<String> lines = readLines(args[2]);
+		int numConnections = Integer.parseInt(args[3]);
+		final long numRequests = Long.parseLong(args[4]);
+
+		final LatencyHistogram latencies = new LatencyHistogram();
+		final AtomicLong next = new AtomicLong();
+		final AtomicLong numErrors = new AtomicLong();
+		ArrayList<Thread> clients = new ArrayList<Thread>(numConnections);
+		for (int i = 0; i < numConnections; i++) {
+			clients.add(new Thread("load-client-" + i) {
+				@Override
+				public void run() {
+					try {
+						Socket socket = new Socket(host, port);
+						socket.setTcpNoDelay(true);
+						try {
+							BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+																		StandardCharsets.US_ASCII));
+							Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+																		StandardCharsets.US_ASCII));
+							long request;
+							while ((request = next.getAndIncrement()) < numRequests) {
+								long start = System.nanoTime();
+								out.write(lines.get((int) (request % lines.size())) + "\n");
+								out.flush();
+								String answer = in.readLine();
+								latencies.record(System.nanoTime() - start);
+								if (answer == null) {
+									throw new IOException("The server closed the connection.");
+								} else if (answer.startsWith("ERROR")) {
+									numErrors.incrementAndGet();
+								}
+							}
+						} finally {
+							socket.close();
+						}
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		for (Thread client : clients) {
+			client.start();
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println("Client side:");
+		System.out.println("requests=" + latencies.getCount());
+		System.out.println("errors=" + numErrors.get());
+		System.out.println(String.format("throughput=%.0f/s", latencies.getCount() / seconds));
+		System.out.println("p50_us=" + latencies.getPercentileMicros(50));
+		System.out.println("p99_us=" + latencies.getPercentileMicros(99));
+
+		// The server's own figures.
+		System.out.println("Server side:");
+		Socket socket = new Socket(host, port);
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+																		StandardCharsets.US_ASCII));
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII);
+			out.write("STATS\n");
+			out.flush();
+			String line;
+			while ((line = in.readLine()) != null && !line.isEmpty()) {
+				System.out.println(line);
+			}
+		} finally {
+			socket.close();
+		}
+	}
+}
\ No newline at end of file
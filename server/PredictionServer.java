@@ -0,0 +1,335 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import metrics.LatencyHistogram;
+
+import tree.MappedModel;
+import tree.ModelFile;
+import tree.Predictor;
+
+import data.Column;
+import data.ColumnarData;
+
+/**
+ * Labels rows sent over a plain TCP line protocol with a model loaded once.
+ *
+ * Every line sent is answered by one line, except STATS:
+ * <pre>
+ *   attribute&lt;TAB&gt;attribute...        -&gt;  +1 or -1
+ *   label&lt;TAB&gt;attribute...            -&gt;  +1 or -1, the label is ignored
+ *   STATS                              -&gt;  name=value lines of figures, then an empty line
+ *   anything else                      -&gt;  ERROR and a message
+ * </pre>
+ * Each connection is served by its own thread, a virtual thread when the JVM has
+ * them. Rows from all the connections are gathered into micro-batches, closed when
+ * they reach a maximum size or when their first row has waited a maximum time, and
+ * labeled together with {@link Predictor#predictBatch(ColumnarData)}.
+ *
+ * @author Tianyi Wang
+ */
+public class PredictionServer implements Closeable {
+
+	final public static int DEFAULT_MAX_BATCH_SIZE = 256;
+	final public static long DEFAULT_MAX_WAIT_MICROS = 200;
+
+	/**
+	 * One row waiting for its label.
+	 */
+	private static class Request {
+		final int[] attributes;
+		final long startNanos;
+		final CountDownLatch done;
+		int label;
+
+		public Request(int[] attributes) {
+			this.attributes = attributes;
+			this.startNanos = System.nanoTime();
+			this.done = new CountDownLatch(1);
+		}
+	}
+
+	/**
+	 * Takes micro-batches off the queue and labels them.
+	 */
+	private class Scorer extends Thread {
+		public Scorer(int index) {
+			super("prediction-scorer-" + index);
+		}
+
+		@Override
+		public void run() {
+			ArrayList<Request> batch = new ArrayList<Request>(maxBatchSize);
+			try {
+				while (true) {
+					Request first = requests.take();
+					batch.add(first);
+
+					// Wait for more rows until the batch is full or its first row has waited long enough.
+					long deadline = first.startNanos + maxWaitNanos;
+					while (batch.size() < maxBatchSize) {
+						long wait = deadline - System.nanoTime();
+						Request request = wait > 0 ? requests.poll(wait, TimeUnit.NANOSECONDS) : requests.poll();
+						if (request == null) {
+							break;
+						}
+						batch.add(request);
+					}
+
+					score(batch);
+					batch.clear();
+				}
+			} catch (InterruptedException e) {
+				// The server is closing.
+			}
+		}
+	}
+
+	private final Predictor predictor;
+	private final int numAttributes;
+	private final int maxBatchSize;
+	private final long maxWaitNanos;
+	private final ServerSocket serverSocket;
+	private final BlockingQueue<Request> requests;
+	private final ArrayList<Scorer> scorers;
+	private final ExecutorService connections;
+
+	private final LatencyHistogram latencies;
+	private final AtomicLong numBatches;
+	private final long startNanos;
+
+	/**
+	 * @param predictor the model.
+	 * @param numAttributes number of attributes of a row.
+	 * @param port the port to listen on, or 0 for any free port.
+	 * @param maxBatchSize most rows labeled together.
+	 * @param maxWaitMicros longest time a row waits for others to join its batch.
+	 * @param numScorers number of threads labeling batches.
+	 */
+	public PredictionServer(Predictor predictor, int numAttributes, int port, int maxBatchSize,
+							long maxWaitMicros, int numScorers) throws IOException {
+		this.predictor = predictor;
+		this.numAttributes = numAttributes;
+		this.maxBatchSize = maxBatchSize;
+		this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+		this.serverSocket = new ServerSocket(port);
+		this.requests = new LinkedBlockingQueue<Request>();
+		this.scorers = new ArrayList<Scorer>(numScorers);
+		for (int i = 0; i < numScorers; i++) {
+			scorers.add(new Scorer(i));
+		}
+		this.connections = newConnectionExecutor();
+		this.latencies = new LatencyHistogram();
+		this.numBatches = new AtomicLong();
+		this.startNanos = System.nanoTime();
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	/**
+	 * @return an executor starting a virtual thread per task when the JVM has them
+	 *         (Java 21 and later), a cached pool of platform threads otherwise.
+	 */
+	private static ExecutorService newConnectionExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private void score(ArrayList<Request> batch) {
+		int numRows = batch.size();
+		Column[] columns = new Column[numAttributes];
+		for (int i = 0; i < numAttributes; i++) {
+			int[] values = new int[numRows];
+			for (int row = 0; row < numRows; row++) {
+				values[row] = batch.get(row).attributes[i];
+			}
+			columns[i] = Column.wrap(values);
+		}
+
+		int[] labels;
+		try {
+			labels = predictor.predictBatch(new ColumnarData(new byte[numRows], columns));
+		} catch (RuntimeException e) {
+			// Answer the rows of the batch anyway; 0 stands for a failed row.
+			e.printStackTrace();
+			labels = new int[numRows];
+		}
+		numBatches.incrementAndGet();
+		for (int row = 0; row < numRows; row++) {
+			Request request = batch.get(row);
+			request.label = labels[row];
+			request.done.countDown();
+		}
+	}
+
+	/**
+	 * @param line a row, with or without its label.
+	 * @return the attributes of the row.
+	 */
+	private int[] parseRow(String line) {
+		String[] fields = line.split("\t");
+		int first = fields.length - numAttributes;
+		if (first != 0 && first != 1) {
+			throw new NumberFormatException("Expected " + numAttributes + " attributes but got "
+											+ fields.length + " fields.");
+		}
+		int[] attributes = new int[numAttributes];
+		for (int i = 0; i < numAttributes; i++) {
+			attributes[i] = Integer.parseInt(fields[first + i].trim());
+		}
+		return attributes;
+	}
+
+	private void serve(Socket socket) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+																		StandardCharsets.US_ASCII));
+			Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+																	StandardCharsets.US_ASCII));
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.equals("STATS")) {
+					// The figures end with an empty line.
+					out.write(getStats() + "\n");
+					out.flush();
+					continue;
+				}
+
+				Request request;
+				try {
+					request = new Request(parseRow(line));
+				} catch (NumberFormatException e) {
+					out.write("ERROR " + e.getMessage() + "\n");
+					out.flush();
+					continue;
+				}
+				requests.add(request);
+				request.done.await();
+				out.write(request.label == +1 ? "+1\n" : request.label == -1 ? "-1\n" : "ERROR\n");
+				out.flush();
+				latencies.record(System.nanoTime() - request.startNanos);
+			}
+		} catch (IOException e) {
+			// The client went away.
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Nothing left to do with the socket.
+			}
+		}
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Usage: PredictionServer model_file port [max_batch_size max_wait_micros]
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2 && args.length != 4) {
+			System.out.println("PredictionServer model_file port [max_batch_size max_wait_micros]");
+			return;
+		}
+
+		try {
+			MappedModel model = ModelFile.load(args[0]);
+			int maxBatchSize = args.length == 4 ? Integer.parseInt(args[2]) : DEFAULT_MAX_BATCH_SIZE;
+			long maxWaitMicros = args.length == 4 ? Long.parseLong(args[3]) : DEFAULT_MAX_WAIT_MICROS;
+			final PredictionServer server = new PredictionServer(model, model.getNumAttributes(),
+					Integer.parseInt(args[1]), maxBatchSize, maxWaitMicros,
+					Runtime.getRuntime().availableProcessors());
+			server.start();
+			System.out.println("Serving " + args[0] + " on port " + server.getPort() + ".");
+
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					System.out.print(server.getStats());
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Start the scorers and accept connections on a background thread.
+	 */
+	public void start() {
+		for (Scorer scorer : scorers) {
+			scorer.start();
+		}
+
+		Thread acceptor = new Thread("prediction-server") {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = serverSocket.accept();
+						socket.setTcpNoDelay(true);
+						connections.execute(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						});
+					}
+				} catch (IOException e) {
+					// The server socket was closed.
+				}
+			}
+		};
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return the requests, batches, throughput and p50/p99 latencies since the start,
+	 *         one <code>name=value</code> per line.
+	 */
+	public String getStats() {
+		long numRequests = latencies.getCount();
+		long batches = numBatches.get();
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		return "requests=" + numRequests + "\n"
+			+ "batches=" + batches + "\n"
+			+ String.format("mean_batch_size=%.1f\n", batches == 0 ? 0.0 : (double) numRequests / batches)
+			+ String.format("throughput=%.0f/s\n", numRequests / seconds)
+			+ "p50_us=" + latencies.getPercentileMicros(50) + "\n"
+			+ "p99_us=" + latencies.getPercentileMicros(99) + "\n";
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		for (Scorer scorer : scorers) {
+			scorer.interrupt();
+		}
+		connections.shutdownNow();
+	}
+}
\ No newline at end of file
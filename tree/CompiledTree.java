@@ -0,0 +1,339 @@
+package tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map.Entry;
+
+import data.ColumnarData;
+import data.DataInstance;
+
+/**
+ * A trained {@link Tree} laid out breadth-first in a single <code>int[]</code> and
+ * walked with a plain loop, without allocation, boxing or virtual calls.
+ *
+ * Every node is a record starting at its offset in the array:
+ * <pre>
+ * leaf:     LEAF, label
+ * dense:    attribute, majority label, DENSE, min value, n, n child offsets
+ * sorted:   attribute, majority label, SORTED, k, k sorted values, k child offsets
+ * </pre>
+ * A missing child (offset {@link #NO_CHILD}) falls back to the majority label of the node.
+ *
+ * @author Tianyi Wang
+ */
+public class CompiledTree {
+
+	final static int LEAF = -1;
+	final static int DENSE = 0;
+	final static int SORTED = 1;
+	final static int NO_CHILD = -1;
+
+	private final int[] nodes;
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	CompiledTree(int[] nodes) {
+		this.nodes = nodes;
+	}
+
+	/**
+	 * A dense table is used when it is not much larger than the number of children.
+	 *
+	 * @param values the sorted child values of the node.
+	 * @return whether to lay out the node as a dense table.
+	 */
+	private static boolean useDenseTable(int[] values) {
+		long range = (long) values[values.length - 1] - values[0] + 1;
+		return range <= 2L * values.length + 4;
+	}
+
+	private static int getRecordSize(Tree.TreeNode node) {
+		if (node instanceof Tree.LabelTreeNode) {
+			return 2;
+		}
+		int[] values = ((Tree.DecisionTreeNode) node).childValues;
+		if (values.length == 0) {
+			return 4;
+		}
+		if (useDenseTable(values)) {
+			return 5 + (values[values.length - 1] - values[0] + 1);
+		}
+		return 4 + 2 * values.length;
+	}
+
+	/**
+	 * @param nodes the node array.
+	 * @param o offset of a record.
+	 * @return number of ints of the record.
+	 */
+	private static int getRecordSize(int[] nodes, int o) {
+		if (nodes[o] == LEAF) {
+			return 2;
+		}
+		if (nodes[o + 2] == DENSE) {
+			return 5 + nodes[o + 4];
+		}
+		return 4 + 2 * nodes[o + 3];
+	}
+
+	/**
+	 * Assign every node of a tree its offset in breadth-first order. Nodes reachable
+	 * through several parents get a single offset.
+	 *
+	 * @param root the root of the tree.
+	 * @return the offset of every node's record.
+	 */
+	static IdentityHashMap<Tree.TreeNode, Integer> getOffsets(Tree.TreeNode root) {
+		IdentityHashMap<Tree.TreeNode, Integer> nodeToOffset = new IdentityHashMap<Tree.TreeNode, Integer>();
+		ArrayList<Tree.TreeNode> order = new ArrayList<Tree.TreeNode>();
+		order.add(root);
+		nodeToOffset.put(root, 0);
+		int size = 0;
+		for (int i = 0; i < order.size(); i++) {
+			Tree.TreeNode node = order.get(i);
+			nodeToOffset.put(node, size);
+			size += getRecordSize(node);
+
+			if (node instanceof Tree.DecisionTreeNode) {
+				Tree.DecisionTreeNode decisionNode = (Tree.DecisionTreeNode) node;
+				for (Tree.TreeNode child : decisionNode.childNodes) {
+					if (!nodeToOffset.containsKey(child)) {
+						nodeToOffset.put(child, -1);
+						order.add(child);
+					}
+				}
+			}
+		}
+		return nodeToOffset;
+	}
+
+	/**
+	 * Lay a tree out breadth-first. Nodes reachable through several parents are
+	 * written only once.
+	 *
+	 * @param root the root of the tree.
+	 * @return the {@link CompiledTree}.
+	 */
+	static CompiledTree compile(Tree.TreeNode root) {
+		IdentityHashMap<Tree.TreeNode, Integer> nodeToOffset = getOffsets(root);
+		int size = 0;
+		for (Tree.TreeNode node : nodeToOffset.keySet()) {
+			size += getRecordSize(node);
+		}
+
+		int[] nodes = new int[size];
+		for (Entry<Tree.TreeNode, Integer> entry : nodeToOffset.entrySet()) {
+			Tree.TreeNode node = entry.getKey();
+			int o = entry.getValue();
+
+			if (node instanceof Tree.LabelTreeNode) {
+				nodes[o] = LEAF;
+				nodes[o + 1] = ((Tree.LabelTreeNode) node).label;
+				continue;
+			}
+
+			Tree.DecisionTreeNode decisionNode = (Tree.DecisionTreeNode) node;
+			int[] values = decisionNode.childValues;
+			nodes[o] = decisionNode.attributeIndex;
+			nodes[o + 1] = decisionNode.positiveMajority ? +1 : -1;
+			if (values.length == 0) {
+				nodes[o + 2] = SORTED;
+				nodes[o + 3] = 0;
+			} else if (useDenseTable(values)) {
+				int min = values[0];
+				int range = values[values.length - 1] - min + 1;
+				nodes[o + 2] = DENSE;
+				nodes[o + 3] = min;
+				nodes[o + 4] = range;
+				Arrays.fill(nodes, o + 5, o + 5 + range, NO_CHILD);
+				for (int i = 0; i < values.length; i++) {
+					nodes[o + 5 + values[i] - min] = nodeToOffset.get(decisionNode.childNodes[i]);
+				}
+			} else {
+				int k = values.length;
+				nodes[o + 2] = SORTED;
+				nodes[o + 3] = k;
+				for (int i = 0; i < k; i++) {
+					nodes[o + 4 + i] = values[i];
+					nodes[o + 4 + k + i] = nodeToOffset.get(decisionNode.childNodes[i]);
+				}
+			}
+		}
+
+		return new CompiledTree(nodes);
+	}
+
+	/**
+	 * Find the child of a node for an attribute value.
+	 *
+	 * @param nodes the node array.
+	 * @param o offset of a non-leaf node.
+	 * @param value the attribute value of the row.
+	 * @return the offset of the child, or {@link #NO_CHILD}.
+	 */
+	static int getChild(int[] nodes, int o, int value) {
+		if (nodes[o + 2] == DENSE) {
+			long index = (long) value - nodes[o + 3];
+			if (index < 0 || index >= nodes[o + 4]) {
+				return NO_CHILD;
+			}
+			return nodes[o + 5 + (int) index];
+		}
+
+		// Binary search over the sorted values.
+		int k = nodes[o + 3];
+		int low = o + 4;
+		int high = low + k - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midValue = nodes[mid];
+			if (midValue < value) {
+				low = mid + 1;
+			} else if (midValue > value) {
+				high = mid - 1;
+			} else {
+				return nodes[mid + k];
+			}
+		}
+		return NO_CHILD;
+	}
+
+	/**
+	 * Rebuild the node objects of the tree. Nodes written only once for several
+	 * parents are shared again.
+	 *
+	 * @return the root of the tree.
+	 */
+	Tree.TreeNode decompile() {
+		// The records are back to back, so every node can be created first and linked after.
+		HashMap<Integer, Tree.TreeNode> offsetToNode = new HashMap<Integer, Tree.TreeNode>();
+		for (int o = 0; o < nodes.length; o += getRecordSize(nodes, o)) {
+			if (nodes[o] == LEAF) {
+				offsetToNode.put(o, new Tree.LabelTreeNode(nodes[o + 1]));
+				continue;
+			}
+
+			// Both layouts list the values in increasing order.
+			int[] values;
+			if (nodes[o + 2] == DENSE) {
+				int numChildren = 0;
+				for (int i = 0; i < nodes[o + 4]; i++) {
+					if (nodes[o + 5 + i] != NO_CHILD) {
+						numChildren++;
+					}
+				}
+				values = new int[numChildren];
+				numChildren = 0;
+				for (int i = 0; i < nodes[o + 4]; i++) {
+					if (nodes[o + 5 + i] != NO_CHILD) {
+						values[numChildren++] = nodes[o + 3] + i;
+					}
+				}
+			} else {
+				values = Arrays.copyOfRange(nodes, o + 4, o + 4 + nodes[o + 3]);
+			}
+			offsetToNode.put(o, new Tree.DecisionTreeNode(nodes[o], nodes[o + 1] == +1, values,
+														new Tree.TreeNode[values.length]));
+		}
+
+		for (Entry<Integer, Tree.TreeNode> entry : offsetToNode.entrySet()) {
+			if (!(entry.getValue() instanceof Tree.DecisionTreeNode)) {
+				continue;
+			}
+			Tree.TreeNode[] childNodes = ((Tree.DecisionTreeNode) entry.getValue()).childNodes;
+			int o = entry.getKey();
+			if (nodes[o + 2] == DENSE) {
+				int numChildren = 0;
+				for (int i = 0; i < nodes[o + 4]; i++) {
+					if (nodes[o + 5 + i] != NO_CHILD) {
+						childNodes[numChildren++] = offsetToNode.get(nodes[o + 5 + i]);
+					}
+				}
+			} else {
+				int k = nodes[o + 3];
+				for (int i = 0; i < k; i++) {
+					childNodes[i] = offsetToNode.get(nodes[o + 4 + k + i]);
+				}
+			}
+		}
+		return offsetToNode.get(0);
+	}
+
+	/**
+	 * Label a row starting from any node of the tree, e.g. from generated code that
+	 * only covers the top of the tree, see {@link TreeClassGenerator}.
+	 *
+	 * @param attributes the attribute values of the row.
+	 * @param node offset of the node to start from, see {@link #getOffsets(Tree.TreeNode)}.
+	 * @return the label of the row.
+	 */
+	int getLabel(int[] attributes, int node) {
+		int[] nodes = this.nodes;
+		int o = node;
+		while (nodes[o] != LEAF) {
+			int child = getChild(nodes, o, attributes[nodes[o]]);
+			if (child == NO_CHILD) {
+				// There is no data instance that satisfies the required attribute value.
+				// Use the current node's majority vote to decide the label.
+				return nodes[o + 1];
+			}
+			o = child;
+		}
+		return nodes[o + 1];
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	public int getLabel(int[] attributes) {
+		return getLabel(attributes, 0);
+	}
+
+	public int getLabel(DataInstance dataInstance) {
+		return getLabel(dataInstance.getAttributes());
+	}
+
+	/**
+	 * @param data the {@link ColumnarData} holding the row.
+	 * @param row index of the row to label.
+	 * @return the predicted label of the row.
+	 */
+	public int getLabel(ColumnarData data, int row) {
+		int[] nodes = this.nodes;
+		int o = 0;
+		while (nodes[o] != LEAF) {
+			int child = getChild(nodes, o, data.getValue(row, nodes[o]));
+			if (child == NO_CHILD) {
+				return nodes[o + 1];
+			}
+			o = child;
+		}
+		return nodes[o + 1];
+	}
+
+	/**
+	 * Label a range of rows.
+	 * 
+	 * @param data the {@link ColumnarData} holding the rows.
+	 * @param from first row to label, inclusive.
+	 * @param to last row to label, exclusive.
+	 * @param labels receives the label of every row at the row's index.
+	 */
+	public void predictBatch(ColumnarData data, int from, int to, int[] labels) {
+		for (int row = from; row < to; row++) {
+			labels[row] = getLabel(data, row);
+		}
+	}
+
+	/**
+	 * @return number of ints used by the node records.
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	int[] getNodes() {
+		return nodes;
+	}
+}
\ No newline at end of file
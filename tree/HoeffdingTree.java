@@ -0,0 +1,614 @@
+package tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+
+import data.ColumnarData;
+import data.DataInstance;
+
+/**
+ * A Decision Tree learned online, one row at a time (Hoeffding tree, VFDT).
+ *
+ * Every leaf counts the labels of every value of every attribute not yet split on
+ * along its path. Once it has seen {@link #DEFAULT_GRACE_PERIOD} more rows, the
+ * leaf scores the attributes by gain ratio, as {@link Tree} does, and splits on
+ * the best one as soon as the Hoeffding bound shows with probability 1 - delta
+ * that it beats the runner-up, or that the two are too close to matter. A row
+ * costs one walk from the root and one counter per attribute, whatever the number
+ * of rows seen before.
+ *
+ * The counts of a leaf take memory in the number of distinct values of its
+ * attributes. At most {@link #getMaxActiveLeaves()} leaves count; the others only
+ * keep their label counts, until they become promising enough, by the number of
+ * rows they misclassify, to take the place of an active leaf.
+ *
+ * The tree labels rows while it learns; {@link #toTree()} takes a {@link Tree} of
+ * its current state, to save or to share between threads. Not thread safe.
+ *
+ * @author Tianyi Wang
+ */
+public class HoeffdingTree implements Predictor {
+
+	// Rows a leaf sees between two searches for a split.
+	final public static int DEFAULT_GRACE_PERIOD = 200;
+
+	// Probability of splitting on another attribute than the one the whole stream would choose.
+	final public static double DEFAULT_DELTA = 1e-7;
+
+	// Difference of gain ratio below which the best two attributes are as good as each other.
+	final public static double DEFAULT_TIE_THRESHOLD = 0.05;
+
+	// Rows seen between two choices of the active leaves.
+	final private static int MEMORY_CHECK_PERIOD = 10000;
+
+	/**
+	 * Positive and negative counts by value of one attribute, in an open-addressing
+	 * table. A slot is free while both its counts are 0.
+	 */
+	private static class ValueTable {
+		int[] values;
+		int[] positive;
+		int[] negative;
+		int numValues;
+
+		public ValueTable() {
+			this.values = new int[4];
+			this.positive = new int[4];
+			this.negative = new int[4];
+			this.numValues = 0;
+		}
+
+		private static int getSlot(int[] values, int[] positive, int[] negative, int value) {
+			int mask = values.length - 1;
+			int hash = value * 0x9E3779B9;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while ((positive[slot] != 0 || negative[slot] != 0) && values[slot] != value) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void grow() {
+			int[] oldValues = values;
+			int[] oldPositive = positive;
+			int[] oldNegative = negative;
+			values = new int[2 * oldValues.length];
+			positive = new int[values.length];
+			negative = new int[values.length];
+			for (int i = 0; i < oldValues.length; i++) {
+				if (oldPositive[i] != 0 || oldNegative[i] != 0) {
+					int slot = getSlot(values, positive, negative, oldValues[i]);
+					values[slot] = oldValues[i];
+					positive[slot] = oldPositive[i];
+					negative[slot] = oldNegative[i];
+				}
+			}
+		}
+
+		void add(int value, int label) {
+			int slot = getSlot(values, positive, negative, value);
+			if (positive[slot] == 0 && negative[slot] == 0) {
+				values[slot] = value;
+				numValues++;
+			}
+			if (label == +1) {
+				positive[slot]++;
+			} else {
+				negative[slot]++;
+			}
+			if (2 * numValues > values.length) {
+				grow();
+			}
+		}
+
+		/**
+		 * @return the used slots, by increasing value.
+		 */
+		int[] getSlotsByValue() {
+			long[] keys = new long[numValues];
+			int n = 0;
+			for (int slot = 0; slot < values.length; slot++) {
+				if (positive[slot] != 0 || negative[slot] != 0) {
+					keys[n++] = ((long) values[slot] << 32) | slot;
+				}
+			}
+			Arrays.sort(keys);
+			int[] slots = new int[numValues];
+			for (int i = 0; i < numValues; i++) {
+				slots[i] = (int) keys[i];
+			}
+			return slots;
+		}
+	}
+
+	private abstract static class Node {
+		int numPositive;		// rows that reached the node, by label.
+		int numNegative;
+	}
+
+	/**
+	 * A node split on an attribute, with its children by value in an open-addressing
+	 * table like {@link ValueTable}. A slot is free while its child is null.
+	 */
+	private static class SplitNode extends Node {
+		final int attribute;
+		final BitSet childAttributes;	// attributes split on along the path to the children.
+		int[] values;
+		Node[] children;
+		int numChildren;
+
+		/**
+		 * @param numChildren the number of children the node starts with.
+		 */
+		public SplitNode(int attribute, BitSet childAttributes, int numPositive, int numNegative, int numChildren) {
+			this.attribute = attribute;
+			this.childAttributes = childAttributes;
+			this.numPositive = numPositive;
+			this.numNegative = numNegative;
+			int capacity = Integer.highestOneBit(Math.max(2, 2 * numChildren) - 1) << 1;
+			this.values = new int[capacity];
+			this.children = new Node[capacity];
+			this.numChildren = 0;
+		}
+
+		private static int getSlot(int[] values, Node[] children, int value) {
+			int mask = values.length - 1;
+			int hash = value * 0x9E3779B9;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (children[slot] != null && values[slot] != value) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void grow() {
+			int[] oldValues = values;
+			Node[] oldChildren = children;
+			values = new int[2 * oldValues.length];
+			children = new Node[values.length];
+			for (int i = 0; i < oldValues.length; i++) {
+				if (oldChildren[i] != null) {
+					int slot = getSlot(values, children, oldValues[i]);
+					values[slot] = oldValues[i];
+					children[slot] = oldChildren[i];
+				}
+			}
+		}
+
+		Node getChild(int value) {
+			return children[getSlot(values, children, value)];
+		}
+
+		void setChild(int value, Node child) {
+			int slot = getSlot(values, children, value);
+			if (children[slot] == null) {
+				values[slot] = value;
+				numChildren++;
+			}
+			children[slot] = child;
+			if (2 * numChildren > values.length) {
+				grow();
+			}
+		}
+
+		/**
+		 * @return the used slots, by increasing value.
+		 */
+		int[] getSlotsByValue() {
+			long[] keys = new long[numChildren];
+			int n = 0;
+			for (int slot = 0; slot < values.length; slot++) {
+				if (children[slot] != null) {
+					keys[n++] = ((long) values[slot] << 32) | slot;
+				}
+			}
+			Arrays.sort(keys);
+			int[] slots = new int[numChildren];
+			for (int i = 0; i < numChildren; i++) {
+				slots[i] = (int) keys[i];
+			}
+			return slots;
+		}
+	}
+
+	private static class Leaf extends Node {
+		final SplitNode parent;			// null for the root.
+		final int parentValue;			// attribute value leading from the parent to the leaf.
+		final BitSet usedAttributes;	// attributes split on along the path to the leaf.
+		ValueTable[] tables;			// by attribute, null while the leaf is inactive.
+		int countedPositive;			// rows in the tables, by label.
+		int countedNegative;
+		int rowsSinceSearch;
+		int index;						// in leaves.
+
+		public Leaf(SplitNode parent, int parentValue, BitSet usedAttributes, int numPositive, int numNegative) {
+			this.parent = parent;
+			this.parentValue = parentValue;
+			this.usedAttributes = usedAttributes;
+			this.numPositive = numPositive;
+			this.numNegative = numNegative;
+		}
+
+		/**
+		 * @return the number of rows misclassified by the leaf, the gain of growing it.
+		 */
+		int getPromise() {
+			return Math.min(numPositive, numNegative);
+		}
+	}
+
+	private final int numAttributes;
+	private final int gracePeriod;
+	private final double delta;
+	private final double tieThreshold;
+	private int maxActiveLeaves;
+
+	private Node rootNode;
+	private final ArrayList<Leaf> leaves;
+	private int numActiveLeaves;
+	private int numSplitNodes;
+	private long numRows;
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private void activate(Leaf leaf) {
+		if (leaf.usedAttributes.cardinality() == numAttributes) {
+			// Nothing left to split on.
+			return;
+		}
+		leaf.tables = new ValueTable[numAttributes];
+		for (int attribute = 0; attribute < numAttributes; attribute++) {
+			if (!leaf.usedAttributes.get(attribute)) {
+				leaf.tables[attribute] = new ValueTable();
+			}
+		}
+		leaf.countedPositive = 0;
+		leaf.countedNegative = 0;
+		leaf.rowsSinceSearch = 0;
+		numActiveLeaves++;
+	}
+
+	private void deactivate(Leaf leaf) {
+		leaf.tables = null;
+		numActiveLeaves--;
+	}
+
+	private void removeLeaf(Leaf leaf) {
+		if (leaf.tables != null) {
+			deactivate(leaf);
+		}
+		Leaf last = leaves.remove(leaves.size() - 1);
+		if (last != leaf) {
+			last.index = leaf.index;
+			leaves.set(leaf.index, last);
+		}
+	}
+
+	private Leaf newLeaf(SplitNode parent, int parentValue, BitSet usedAttributes, int numPositive,
+						int numNegative) {
+		Leaf leaf = new Leaf(parent, parentValue, usedAttributes, numPositive, numNegative);
+		leaf.index = leaves.size();
+		leaves.add(leaf);
+		if (numActiveLeaves < maxActiveLeaves) {
+			activate(leaf);
+		}
+		return leaf;
+	}
+
+	/**
+	 * Split a leaf when the Hoeffding bound separates its best attribute from the rest.
+	 *
+	 * @param leaf an active leaf.
+	 */
+	private void attemptSplit(Leaf leaf) {
+		int total = leaf.countedPositive + leaf.countedNegative;
+		if (leaf.countedPositive == 0 || leaf.countedNegative == 0) {
+			return;
+		}
+		SplitScorer.ensureCapacity(total);
+		double weightedEntropy = SplitScorer.getWeightedEntropy(leaf.countedPositive, leaf.countedNegative);
+
+		// Best two attributes, in attribute order so ties go to the first, as in Tree.
+		int bestAttribute = -1;
+		double bestGainRatio = -1;
+		int[] bestSlots = null;
+		double secondGainRatio = 0;
+		for (int attribute = 0; attribute < numAttributes; attribute++) {
+			ValueTable table = leaf.tables[attribute];
+			if (table == null) {
+				continue;
+			}
+			int[] slots = table.getSlotsByValue();
+			double gainRatio = SplitScorer.getGainRatio(weightedEntropy, table.positive, table.negative, slots,
+														slots.length, total);
+			if (gainRatio > bestGainRatio) {
+				secondGainRatio = Math.max(secondGainRatio, bestGainRatio);
+				bestAttribute = attribute;
+				bestGainRatio = gainRatio;
+				bestSlots = slots;
+			} else {
+				secondGainRatio = Math.max(secondGainRatio, gainRatio);
+			}
+		}
+		if (bestAttribute == -1 || bestSlots.length < 2 || bestGainRatio < Tree.GAIN_RATIO_THRESHOLD) {
+			return;
+		}
+
+		// The gain ratio of two labels is taken to range over 1, as the information gain does.
+		double epsilon = Math.sqrt(Math.log(1 / delta) / (2.0 * total));
+		if (bestGainRatio - secondGainRatio <= epsilon && epsilon >= tieThreshold) {
+			return;
+		}
+
+		BitSet childAttributes = (BitSet) leaf.usedAttributes.clone();
+		childAttributes.set(bestAttribute);
+		SplitNode splitNode = new SplitNode(bestAttribute, childAttributes, leaf.numPositive, leaf.numNegative,
+											bestSlots.length);
+		if (leaf.parent == null) {
+			rootNode = splitNode;
+		} else {
+			leaf.parent.setChild(leaf.parentValue, splitNode);
+		}
+		numSplitNodes++;
+		ValueTable table = leaf.tables[bestAttribute];
+		removeLeaf(leaf);
+
+		// The children start with the counts of their value, for their majority label.
+		for (int slot : bestSlots) {
+			int value = table.values[slot];
+			splitNode.setChild(value, newLeaf(splitNode, value, childAttributes, table.positive[slot],
+											table.negative[slot]));
+		}
+	}
+
+	/**
+	 * Keep the tables of the leaves misclassifying the most rows, within
+	 * {@link #getMaxActiveLeaves()}.
+	 */
+	private void chooseActiveLeaves() {
+		ArrayList<Leaf> byPromise = new ArrayList<Leaf>(leaves);
+		Collections.sort(byPromise, new Comparator<Leaf>() {
+			@Override
+			public int compare(Leaf a, Leaf b) {
+				return Integer.compare(b.getPromise(), a.getPromise());
+			}
+		});
+
+		for (int i = maxActiveLeaves; i < byPromise.size(); i++) {
+			if (byPromise.get(i).tables != null) {
+				deactivate(byPromise.get(i));
+			}
+		}
+		for (int i = 0; i < Math.min(maxActiveLeaves, byPromise.size()); i++) {
+			if (byPromise.get(i).tables == null) {
+				activate(byPromise.get(i));
+			}
+		}
+	}
+
+	private int getLabel(int[] attributes) {
+		Node node = rootNode;
+		while (node instanceof SplitNode) {
+			SplitNode splitNode = (SplitNode) node;
+			Node child = splitNode.getChild(attributes[splitNode.attribute]);
+			if (child == null || child.numPositive + child.numNegative == 0) {
+				// No row with the value yet: the majority vote of the node, as in Tree.
+				break;
+			}
+			node = child;
+		}
+		return node.numPositive > node.numNegative ? +1 : -1;
+	}
+
+	/**
+	 * @param node a node of this tree.
+	 * @param positiveMajority the majority label of the node's parent, for empty leaves.
+	 * @return the same subtree, made of {@link Tree}'s nodes.
+	 */
+	private static Tree.TreeNode toTreeNode(Node node, boolean positiveMajority) {
+		if (node.numPositive + node.numNegative > 0) {
+			positiveMajority = node.numPositive > node.numNegative;
+		}
+		if (!(node instanceof SplitNode)) {
+			return new Tree.LabelTreeNode(positiveMajority ? +1 : -1);
+		}
+
+		SplitNode splitNode = (SplitNode) node;
+		int[] slots = splitNode.getSlotsByValue();
+		int[] values = new int[slots.length];
+		Tree.TreeNode[] childNodes = new Tree.TreeNode[slots.length];
+		for (int i = 0; i < slots.length; i++) {
+			values[i] = splitNode.values[slots[i]];
+			childNodes[i] = toTreeNode(splitNode.children[slots[i]], positiveMajority);
+		}
+		return new Tree.DecisionTreeNode(splitNode.attribute, positiveMajority, values, childNodes);
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Learn with the default parameters and no limit on the active leaves.
+	 *
+	 * @param numAttributes number of attributes of every row.
+	 */
+	public HoeffdingTree(int numAttributes) {
+		this(numAttributes, DEFAULT_GRACE_PERIOD, DEFAULT_DELTA, DEFAULT_TIE_THRESHOLD, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param numAttributes number of attributes of every row.
+	 * @param gracePeriod rows a leaf sees between two searches for a split.
+	 * @param delta probability of splitting on another attribute than the best one.
+	 * @param tieThreshold difference of gain ratio below which two attributes are as good.
+	 * @param maxActiveLeaves most leaves counting their attributes' values at once.
+	 */
+	public HoeffdingTree(int numAttributes, int gracePeriod, double delta, double tieThreshold,
+						int maxActiveLeaves) {
+		if (gracePeriod < 1 || delta <= 0 || delta >= 1 || maxActiveLeaves < 0) {
+			throw new IllegalArgumentException("Invalid Hoeffding tree parameters.");
+		}
+		this.numAttributes = numAttributes;
+		this.gracePeriod = gracePeriod;
+		this.delta = delta;
+		this.tieThreshold = tieThreshold;
+		this.maxActiveLeaves = maxActiveLeaves;
+		this.leaves = new ArrayList<Leaf>();
+		this.numActiveLeaves = 0;
+		this.numSplitNodes = 0;
+		this.numRows = 0;
+		this.rootNode = newLeaf(null, 0, new BitSet(numAttributes), 0, 0);
+	}
+
+	/**
+	 * Learn from one row.
+	 *
+	 * @param attributes the attribute values of the row.
+	 * @param label the label of the row, +1 or -1.
+	 */
+	public void update(int[] attributes, int label) {
+		if (attributes.length != numAttributes) {
+			throw new IllegalArgumentException("Expected " + numAttributes + " attributes but got "
+					+ attributes.length + ".");
+		}
+
+		Node node = rootNode;
+		while (true) {
+			if (label == +1) {
+				node.numPositive++;
+			} else {
+				node.numNegative++;
+			}
+			if (!(node instanceof SplitNode)) {
+				break;
+			}
+			SplitNode splitNode = (SplitNode) node;
+			int value = attributes[splitNode.attribute];
+			Node child = splitNode.getChild(value);
+			if (child == null) {
+				// A value the node had not seen when it split.
+				child = newLeaf(splitNode, value, splitNode.childAttributes, 0, 0);
+				splitNode.setChild(value, child);
+			}
+			node = child;
+		}
+
+		Leaf leaf = (Leaf) node;
+		if (leaf.tables != null) {
+			for (int attribute = 0; attribute < numAttributes; attribute++) {
+				ValueTable table = leaf.tables[attribute];
+				if (table != null) {
+					table.add(attributes[attribute], label);
+				}
+			}
+			if (label == +1) {
+				leaf.countedPositive++;
+			} else {
+				leaf.countedNegative++;
+			}
+			if (++leaf.rowsSinceSearch >= gracePeriod) {
+				leaf.rowsSinceSearch = 0;
+				attemptSplit(leaf);
+			}
+		}
+
+		if (++numRows % MEMORY_CHECK_PERIOD == 0 && leaves.size() > maxActiveLeaves) {
+			chooseActiveLeaves();
+		}
+	}
+
+	/**
+	 * Learn from one row.
+	 *
+	 * @param dataInstance the row.
+	 */
+	public void update(DataInstance dataInstance) {
+		update(dataInstance.getAttributes(), dataInstance.getLabel());
+	}
+
+	/**
+	 * Learn from a mini-batch of rows, in order.
+	 *
+	 * @param data the rows.
+	 */
+	public void update(ColumnarData data) {
+		int[] attributes = new int[numAttributes];
+		for (int row = 0; row < data.getNumRows(); row++) {
+			for (int i = 0; i < numAttributes; i++) {
+				attributes[i] = data.getValue(row, i);
+			}
+			update(attributes, data.getLabel(row));
+		}
+	}
+
+	/**
+	 * @return a {@link Tree} labeling rows as this tree does now.
+	 */
+	public Tree toTree() {
+		return new Tree(toTreeNode(rootNode, false), numAttributes);
+	}
+
+	public long getNumRows() {
+		return numRows;
+	}
+
+	public int getNumLeaves() {
+		return leaves.size();
+	}
+
+	public int getNumActiveLeaves() {
+		return numActiveLeaves;
+	}
+
+	public int getNumSplitNodes() {
+		return numSplitNodes;
+	}
+
+	public int getMaxActiveLeaves() {
+		return maxActiveLeaves;
+	}
+
+	/**
+	 * Bound the memory of the tree. Leaves beyond the bound stop counting at the next
+	 * check; 0 stops the tree from growing at all.
+	 *
+	 * @param maxActiveLeaves most leaves counting their attributes' values at once.
+	 */
+	public void setMaxActiveLeaves(int maxActiveLeaves) {
+		if (maxActiveLeaves < 0) {
+			throw new IllegalArgumentException("Invalid number of active leaves " + maxActiveLeaves + ".");
+		}
+		this.maxActiveLeaves = maxActiveLeaves;
+		chooseActiveLeaves();
+	}
+
+	@Override
+	public int getLabel(DataInstance dataInstance) {
+		return getLabel(dataInstance.getAttributes());
+	}
+
+	@Override
+	public int getLabel(ColumnarData data, int row) {
+		Node node = rootNode;
+		while (node instanceof SplitNode) {
+			SplitNode splitNode = (SplitNode) node;
+			Node child = splitNode.getChild(data.getValue(row, splitNode.attribute));
+			if (child == null || child.numPositive + child.numNegative == 0) {
+				break;
+			}
+			node = child;
+		}
+		return node.numPositive > node.numNegative ? +1 : -1;
+	}
+
+	@Override
+	public int[] predictBatch(ColumnarData data) {
+		int[] labels = new int[data.getNumRows()];
+		for (int row = 0; row < labels.length; row++) {
+			labels[row] = getLabel(data, row);
+		}
+		return labels;
+	}
+}
\ No newline at end of file
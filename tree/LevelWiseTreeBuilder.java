@@ -0,0 +1,439 @@
+package tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+
+import data.ColumnarData;
+import data.DictionaryColumn;
+
+import metrics.Metrics;
+
+/**
+ * Builds the same C4.5 tree as {@link Tree#Tree(TreeData, boolean)}, but level by
+ * level instead of depth first.
+ *
+ * Every row remembers which node of the current level it belongs to. For each
+ * level, every column is read once, in row order, to count the values of all the
+ * level's nodes together. Then the splits of the whole level are chosen and the
+ * rows are moved to the children. Columns are only ever streamed through, and the
+ * depth of the tree is not limited by the stack.
+ *
+ * @author Tianyi Wang
+ */
+public class LevelWiseTreeBuilder {
+
+	// Most (node, value) counters held at once; levels needing more take several passes over a column.
+	final private static int MAX_COUNTERS = 1 << 22;
+
+	/**
+	 * A node of the level being grown.
+	 */
+	private static class FrontierNode {
+		int numPositive;
+		int numNegative;
+		BitSet usedAttributes;					// attributes split on along the path to the node.
+		Tree.DecisionTreeNode parent;			// null for the root.
+		int parentValue;						// attribute value leading from the parent to the node.
+		long seed;								// drawing the attributes evaluated when sampling.
+
+		// Best split found so far, with the weights of every value code of its attribute.
+		int bestAttribute;
+		double bestGainRatio;					// its score, see SplitScorer.
+		double bestExactGainRatio;				// its exact gain ratio once computed, otherwise NaN.
+		int[] bestCodes;
+		int[] bestPositive;
+		int[] bestNegative;
+
+		public FrontierNode(int numPositive, int numNegative, BitSet usedAttributes,
+							Tree.DecisionTreeNode parent, int parentValue, long seed) {
+			this.numPositive = numPositive;
+			this.numNegative = numNegative;
+			this.usedAttributes = usedAttributes;
+			this.parent = parent;
+			this.parentValue = parentValue;
+			this.seed = seed;
+			this.bestAttribute = -1;
+			this.bestGainRatio = -1;
+			this.bestExactGainRatio = Double.NaN;
+		}
+		
+		/**
+		 * @return the exact gain ratio of the best split found so far.
+		 */
+		double getBestExactGainRatio() {
+			if (Double.isNaN(bestExactGainRatio)) {
+				int[] counters = new int[bestCodes.length];
+				for (int i = 0; i < counters.length; i++) {
+					counters[i] = i;
+				}
+				bestExactGainRatio = SplitScorer.getExactGainRatio(SplitScorer.getInfo(numPositive, numNegative),
+																bestPositive, bestNegative, counters, counters.length,
+																numPositive + numNegative);
+			}
+			return bestExactGainRatio;
+		}
+	}
+
+	private final ColumnarData data;
+	private final int[] rows;					// rows taking part in the tree, in increasing order.
+	private final int[] weights;				// weight of every row of data, or null for unit weights.
+	private final int[] candidateAttributes;
+	private final DictionaryColumn[] columns;	// encoded candidate attributes, by attribute index.
+	private final int numPositive;
+	private final int numNegative;
+	private final boolean randomlySelectAttri;
+	private final int numSampledAttributes;		// attributes evaluated at every node, or 0 for all of them.
+	private final long seed;
+	private final TreeData treeData;
+
+	private int[] nodeOfRow;					// index of every row's node in the current level, or -1.
+	private Tree.TreeNode rootNode;
+
+	// Build figures reported to Metrics; the phases are only timed while metrics are enabled.
+	private long rowsScanned;
+	private long selectAttributeNanos;
+	private long partitionNanos;
+
+	/**
+	 * @param treeData data used to construct the Decision Tree.
+	 * @param randomlySelectAttri whether or not to randomly select attribute when splitting.
+	 */
+	public LevelWiseTreeBuilder(TreeData treeData, boolean randomlySelectAttri) {
+		this(treeData, randomlySelectAttri, Tree.SQRT_ATTRIBUTES, 0L);
+	}
+
+	/**
+	 * Builds the same tree as {@link Tree#Tree(TreeData, boolean, int, long, java.util.concurrent.ForkJoinPool)}.
+	 *
+	 * @param treeData data used to construct the Decision Tree.
+	 * @param randomlySelectAttri whether or not to randomly select attribute when splitting.
+	 * @param numSampledAttributes number of attributes evaluated at every node when randomly
+	 *        selecting attributes, or {@link Tree#SQRT_ATTRIBUTES}.
+	 * @param seed the seed of the samples.
+	 */
+	public LevelWiseTreeBuilder(TreeData treeData, boolean randomlySelectAttri, int numSampledAttributes,
+								long seed) {
+		this.treeData = treeData;
+		this.data = treeData.data;
+		this.weights = treeData.weights;
+		this.numPositive = treeData.numPositiveClass;
+		this.numNegative = treeData.numNegativeClass;
+		this.randomlySelectAttri = randomlySelectAttri;
+		this.seed = seed;
+
+		// Rows that were not sampled do not take part in the tree at all.
+		int[] sampledRows = new int[treeData.to - treeData.from];
+		int numRows = 0;
+		for (int i = treeData.from; i < treeData.to; i++) {
+			int row = treeData.rows[i];
+			if (weights == null || weights[row] > 0) {
+				sampledRows[numRows++] = row;
+			}
+		}
+		this.rows = Arrays.copyOf(sampledRows, numRows);
+		Arrays.sort(rows);
+
+		// Same attribute order as the recursive builder, so that ties are broken the same way.
+		this.candidateAttributes = new int[treeData.attributes.size()];
+		int numCandidates = 0;
+		Iterator<Integer> itr = treeData.attributes.iterator();
+		while (itr.hasNext()) {
+			candidateAttributes[numCandidates++] = itr.next();
+		}
+		this.numSampledAttributes = Tree.getNumSampledAttributes(randomlySelectAttri, numSampledAttributes,
+																candidateAttributes.length);
+		SplitScorer.ensureCapacity(numPositive + numNegative);
+		this.columns = new DictionaryColumn[data.getNumAttributes()];
+		for (int attribute : candidateAttributes) {
+			columns[attribute] = DictionaryColumn.encode(data.getColumn(attribute));
+		}
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private void attach(FrontierNode node, Tree.TreeNode treeNode) {
+		if (node.parent == null) {
+			rootNode = treeNode;
+		} else {
+			node.parent.addChildNode(node.parentValue, treeNode);
+		}
+	}
+
+	/**
+	 * @param node a node of the level.
+	 * @param treeHeight the depth of the level.
+	 * @return the leaf the node turns into without searching for a split, or null.
+	 */
+	private Tree.LabelTreeNode getLeaf(FrontierNode node, int treeHeight) {
+		if (node.numPositive == 0) {
+			return new Tree.LabelTreeNode(-1);
+		} else if (node.numNegative == 0) {
+			return new Tree.LabelTreeNode(+1);
+		}
+
+		// Every level of the current path has used up one attribute.
+		if (candidateAttributes.length - treeHeight == 0) {
+			return new Tree.LabelTreeNode(node.numPositive > node.numNegative ? +1 : -1);
+		}
+		return null;
+	}
+
+	/**
+	 * Draw the attributes a node evaluates, the same as the recursive builder.
+	 *
+	 * @param node a node of the level.
+	 * @return the attributes, or null to evaluate every attribute not yet split on.
+	 */
+	private BitSet sampleAttributes(FrontierNode node) {
+		if (numSampledAttributes == 0) {
+			return null;
+		}
+		int[] attributes = new int[candidateAttributes.length];
+		int numAttributes = 0;
+		for (int attribute : candidateAttributes) {
+			if (!node.usedAttributes.get(attribute)) {
+				attributes[numAttributes++] = attribute;
+			}
+		}
+		numAttributes = Tree.sampleAttributes(attributes, numAttributes, numSampledAttributes, node.seed);
+
+		BitSet sampledAttributes = new BitSet(data.getNumAttributes());
+		for (int i = 0; i < numAttributes; i++) {
+			sampledAttributes.set(attributes[i]);
+		}
+		return sampledAttributes;
+	}
+
+	/**
+	 * Find the best split of every node of the level, one pass over each column.
+	 *
+	 * @param level the nodes to split; the rows of node i have i in {@link #nodeOfRow}.
+	 */
+	private void searchSplits(ArrayList<FrontierNode> level) {
+		int numNodes = level.size();
+		double[] weightedEntropies = new double[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			weightedEntropies[i] = SplitScorer.getWeightedEntropy(level.get(i).numPositive, level.get(i).numNegative);
+		}
+		boolean[] counted = new boolean[numNodes];
+		BitSet[] sampledAttributes = new BitSet[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			sampledAttributes[i] = sampleAttributes(level.get(i));
+		}
+
+		for (int attribute : candidateAttributes) {
+			DictionaryColumn column = columns[attribute];
+			int numCodes = column.getNumCodes();
+			boolean anyCounted = false;
+			for (int i = 0; i < numNodes; i++) {
+				if (sampledAttributes[i] == null) {
+					counted[i] = !level.get(i).usedAttributes.get(attribute);
+				} else {
+					counted[i] = sampledAttributes[i].get(attribute);
+				}
+				anyCounted |= counted[i];
+			}
+			if (!anyCounted) {
+				continue;
+			}
+
+			// The counters of node i, value code c are at (i - first) * numCodes + c.
+			int nodesPerPass = Math.max(1, MAX_COUNTERS / numCodes);
+			for (int first = 0; first < numNodes; first += nodesPerPass) {
+				int last = Math.min(numNodes, first + nodesPerPass);
+				int[] positive = new int[(last - first) * numCodes];
+				int[] negative = new int[(last - first) * numCodes];
+
+				rowsScanned += rows.length;
+				for (int row : rows) {
+					int node = nodeOfRow[row];
+					if (node < first || node >= last || !counted[node]) {
+						continue;
+					}
+					int counter = (node - first) * numCodes + column.getCode(row);
+					int weight = weights == null ? 1 : weights[row];
+					if (data.getLabel(row) == +1) {
+						positive[counter] += weight;
+					} else {
+						negative[counter] += weight;
+					}
+				}
+
+				int[] counters = new int[numCodes];
+				for (int node = first; node < last; node++) {
+					if (!counted[node]) {
+						continue;
+					}
+					FrontierNode frontierNode = level.get(node);
+					int base = (node - first) * numCodes;
+					int numCounters = 0;
+					for (int code = 0; code < numCodes; code++) {
+						if (positive[base + code] != 0 || negative[base + code] != 0) {
+							counters[numCounters++] = base + code;
+						}
+					}
+
+					int totalCount = frontierNode.numPositive + frontierNode.numNegative;
+					double gainRatio = SplitScorer.getGainRatio(weightedEntropies[node], positive, negative, counters,
+															numCounters, totalCount);
+					boolean isBest;
+					double exactGainRatio = Double.NaN;
+					if (frontierNode.bestAttribute == -1
+							|| gainRatio > frontierNode.bestGainRatio + SplitScorer.TIE_TOLERANCE) {
+						isBest = true;
+					} else if (gainRatio < frontierNode.bestGainRatio - SplitScorer.TIE_TOLERANCE) {
+						isBest = false;
+					} else {
+						// Scores this close are told apart by the exact gain ratios, as they always were.
+						exactGainRatio = SplitScorer.getExactGainRatio(
+								SplitScorer.getInfo(frontierNode.numPositive, frontierNode.numNegative), positive,
+								negative, counters, numCounters, totalCount);
+						isBest = exactGainRatio > frontierNode.getBestExactGainRatio();
+					}
+					if (isBest) {
+						frontierNode.bestAttribute = attribute;
+						frontierNode.bestGainRatio = gainRatio;
+						frontierNode.bestExactGainRatio = exactGainRatio;
+						frontierNode.bestCodes = new int[numCounters];
+						frontierNode.bestPositive = new int[numCounters];
+						frontierNode.bestNegative = new int[numCounters];
+						for (int i = 0; i < numCounters; i++) {
+							frontierNode.bestCodes[i] = counters[i] - base;
+							frontierNode.bestPositive[i] = positive[counters[i]];
+							frontierNode.bestNegative[i] = negative[counters[i]];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * @return the tree, the same as the recursive builder's.
+	 */
+	public Tree build() {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		nodeOfRow = new int[data.getNumRows()];
+		Arrays.fill(nodeOfRow, -1);
+		for (int row : rows) {
+			nodeOfRow[row] = 0;
+		}
+
+		ArrayList<FrontierNode> frontier = new ArrayList<FrontierNode>();
+		frontier.add(new FrontierNode(numPositive, numNegative, new BitSet(data.getNumAttributes()), null, 0, seed));
+
+		for (int treeHeight = 0; !frontier.isEmpty(); treeHeight++) {
+			// Settle the nodes that are leaves without any search.
+			ArrayList<FrontierNode> level = new ArrayList<FrontierNode>();
+			int[] levelIndex = new int[frontier.size()];
+			for (int i = 0; i < frontier.size(); i++) {
+				FrontierNode node = frontier.get(i);
+				Tree.LabelTreeNode leaf = getLeaf(node, treeHeight);
+				if (leaf != null) {
+					attach(node, leaf);
+					levelIndex[i] = -1;
+				} else {
+					levelIndex[i] = level.size();
+					level.add(node);
+				}
+			}
+			if (level.isEmpty()) {
+				break;
+			}
+			for (int row : rows) {
+				if (nodeOfRow[row] != -1) {
+					nodeOfRow[row] = levelIndex[nodeOfRow[row]];
+				}
+			}
+
+			long phaseStart = Metrics.isEnabled() ? System.nanoTime() : 0;
+			searchSplits(level);
+			if (Metrics.isEnabled()) {
+				long now = System.nanoTime();
+				selectAttributeNanos += now - phaseStart;
+				phaseStart = now;
+			}
+
+			// Split the nodes, or prune them, and lay out the next level.
+			ArrayList<FrontierNode> nextFrontier = new ArrayList<FrontierNode>();
+			int[] firstChild = new int[level.size()];
+			for (int i = 0; i < level.size(); i++) {
+				FrontierNode node = level.get(i);
+				boolean positiveMajority = node.numPositive > node.numNegative;
+				if (node.bestAttribute == -1) {
+					throw new IllegalStateException("No splitting attribute was selected for a node with "
+							+ node.numPositive + " positive and " + node.numNegative + " negative rows.");
+				}
+
+				// Only the Decision Tree is pruned, see Tree.
+				// Compared exactly when the score is that close to the threshold.
+				double gainRatio = node.bestGainRatio;
+				if (Math.abs(gainRatio - Tree.GAIN_RATIO_THRESHOLD) <= SplitScorer.TIE_TOLERANCE) {
+					gainRatio = node.getBestExactGainRatio();
+				}
+				if (!randomlySelectAttri && gainRatio < Tree.GAIN_RATIO_THRESHOLD) {
+					attach(node, new Tree.LabelTreeNode(positiveMajority ? +1 : -1));
+					firstChild[i] = -1;
+					continue;
+				}
+
+				// Codes follow the order of the values; the children are attached by the next level.
+				DictionaryColumn column = columns[node.bestAttribute];
+				int[] values = new int[node.bestCodes.length];
+				for (int j = 0; j < values.length; j++) {
+					values[j] = column.getValue(node.bestCodes[j]);
+				}
+				Tree.DecisionTreeNode decisionNode = new Tree.DecisionTreeNode(node.bestAttribute, positiveMajority,
+																values, new Tree.TreeNode[values.length]);
+				attach(node, decisionNode);
+				firstChild[i] = nextFrontier.size();
+				BitSet usedAttributes = (BitSet) node.usedAttributes.clone();
+				usedAttributes.set(node.bestAttribute);
+				for (int j = 0; j < values.length; j++) {
+					int value = values[j];
+					nextFrontier.add(new FrontierNode(node.bestPositive[j], node.bestNegative[j], usedAttributes,
+													decisionNode, value, Tree.getChildSeed(node.seed, value)));
+				}
+			}
+
+			// Move every row to its child.
+			for (int row : rows) {
+				int node = nodeOfRow[row];
+				if (node == -1) {
+					continue;
+				}
+				if (firstChild[node] == -1) {
+					nodeOfRow[row] = -1;
+					continue;
+				}
+				FrontierNode frontierNode = level.get(node);
+				int code = columns[frontierNode.bestAttribute].getCode(row);
+				nodeOfRow[row] = firstChild[node] + Arrays.binarySearch(frontierNode.bestCodes, code);
+			}
+			rowsScanned += rows.length;
+			if (Metrics.isEnabled()) {
+				partitionNanos += System.nanoTime() - phaseStart;
+			}
+
+			// The split statistics are not needed any more.
+			for (FrontierNode node : level) {
+				node.bestCodes = null;
+				node.bestPositive = null;
+				node.bestNegative = null;
+			}
+			frontier = nextFrontier;
+		}
+
+		nodeOfRow = null;
+		if (Metrics.isEnabled()) {
+			Tree.recordBuild(rootNode, rowsScanned, selectAttributeNanos, partitionNanos, System.nanoTime() - start);
+		}
+		Tree tree = new Tree(rootNode, data.getNumAttributes());
+		tree.setBuilt(treeData);
+		return tree;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,166 @@
+package tree;
+
+import java.nio.IntBuffer;
+
+import data.ColumnarData;
+import data.DataInstance;
+
+/**
+ * A model loaded by {@link ModelFile}, predicting directly from the mapped file
+ * without rebuilding any tree nodes. A model of several trees labels a row by
+ * majority vote, ties going to -1 as in the forest.
+ *
+ * @author Tianyi Wang
+ */
+public class MappedModel implements Predictor {
+	private final IntBuffer payload;
+	private final int numAttributes;
+	private final int[] treeOffsets;
+
+	MappedModel(IntBuffer payload, int numAttributes, int numTrees) {
+		this.payload = payload;
+		this.numAttributes = numAttributes;
+		this.treeOffsets = new int[numTrees];
+		for (int i = 0; i < numTrees; i++) {
+			treeOffsets[i] = payload.get(i);
+		}
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	/**
+	 * Same as {@link CompiledTree#getChild(int[], int, int)}, over the mapped records.
+	 * 
+	 * @return the offset of the child relative to the start of its tree, or {@link CompiledTree#NO_CHILD}.
+	 */
+	private static int getChild(IntBuffer nodes, int o, int value) {
+		if (nodes.get(o + 2) == CompiledTree.DENSE) {
+			long index = (long) value - nodes.get(o + 3);
+			if (index < 0 || index >= nodes.get(o + 4)) {
+				return CompiledTree.NO_CHILD;
+			}
+			return nodes.get(o + 5 + (int) index);
+		}
+
+		int k = nodes.get(o + 3);
+		int low = o + 4;
+		int high = low + k - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midValue = nodes.get(mid);
+			if (midValue < value) {
+				low = mid + 1;
+			} else if (midValue > value) {
+				high = mid - 1;
+			} else {
+				return nodes.get(mid + k);
+			}
+		}
+		return CompiledTree.NO_CHILD;
+	}
+
+	private int getTreeLabel(int tree, int[] attributes) {
+		IntBuffer nodes = payload;
+		int base = treeOffsets[tree];
+		int o = base;
+		while (nodes.get(o) != CompiledTree.LEAF) {
+			int child = getChild(nodes, o, attributes[nodes.get(o)]);
+			if (child == CompiledTree.NO_CHILD) {
+				return nodes.get(o + 1);
+			}
+			o = base + child;
+		}
+		return nodes.get(o + 1);
+	}
+
+	private int getTreeLabel(int tree, ColumnarData data, int row) {
+		IntBuffer nodes = payload;
+		int base = treeOffsets[tree];
+		int o = base;
+		while (nodes.get(o) != CompiledTree.LEAF) {
+			int child = getChild(nodes, o, data.getValue(row, nodes.get(o)));
+			if (child == CompiledTree.NO_CHILD) {
+				return nodes.get(o + 1);
+			}
+			o = base + child;
+		}
+		return nodes.get(o + 1);
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	public int getNumAttributes() {
+		return numAttributes;
+	}
+
+	public int getNumTrees() {
+		return treeOffsets.length;
+	}
+
+	public int getLabel(int[] attributes) {
+		int numTrees = treeOffsets.length;
+		if (numTrees == 1) {
+			return getTreeLabel(0, attributes);
+		}
+		int positiveVotes = 0;
+		for (int i = 0; i < numTrees; i++) {
+			if (getTreeLabel(i, attributes) == +1) {
+				positiveVotes++;
+			}
+		}
+		return positiveVotes > numTrees - positiveVotes ? +1 : -1;
+	}
+
+	public int getLabel(DataInstance dataInstance) {
+		return getLabel(dataInstance.getAttributes());
+	}
+
+	/**
+	 * @param data the {@link ColumnarData} holding the row.
+	 * @param row index of the row to label.
+	 * @return the predicted label of the row.
+	 */
+	public int getLabel(ColumnarData data, int row) {
+		int numTrees = treeOffsets.length;
+		if (numTrees == 1) {
+			return getTreeLabel(0, data, row);
+		}
+		int positiveVotes = 0;
+		for (int i = 0; i < numTrees; i++) {
+			if (getTreeLabel(i, data, row) == +1) {
+				positiveVotes++;
+			}
+		}
+		return positiveVotes > numTrees - positiveVotes ? +1 : -1;
+	}
+
+	/**
+	 * Label every row of a block, tree by tree.
+	 *
+	 * @param data the {@link ColumnarData} holding the rows.
+	 * @return the predicted label of every row.
+	 */
+	public int[] predictBatch(ColumnarData data) {
+		int numRows = data.getNumRows();
+		int numTrees = treeOffsets.length;
+		int[] labels = new int[numRows];
+		if (numTrees == 1) {
+			for (int row = 0; row < numRows; row++) {
+				labels[row] = getTreeLabel(0, data, row);
+			}
+			return labels;
+		}
+
+		for (int i = 0; i < numTrees; i++) {
+			for (int row = 0; row < numRows; row++) {
+				if (getTreeLabel(i, data, row) == +1) {
+					labels[row]++;
+				}
+			}
+		}
+		for (int row = 0; row < numRows; row++) {
+			labels[row] = labels[row] > numTrees - labels[row] ? +1 : -1;
+		}
+		return labels;
+	}
+}
\ No newline at end of file
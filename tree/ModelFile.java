@@ -0,0 +1,156 @@
+package tree;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file format of trained models: one or more {@link CompiledTree}s behind a
+ * small header, all little-endian ints.
+ * <pre>
+ * magic, version, number of attributes, number of trees, payload size, CRC32 of payload
+ * payload: offset of every tree within the payload, then the node records of every tree
+ * </pre>
+ * Child offsets inside a tree are relative to the start of that tree.
+ *
+ * @author Tianyi Wang
+ */
+public class ModelFile {
+
+	final static int MAGIC = 0x4D435444;		// "DTCM" in little-endian bytes.
+	final static int VERSION = 1;
+	final static int HEADER_SIZE = 6;			// in ints.
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private static int getChecksum(IntBuffer payload) {
+		ByteBuffer bytes = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 crc = new CRC32();
+		IntBuffer ints = payload.duplicate();
+		while (ints.hasRemaining()) {
+			bytes.clear();
+			while (ints.hasRemaining() && bytes.remaining() >= 4) {
+				bytes.putInt(ints.get());
+			}
+			bytes.flip();
+			crc.update(bytes);
+		}
+		return (int) crc.getValue();
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Write trees to a model file.
+	 *
+	 * @param trees the trees to write; a forest votes with all of them.
+	 * @param numAttributes number of attributes the trees were trained on.
+	 * @param fileName path of the file to write.
+	 */
+	public static void write(List<Tree> trees, int numAttributes, String fileName) throws IOException {
+		int numTrees = trees.size();
+		int[][] treeNodes = new int[numTrees][];
+		long payloadSize = numTrees;
+		for (int i = 0; i < numTrees; i++) {
+			treeNodes[i] = trees.get(i).getCompiledTree().getNodes();
+			payloadSize += treeNodes[i].length;
+		}
+		if (payloadSize > Integer.MAX_VALUE / 4 - HEADER_SIZE) {
+			throw new IOException("Model is too large to be written in a single file.");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) (HEADER_SIZE + payloadSize) * 4).order(ByteOrder.LITTLE_ENDIAN);
+		IntBuffer ints = buffer.asIntBuffer();
+		ints.position(HEADER_SIZE);
+		int offset = numTrees;
+		for (int i = 0; i < numTrees; i++) {
+			ints.put(offset);
+			offset += treeNodes[i].length;
+		}
+		for (int i = 0; i < numTrees; i++) {
+			ints.put(treeNodes[i]);
+		}
+
+		ints.position(HEADER_SIZE);
+		int checksum = getChecksum(ints.slice());
+		ints.position(0);
+		ints.put(MAGIC);
+		ints.put(VERSION);
+		ints.put(numAttributes);
+		ints.put(numTrees);
+		ints.put((int) payloadSize);
+		ints.put(checksum);
+
+		RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+		try {
+			file.setLength(0);
+			FileChannel channel = file.getChannel();
+			buffer.position(0);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Map a model file and verify its checksum.
+	 *
+	 * @param fileName path of the model file.
+	 * @return the {@link MappedModel}, predicting straight from the mapped file.
+	 */
+	public static MappedModel load(String fileName) throws IOException {
+		return load(fileName, true);
+	}
+
+	/**
+	 * Map a model file.
+	 *
+	 * @param fileName path of the model file.
+	 * @param verifyChecksum whether to read the whole payload once to verify its checksum.
+	 * @return the {@link MappedModel}, predicting straight from the mapped file.
+	 */
+	public static MappedModel load(String fileName, boolean verifyChecksum) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE * 4 || size % 4 != 0 || size > Integer.MAX_VALUE) {
+				throw new IOException(fileName + " is not a model file.");
+			}
+
+			// The mapping stays valid after the channel is closed.
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			IntBuffer ints = buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			if (ints.get(0) != MAGIC) {
+				throw new IOException(fileName + " is not a model file.");
+			}
+			if (ints.get(1) != VERSION) {
+				throw new IOException("Unsupported model file version " + ints.get(1) + ".");
+			}
+			int numAttributes = ints.get(2);
+			int numTrees = ints.get(3);
+			int payloadSize = ints.get(4);
+			if (numTrees <= 0 || payloadSize != ints.capacity() - HEADER_SIZE || numTrees > payloadSize) {
+				throw new IOException(fileName + " is truncated or corrupted.");
+			}
+
+			ints.position(HEADER_SIZE);
+			IntBuffer payload = ints.slice();
+			if (verifyChecksum && getChecksum(payload) != ints.get(5)) {
+				throw new IOException("Checksum mismatch in " + fileName + ".");
+			}
+
+			return new MappedModel(payload, numAttributes, numTrees);
+		} finally {
+			file.close();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,27 @@
+package tree;
+
+import data.ColumnarData;
+import data.DataInstance;
+
+/**
+ * A trained model able to label rows: a {@link Tree}, a forest or a {@link MappedModel}.
+ *
+ * @author Tianyi Wang
+ */
+public interface Predictor {
+
+	public int getLabel(DataInstance dataInstance);
+
+	/**
+	 * @param data the {@link ColumnarData} holding the row.
+	 * @param row index of the row to label.
+	 * @return the predicted label of the row.
+	 */
+	public int getLabel(ColumnarData data, int row);
+
+	/**
+	 * @param data the {@link ColumnarData} holding the rows.
+	 * @return the predicted label of every row.
+	 */
+	public int[] predictBatch(ColumnarData data);
+}
\ No newline at end of file
@@ -0,0 +1,16 @@
+package tree;
+
+/**
+ * Labels a row given as its attribute values, e.g. a class generated by
+ * {@link TreeClassGenerator}.
+ *
+ * @author Tianyi Wang
+ */
+public interface RowPredictor {
+
+	/**
+	 * @param attributes the attribute values of the row.
+	 * @return the predicted label of the row.
+	 */
+	public int predict(int[] attributes);
+}
\ No newline at end of file
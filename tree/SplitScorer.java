@@ -0,0 +1,186 @@
+package tree;
+
+import java.util.Arrays;
+
+/**
+ * Scores the splits of C4.5 by gain ratio, from the integer row weights alone.
+ *
+ * Every entropy of a node of total weight t is written as t times the entropy,
+ * which only needs n * log2(n) of the counts:
+ * <pre>
+ * t * H(p, n)          = t log t - p log p - n log n
+ * gain * t             = t * H(node) - sum over the values of c * H(p_i, n_i)
+ * split info * t       = t log t - sum over the values of c log c
+ * </pre>
+ * The t cancels out of the gain ratio. The values of n * log2(n) are kept in a table
+ * shared by every tree, grown to the largest node seen so far; the inner loops only
+ * read it, and only nodes heavier than {@link #MAX_TABLE_SIZE} call Math.log.
+ *
+ * The two formulas round differently. Scores closer than {@link #TIE_TOLERANCE} to each
+ * other, or to the pruning threshold, are therefore decided by the original formula,
+ * {@link #getExactGainRatio}, so the trees split and prune exactly as they always did.
+ *
+ * @author Tianyi Wang
+ */
+final class SplitScorer {
+
+	// Most entries of the table; 8 MB of doubles.
+	final private static int MAX_TABLE_SIZE = 1 << 20;
+
+	private static final double LN_2 = Math.log(2);
+
+	// Scores further apart than this compare the same by the exact formula: both are
+	// within about 1e-9 of the true gain ratio, which is at most 1.
+	final static double TIE_TOLERANCE = 1e-6;
+
+	// n * log2(n) at index n, with 0 at index 0. Replaced, never written, once published.
+	private static volatile double[] table = new double[] { 0.0 };
+
+	private SplitScorer() {
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private static double computeNLog2n(int n) {
+		return n == 0 ? 0.0 : n * (Math.log(n) / LN_2);
+	}
+
+	private static double nLog2n(double[] table, int n) {
+		return n < table.length ? table[n] : computeNLog2n(n);
+	}
+
+	private static double base2Log(double x) {
+		// To avoid NaN problem:
+		if (x == 0.0) {
+			x = Double.MIN_VALUE;
+		}
+		return Math.log(x) / Math.log(2);
+	}
+
+	private static double getInfo(double ratio1, double ratio2) {
+		return -ratio1 * base2Log(ratio1) - ratio2 * base2Log(ratio2);
+	}
+
+	private static double getSplitInfo(int curCount, int totalCount) {
+		double division = ((double) curCount) / totalCount;
+		return division * base2Log(division);
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Grow the table to cover every count of a node, as far as {@link #MAX_TABLE_SIZE}.
+	 *
+	 * @param totalCount total weight of the heaviest node to be scored.
+	 */
+	static synchronized void ensureCapacity(int totalCount) {
+		double[] current = table;
+		if (totalCount < current.length || current.length == MAX_TABLE_SIZE) {
+			return;
+		}
+
+		int size = (int) Math.min(MAX_TABLE_SIZE, Math.max(totalCount + 1L, 2L * current.length));
+		double[] grown = Arrays.copyOf(current, size);
+		for (int n = current.length; n < size; n++) {
+			grown[n] = computeNLog2n(n);
+		}
+		table = grown;
+	}
+
+	/**
+	 * @param numPositive total weight of the positive rows of a node.
+	 * @param numNegative total weight of the negative rows of a node.
+	 * @return the entropy of the node, times its total weight.
+	 */
+	static double getWeightedEntropy(int numPositive, int numNegative) {
+		double[] table = SplitScorer.table;
+		return nLog2n(table, numPositive + numNegative) - nLog2n(table, numPositive) - nLog2n(table, numNegative);
+	}
+
+	/**
+	 * @param numPositive total weight of the positive rows of a node.
+	 * @param numNegative total weight of the negative rows of a node.
+	 * @return the entropy of the node, for {@link #getExactGainRatio}.
+	 */
+	static double getInfo(int numPositive, int numNegative) {
+		double ratio1 = ((double) numPositive) / (numPositive + numNegative);
+		double ratio2 = 1 - ratio1;
+		return getInfo(ratio1, ratio2);
+	}
+
+	/**
+	 * Compute the score of splitting on an attribute, its gain ratio up to rounding.
+	 *
+	 * @param weightedEntropy the entropy of the node before splitting, times its total weight,
+	 *        see {@link #getWeightedEntropy(int, int)}.
+	 * @param positive total weight of the positive rows by counter.
+	 * @param negative total weight of the negative rows by counter.
+	 * @param counters the counters of the attribute's values in the node, in value order.
+	 * @param numCounters number of valid entries in <code>counters</code>.
+	 * @param totalCount total weight of the rows of the node.
+	 * @return the gain ratio.
+	 */
+	static double getGainRatio(double weightedEntropy, int[] positive, int[] negative, int[] counters,
+								int numCounters, int totalCount) {
+		double[] table = SplitScorer.table;
+		double childEntropies = 0.0;
+		double childSizes = 0.0;
+
+		// Sum in value order so the result does not depend on the order of the rows.
+		for (int i = 0; i < numCounters; i++) {
+			int counter = counters[i];
+			int numPositive = positive[counter];
+			int numNegative = negative[counter];
+			double curTotal = nLog2n(table, numPositive + numNegative);
+
+			childEntropies += curTotal - nLog2n(table, numPositive) - nLog2n(table, numNegative);
+			childSizes += curTotal;
+		}
+
+		double gain = weightedEntropy - childEntropies;
+		// A single value does not split anything: its split info is 0, counted as 1.
+		if (numCounters <= 1) {
+			return gain / totalCount;
+		}
+		return gain / (nLog2n(table, totalCount) - childSizes);
+	}
+
+	/**
+	 * Compute the gain ratio of splitting on an attribute by the original formula, to
+	 * decide between the scores within {@link #TIE_TOLERANCE} of the best.
+	 *
+	 * @param info the entropy of the node before splitting, see {@link #getInfo(int, int)}.
+	 * @param positive total weight of the positive rows by counter.
+	 * @param negative total weight of the negative rows by counter.
+	 * @param counters the counters of the attribute's values in the node, in value order.
+	 * @param numCounters number of valid entries in <code>counters</code>.
+	 * @param totalCount total weight of the rows of the node.
+	 * @return the gain ratio.
+	 */
+	static double getExactGainRatio(double info, int[] positive, int[] negative, int[] counters, int numCounters,
+									int totalCount) {
+		double infoAttri = 0.0;
+		double splitInfo = 0.0;
+		double total = totalCount;
+
+		// Sum in value order so the result does not depend on the order of the rows.
+		for (int i = 0; i < numCounters; i++) {
+			int counter = counters[i];
+			int numPositive = positive[counter];
+			int numNegative = negative[counter];
+			int curTotal = numPositive + numNegative;
+
+			infoAttri += (curTotal / total * getInfo(numPositive, numNegative));
+			splitInfo += getSplitInfo(curTotal, (int) total);
+		}
+
+		double gainAttri = info - infoAttri;
+		// Adjust the split info.
+		if (splitInfo == 0.0) {
+			splitInfo = 1.0;
+		} else {
+			splitInfo *= -1;
+		}
+		return gainAttri / splitInfo;
+	}
+}
@@ -1,197 +1,596 @@
 package tree;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.Map.Entry;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
-import data.DataInformationGain;
+import data.BitColumn;
+import data.ColumnarData;
 import data.DataInstance;
-import data.DataSplittingInfo;
+import data.DictionaryColumn;
+
+import metrics.Metrics;
 
 /**
  * @author Tianyi Wang
  */
-public class Tree {
+public class Tree implements Predictor {
 
-	final static private double GAIN_RATIO_THRESHOLD = 0.01;
+	final static double GAIN_RATIO_THRESHOLD = 0.01;
+	
+	// Sample the square root of the number of candidate attributes at every node, see
+	// Tree(TreeData, boolean, int, long, ForkJoinPool).
+	final public static int SQRT_ATTRIBUTES = 0;
+	
+	// Nodes with fewer rows than this are searched on the calling thread.
+	final static private int PARALLEL_ROWS_THRESHOLD = 1 << 14;
+	
+	// Number of rows counted by one task when a node is split over row blocks.
+	final static private int ROW_BLOCK_SIZE = 1 << 13;
+	
+	// Number of rows labeled by one task of a parallel batch prediction.
+	final static int PREDICT_BLOCK_SIZE = 1 << 12;
 	
-	abstract private class TreeNode {
+	abstract static class TreeNode {
 		// Nothing here. Meant to be inherited.
 	}
 	
-	private class DecisionTreeNode extends TreeNode {
-		private int attributeIndex;
-		private HashMap<Integer, TreeNode> attributeValueToChildNode;
-		private boolean positiveMajority;
+	static class DecisionTreeNode extends TreeNode {
+		private static final int[] NO_VALUES = new int[0];
+		private static final TreeNode[] NO_CHILDREN = new TreeNode[0];
+		
+		int attributeIndex;
+		boolean positiveMajority;
+		
+		// The children by attribute value, sorted by value and sized to the number of children.
+		int[] childValues;
+		TreeNode[] childNodes;
 		
 		public DecisionTreeNode(int attributeIndex, boolean positiveMajority) {
+			this(attributeIndex, positiveMajority, NO_VALUES, NO_CHILDREN);
+		}
+		
+		/**
+		 * @param attributeIndex the attribute the node splits on.
+		 * @param positiveMajority whether most rows of the node are positive.
+		 * @param childValues the values with a child, strictly increasing; kept, not copied.
+		 * @param childNodes the child of every value, or null for a child set later with
+		 *        {@link #addChildNode(int, TreeNode)}; kept, not copied.
+		 */
+		DecisionTreeNode(int attributeIndex, boolean positiveMajority, int[] childValues, TreeNode[] childNodes) {
+			if (childValues.length != childNodes.length) {
+				throw new IllegalArgumentException(childValues.length + " values for " + childNodes.length
+												+ " children.");
+			}
+			for (int i = 1; i < childValues.length; i++) {
+				if (childValues[i - 1] >= childValues[i]) {
+					throw new IllegalArgumentException("The child values are not increasing at " + i + ".");
+				}
+			}
 			this.attributeIndex = attributeIndex;
-			this.attributeValueToChildNode = new HashMap<Integer, Tree.TreeNode>();
 			this.positiveMajority = positiveMajority;
+			this.childValues = childValues;
+			this.childNodes = childNodes;
 		}
 		
 		public void addChildNode(int attributeValue, TreeNode childNode) {
-			attributeValueToChildNode.put(attributeValue, childNode);
+			int i = Arrays.binarySearch(childValues, attributeValue);
+			if (i >= 0) {
+				childNodes[i] = childNode;
+				return;
+			}
+			
+			// A value the node was not sized for: insert it, copying both tables. The builders
+			// size their nodes up front, so this only serves callers adding a few children.
+			i = -i - 1;
+			int[] values = new int[childValues.length + 1];
+			TreeNode[] nodes = new TreeNode[childNodes.length + 1];
+			System.arraycopy(childValues, 0, values, 0, i);
+			System.arraycopy(childNodes, 0, nodes, 0, i);
+			values[i] = attributeValue;
+			nodes[i] = childNode;
+			System.arraycopy(childValues, i, values, i + 1, childValues.length - i);
+			System.arraycopy(childNodes, i, nodes, i + 1, childNodes.length - i);
+			childValues = values;
+			childNodes = nodes;
+		}
+		
+		/**
+		 * @param attributeValue the value of the node's attribute.
+		 * @return the child for the value, or null when no training row had the value.
+		 */
+		public TreeNode getChildNode(int attributeValue) {
+			int i = Arrays.binarySearch(childValues, attributeValue);
+			return i >= 0 ? childNodes[i] : null;
 		}
 	}
 	
-	private class LabelTreeNode extends TreeNode {
-		private int label;
+	static class LabelTreeNode extends TreeNode {
+		int label;
 		
 		public LabelTreeNode(int label) {
 			this.label = label;
 		}
 	}
 	
+	/**
+	 * Counts (value, label) pairs of one attribute over a block of rows, splitting
+	 * the block in halves until it is small enough and merging the counts back.
+	 */
+	private class RowBlockCountTask extends RecursiveTask<ValueCounts> {
+		private static final long serialVersionUID = 1L;
+		
+		private DictionaryColumn column;
+		private int from;
+		private int to;
+		
+		public RowBlockCountTask(DictionaryColumn column, int from, int to) {
+			this.column = column;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected ValueCounts compute() {
+			if (to - from <= ROW_BLOCK_SIZE) {
+				ValueCounts result = new ValueCounts(column.getNumCodes());
+				result.count(column, data, weights, rows, from, to);
+				return result;
+			}
+			
+			int mid = (from + to) >>> 1;
+			RowBlockCountTask left = new RowBlockCountTask(column, from, mid);
+			left.fork();
+			ValueCounts result = new RowBlockCountTask(column, mid, to).compute();
+			result.add(left.join());
+			return result;
+		}
+	}
+	
+	/**
+	 * Computes the gain ratio of a range of candidate attributes, one task per attribute.
+	 */
+	private class GainRatioTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private int rowsFrom;
+		private int rowsTo;
+		private int numPositive;
+		private int numNegative;
+		private double weightedEntropy;
+		private int[] attributes;
+		private double[] gainRatios;
+		private int from;
+		private int to;
+		private boolean splitRows;
+		private boolean useBits;
+		
+		public GainRatioTask(int rowsFrom, int rowsTo, int numPositive, int numNegative, double weightedEntropy,
+							int[] attributes, double[] gainRatios, int from, int to, boolean splitRows,
+							boolean useBits) {
+			this.rowsFrom = rowsFrom;
+			this.rowsTo = rowsTo;
+			this.numPositive = numPositive;
+			this.numNegative = numNegative;
+			this.weightedEntropy = weightedEntropy;
+			this.attributes = attributes;
+			this.gainRatios = gainRatios;
+			this.from = from;
+			this.to = to;
+			this.splitRows = splitRows;
+			this.useBits = useBits;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				DictionaryColumn column = columns[attributes[from]];
+				ValueCounts valueCounts;
+				if (splitRows && !(useBits && column instanceof BitColumn)) {
+					valueCounts = new RowBlockCountTask(column, rowsFrom, rowsTo).compute();
+				} else {
+					valueCounts = new ValueCounts(column.getNumCodes());
+					countValues(valueCounts, column, rowsFrom, rowsTo, numPositive, numNegative, useBits);
+				}
+				gainRatios[from] = getGainRatio(weightedEntropy, valueCounts, numPositive + numNegative);
+				return;
+			}
+			
+			int mid = (from + to) >>> 1;
+			invokeAll(new GainRatioTask(rowsFrom, rowsTo, numPositive, numNegative, weightedEntropy, attributes,
+										gainRatios, from, mid, splitRows, useBits),
+					new GainRatioTask(rowsFrom, rowsTo, numPositive, numNegative, weightedEntropy, attributes,
+										gainRatios, mid, to, splitRows, useBits));
+		}
+	}
+	
 	private TreeNode rootNode;
 	
+	// Number of attributes of the data the tree was trained on.
+	private int numAttributes;
+	
+	// When the tree was built, in milliseconds since the epoch, or 0 when unknown.
+	private long buildTime;
+	
+	// Error rate on the rows left out of the tree's bootstrap sample, or NaN without a sample.
+	private double outOfBagError = Double.NaN;
+	
+	// Flat form of the tree used for batch prediction, compiled on first use.
+	private volatile CompiledTree compiledTree;
+	
+	// Pool used to search the splits of large nodes, or null to always search on the calling thread.
+	private ForkJoinPool pool;
+	
+	// State shared by all the nodes while the tree is being built, released afterwards.
+	private ColumnarData data;
+	private int[] rows;							// partitioned in place, every node owns a [from, to) range.
+	private int[] scratch;						// buffer used when partitioning a range.
+	private int[] weights;						// weight of every row of data, or null for unit weights.
+	private DictionaryColumn[] columns;			// encoded candidate attributes, by attribute index.
+	private ValueCounts valueCounts;			// counters reused by every node searched on the calling thread.
+	private ValueCounts bestValueCounts;		// counters of the best attribute of the node being searched.
+	private int[] offsets;						// partition offsets by value code.
+	private long[] positiveWords;				// bit set for every positive row, null without binary candidates.
+	private long[][] weightPlanes;				// bit b of every row's weight, or null for unit weights.
+	private long[] nodeWords;					// bit set for every row of the node being searched.
+	private int nodeFromWord;					// first word of nodeWords holding rows of the node, inclusive.
+	private int nodeToWord;						// last word of nodeWords holding rows of the node, exclusive.
+	private int[] candidateAttributes;			// attributes the tree may split on.
+	private BitSet usedAttributes;				// attributes already split on along the current path.
+	private int numSampledAttributes;			// attributes evaluated at every node, or 0 for all of them.
+	private int splittingAttribute;				// best split found by selectAttribute(), or -1.
+	private double splittingGainRatio;			// gain ratio of splittingAttribute.
+	
+	// Build figures reported to Metrics; the phases are only timed while metrics are enabled.
+	private long rowsScanned;
+	private long selectAttributeNanos;
+	private long partitionNanos;
+	
 	/*************************** PRIVATE METHODS ***************************/
 	
-	private double base2Log(double x) {
-		// To avoid NaN problem:
-		if (x == 0.0) {
-			x = Double.MIN_VALUE;
+	/**
+	 * @param randomlySelectAttri whether or not to randomly select attribute when splitting.
+	 * @param numSampledAttributes the requested number, or {@link #SQRT_ATTRIBUTES}.
+	 * @param numCandidates number of attributes the tree may split on.
+	 * @return the number of attributes to evaluate at every node, or 0 for all of them.
+	 */
+	static int getNumSampledAttributes(boolean randomlySelectAttri, int numSampledAttributes, int numCandidates) {
+		if (!randomlySelectAttri) {
+			return 0;
+		}
+		if (numSampledAttributes == SQRT_ATTRIBUTES) {
+			return Math.max(1, (int) Math.sqrt(numCandidates));
+		}
+		if (numSampledAttributes < 0) {
+			throw new IllegalArgumentException("Cannot sample " + numSampledAttributes + " attributes.");
 		}
-		return Math.log(x) / Math.log(2);
+		return numSampledAttributes;
 	}
 	
-	private double getInfoGain(double ratio1, double ratio2) {
-		return -ratio1 * base2Log(ratio1) - ratio2 * base2Log(ratio2);
+	/**
+	 * Derive the seed of a node from its parent's, so that a node draws the same
+	 * attributes whatever order the nodes are built in.
+	 * 
+	 * @param nodeSeed the seed of the parent.
+	 * @param value the attribute value leading from the parent to the node.
+	 * @return the seed of the node.
+	 */
+	static long getChildSeed(long nodeSeed, int value) {
+		return new SplittableRandom(nodeSeed ^ (value * 0x9E3779B97F4A7C15L)).nextLong();
 	}
 	
-	private double getInfoGain(int count1, int count2) {
-		double ratio1 = ((double) count1) / (count1 + count2);
-		double ratio2 = 1 - ratio1;
-		return getInfoGain(ratio1, ratio2);
+	/**
+	 * Draw the attributes a node evaluates, uniformly and without replacement.
+	 * 
+	 * @param attributes the attributes not yet split on, replaced by the sample in the same order.
+	 * @param numAttributes number of valid entries in <code>attributes</code>.
+	 * @param numSampledAttributes number of attributes to draw, or 0 for all of them.
+	 * @param nodeSeed the seed of the node.
+	 * @return the number of attributes drawn.
+	 */
+	static int sampleAttributes(int[] attributes, int numAttributes, int numSampledAttributes, long nodeSeed) {
+		if (numSampledAttributes == 0 || numSampledAttributes >= numAttributes) {
+			return numAttributes;
+		}
+		
+		// Selection sampling keeps the attributes in order, so ties are broken as without sampling.
+		SplittableRandom random = new SplittableRandom(nodeSeed);
+		int numSampled = 0;
+		for (int i = 0; i < numAttributes && numSampled < numSampledAttributes; i++) {
+			if (random.nextInt(numAttributes - i) < numSampledAttributes - numSampled) {
+				attributes[numSampled++] = attributes[i];
+			}
+		}
+		return numSampled;
 	}
 	
-	private double getSplitInfo(int curCount, int totalCount) {
-		double division = ((double) curCount) / totalCount;
-		return division * base2Log(division);
+	/**
+	 * Set the bits of the node's rows in {@link #nodeWords} when the node is dense enough
+	 * for popcounts over the words to be cheaper than looking its rows up one by one.
+	 * 
+	 * @param from first position of the node's rows, inclusive.
+	 * @param to last position of the node's rows, exclusive.
+	 * @return whether the bits were set, see {@link #clearNodeWords()}.
+	 */
+	private boolean setNodeWords(int from, int to) {
+		if (nodeWords == null || to - from < nodeWords.length) {
+			return false;
+		}
+		
+		int minRow = Integer.MAX_VALUE;
+		int maxRow = -1;
+		for (int i = from; i < to; i++) {
+			int row = rows[i];
+			nodeWords[row >>> 6] |= 1L << row;
+			minRow = Math.min(minRow, row);
+			maxRow = Math.max(maxRow, row);
+		}
+		nodeFromWord = minRow >>> 6;
+		nodeToWord = (maxRow >>> 6) + 1;
+		return true;
+	}
+	
+	private void clearNodeWords() {
+		Arrays.fill(nodeWords, nodeFromWord, nodeToWord, 0L);
+	}
+	
+	/**
+	 * Count the weights of every value of an attribute over the rows of a node.
+	 * 
+	 * @param valueCounts the counts to add to.
+	 * @param column the attribute to count.
+	 * @param from first position of the node's rows, inclusive.
+	 * @param to last position of the node's rows, exclusive.
+	 * @param numPositive total weight of the positive rows of the node.
+	 * @param numNegative total weight of the negative rows of the node.
+	 * @param useBits whether the node's rows are set in {@link #nodeWords}.
+	 */
+	private void countValues(ValueCounts valueCounts, DictionaryColumn column, int from, int to,
+							int numPositive, int numNegative, boolean useBits) {
+		if (useBits && column instanceof BitColumn) {
+			valueCounts.countBits((BitColumn) column, nodeWords, positiveWords, weightPlanes,
+								nodeFromWord, nodeToWord, numPositive, numNegative);
+		} else {
+			valueCounts.count(column, data, weights, rows, from, to);
+		}
+	}
+	
+	/**
+	 * Compute the score of splitting on an attribute, its gain ratio up to rounding,
+	 * see {@link SplitScorer}.
+	 * 
+	 * @param weightedEntropy the entropy of the node before splitting, times its total weight.
+	 * @param valueCounts the weights of every value of the attribute.
+	 * @param totalCount total weight of the rows of the node.
+	 * @return the score.
+	 */
+	private double getGainRatio(double weightedEntropy, ValueCounts valueCounts, int totalCount) {
+		valueCounts.sortSeen();
+		return SplitScorer.getGainRatio(weightedEntropy, valueCounts.positive, valueCounts.negative, valueCounts.seen,
+							valueCounts.numSeen, totalCount);
+	}
+	
+	/**
+	 * Compute the exact gain ratio of splitting on an attribute, counting its values
+	 * first unless they are counted already.
+	 * 
+	 * @param counts the counts of the attribute's values when counted, otherwise empty counters.
+	 * @param counted whether <code>counts</code> holds the attribute's counts, sorted.
+	 * @param attribute the attribute.
+	 * @param from first position of the node's rows, inclusive.
+	 * @param to last position of the node's rows, exclusive.
+	 * @param numPositive total weight of the positive rows of the node.
+	 * @param numNegative total weight of the negative rows of the node.
+	 * @param useBits whether the node's rows are set in {@link #nodeWords}.
+	 * @return the gain ratio.
+	 */
+	private double getExactGainRatio(ValueCounts counts, boolean counted, int attribute, int from, int to,
+									int numPositive, int numNegative, boolean useBits) {
+		if (!counted) {
+			countValues(counts, columns[attribute], from, to, numPositive, numNegative, useBits);
+			counts.sortSeen();
+		}
+		double gainRatio = SplitScorer.getExactGainRatio(SplitScorer.getInfo(numPositive, numNegative),
+														counts.positive, counts.negative, counts.seen,
+														counts.numSeen, numPositive + numNegative);
+		if (!counted) {
+			counts.clear();
+		}
+		return gainRatio;
 	}
 	
 	/**
 	 * Select the attribute with the highest information gain (lowest uncertainty/entropy).
+	 * The attribute and its gain ratio are left in {@link #splittingAttribute} and
+	 * {@link #splittingGainRatio}, so that searching allocates no result.
 	 * 
-	 * @param treeData the {@link TreeNode} object.
-	 * @param useRandom whether or not to choose the attribute randomly.
-	 * @return the {@link DataSplittingInfo} object.
+	 * @param from first position of the node's rows, inclusive.
+	 * @param to last position of the node's rows, exclusive.
+	 * @param numPositive total weight of the positive rows of the node.
+	 * @param numNegative total weight of the negative rows of the node.
+	 * @param numRemaining number of attributes not yet split on along the current path.
+	 * @param nodeSeed the seed of the node, drawing the attributes evaluated when sampling.
 	 */
-	private DataSplittingInfo selectAttribute(TreeData treeData, boolean useRandom) {
-		int bestAttributeIndex = -1;
-		double bestGainRatio = -1;
-		
-		if (useRandom) {
-			// Use all the nodes regardless.
-			/*
-			int index = random.nextInt(treeData.attributes.size());
-			int i = 0;
-			for (Integer result : treeData.attributes) {
-				if (index == i) {
-					return result;
-				}
-				i++;
+	private void selectAttribute(int from, int to, int numPositive, int numNegative, int numRemaining,
+								long nodeSeed) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		int best = -1;
+		double bestScore = -1;
+		double bestGainRatio = Double.NaN;			// the exact gain ratio of best, once computed.
+
+		double weightedEntropy = SplitScorer.getWeightedEntropy(numPositive, numNegative);
+		
+		int[] attributes = new int[numRemaining];
+		int numAttributes = 0;
+		for (int i = 0; i < candidateAttributes.length; i++) {
+			if (!usedAttributes.get(candidateAttributes[i])) {
+				attributes[numAttributes++] = candidateAttributes[i];
 			}
-			*/
 		}
-
-		double info = getInfoGain(treeData.numPositiveClass, treeData.numNegativeClass);
+		numAttributes = sampleAttributes(attributes, numAttributes, numSampledAttributes, nodeSeed);
 		
 		// Now test each one of the attributes.
-		Iterator<Integer> itr = treeData.attributes.iterator();
-		while (itr.hasNext()) {
-			Integer curAttribute = itr.next();
-			
-			// Try split using this attribute.
-			HashMap<Integer, DataInformationGain> attributeValueToIGData = new HashMap<Integer, DataInformationGain>();
-			
-			// Go through all the data.
-			Iterator<DataInstance> dataItr = treeData.data.iterator();
-			while (dataItr.hasNext()) {
-				DataInstance curDataInstance = dataItr.next();
-				int curAttributeValue = curDataInstance.getAttributes().get(curAttribute);
-				
-				if (attributeValueToIGData.containsKey(curAttributeValue)) {
-					if (curDataInstance.getLabel() == +1) {
-						attributeValueToIGData.get(curAttributeValue).numPositive++;
-					} else {
-						attributeValueToIGData.get(curAttributeValue).numNegative++;
-					}
-				} else {
-					DataInformationGain dataInfoGain = new DataInformationGain();
-					if (curDataInstance.getLabel() == +1) {
-						dataInfoGain.numPositive++;
-					} else {
-						dataInfoGain.numNegative++;
-					}
-					attributeValueToIGData.put(curAttributeValue, dataInfoGain);
-				}
-			}
-			
-			double infoAttri = 0.0;
-			double splitInfo = 0.0;
-			double total = treeData.data.size();
-			for (DataInformationGain dataInfoGain : attributeValueToIGData.values()) {
-				int curTotal = dataInfoGain.numPositive + dataInfoGain.numNegative;
-				
-				infoAttri += (curTotal / total * getInfoGain(dataInfoGain.numPositive, dataInfoGain.numNegative));
-				splitInfo += getSplitInfo(curTotal, (int) total);
+		double[] gainRatios = new double[numAttributes];
+		boolean useBits = setNodeWords(from, to);
+		// Searched in parallel, the counts are gone once scored; otherwise the best one's are kept.
+		boolean counted = !(pool != null && to - from >= PARALLEL_ROWS_THRESHOLD && numAttributes > 0);
+		if (!counted) {
+			// Too few attributes to keep every core busy: also split each count over row blocks.
+			boolean splitRows = numAttributes < pool.getParallelism();
+			pool.invoke(new GainRatioTask(from, to, numPositive, numNegative, weightedEntropy, attributes,
+										gainRatios, 0, numAttributes, splitRows, useBits));
+		}
+		
+		// Pick the best one in iteration order so that ties are broken the same way either path.
+		for (int i = 0; i < numAttributes; i++) {
+			if (counted) {
+				// Try split using this attribute.
+				countValues(valueCounts, columns[attributes[i]], from, to, numPositive, numNegative, useBits);
+				gainRatios[i] = getGainRatio(weightedEntropy, valueCounts, numPositive + numNegative);
 			}
 			
-			double gainAttri = info - infoAttri;
-			// Adjust the split info.
-			if (splitInfo == 0.0) {
-				splitInfo = 1.0;
+			boolean isBest;
+			double gainRatio = Double.NaN;
+			if (best == -1 || gainRatios[i] > bestScore + SplitScorer.TIE_TOLERANCE) {
+				isBest = true;
+			} else if (gainRatios[i] < bestScore - SplitScorer.TIE_TOLERANCE) {
+				isBest = false;
 			} else {
-				splitInfo *= -1;
+				// Scores this close are told apart by the exact gain ratios, as they always were.
+				if (Double.isNaN(bestGainRatio)) {
+					bestGainRatio = getExactGainRatio(bestValueCounts, counted, attributes[best], from, to,
+													numPositive, numNegative, useBits);
+				}
+				gainRatio = getExactGainRatio(valueCounts, counted, attributes[i], from, to, numPositive,
+											numNegative, useBits);
+				isBest = gainRatio > bestGainRatio;
 			}
-			double gainRatioAttri = gainAttri / splitInfo;
-
-			if (gainRatioAttri > bestGainRatio) {
-				bestGainRatio = gainRatioAttri;
-				bestAttributeIndex = curAttribute;
+			if (isBest) {
+				best = i;
+				bestScore = gainRatios[i];
+				bestGainRatio = gainRatio;
+				if (counted) {
+					ValueCounts swap = bestValueCounts;
+					bestValueCounts = valueCounts;
+					valueCounts = swap;
+				}
+			}
+			if (counted) {
+				valueCounts.clear();
 			}
 		}
+		
+		// Pruning compares the gain ratio with GAIN_RATIO_THRESHOLD, exactly when that close.
+		if (best != -1 && Double.isNaN(bestGainRatio)
+				&& Math.abs(bestScore - GAIN_RATIO_THRESHOLD) <= SplitScorer.TIE_TOLERANCE) {
+			bestGainRatio = getExactGainRatio(bestValueCounts, counted, attributes[best], from, to, numPositive,
+											numNegative, useBits);
+		}
+		if (counted) {
+			bestValueCounts.clear();
+		}
+		if (useBits) {
+			clearNodeWords();
+		}
+		
+		rowsScanned += (long) (to - from) * numAttributes;
+		if (Metrics.isEnabled()) {
+			selectAttributeNanos += System.nanoTime() - start;
+		}
 
-		return new DataSplittingInfo(bestAttributeIndex, bestGainRatio);
+		splittingAttribute = best == -1 ? -1 : attributes[best];
+		splittingGainRatio = Double.isNaN(bestGainRatio) ? bestScore : bestGainRatio;
+	}
+	
+	/**
+	 * Partition the rows of a node in place by the value of an attribute, so that the
+	 * rows of every child end up next to each other.
+	 * 
+	 * @param from first position of the node's rows, inclusive.
+	 * @param to last position of the node's rows, exclusive.
+	 * @param column the splitting attribute.
+	 * @param codes the distinct value codes of the attribute in the node, in the order to lay them out.
+	 * @return the end of every value's range, exclusive.
+	 */
+	private int[] partition(int from, int to, DictionaryColumn column, int[] codes) {
+		// The ranges hold one entry per distinct row, whatever the row weights.
+		for (int code : codes) {
+			offsets[code] = 0;
+		}
+		for (int i = from; i < to; i++) {
+			offsets[column.getCode(rows[i])]++;
+		}
+		
+		// Find where every child's range starts.
+		int[] ends = new int[codes.length];
+		int offset = from;
+		for (int i = 0; i < codes.length; i++) {
+			int numRows = offsets[codes[i]];
+			offsets[codes[i]] = offset;
+			offset += numRows;
+			ends[i] = offset;
+		}
+		
+		// Scatter into the buffer, then copy the partitioned range back.
+		for (int i = from; i < to; i++) {
+			int row = rows[i];
+			scratch[offsets[column.getCode(row)]++] = row;
+		}
+		System.arraycopy(scratch, from, rows, from, to - from);
+		
+		return ends;
 	}
 	
 	/**
 	 * Generate a Decision Tree based on provided data.
 	 * 
-	 * @param treeData the {@link TreeData} object.
+	 * @param from first position of the node's rows, inclusive.
+	 * @param to last position of the node's rows, exclusive.
+	 * @param numPositive total weight of the positive rows of the node.
+	 * @param numNegative total weight of the negative rows of the node.
 	 * @param randomlySelectAttri whether or not to randomly select attribute when splitting.
 	 * @param treeHeight current height of the tree.
+	 * @param nodeSeed the seed of the node, see {@link #getChildSeed(long, int)}.
 	 * @return the root of the tree.
 	 */
-	private TreeNode generateDecisionTree(TreeData treeData, boolean randomlySelectAttri, int treeHeight) {
+	private TreeNode generateDecisionTree(int from, int to, int numPositive, int numNegative,
+										boolean randomlySelectAttri, int treeHeight, long nodeSeed) {
 		TreeNode node = null;
 		
-		if (treeData.numPositiveClass == 0) {
+		if (numPositive == 0) {
 			node = new LabelTreeNode(-1);
 			return node;
 		}
-		else if (treeData.numNegativeClass == 0) {
+		else if (numNegative == 0) {
 			node = new LabelTreeNode(+1);
 			return node;
 		}
 		
-		boolean positiveMajority = treeData.numPositiveClass > treeData.numNegativeClass ? true : false;
+		boolean positiveMajority = numPositive > numNegative ? true : false;
 		
-		if (treeData.attributes.size() == 0) {
+		// Every level of the current path has used up one attribute.
+		int numRemaining = candidateAttributes.length - treeHeight;
+		if (numRemaining == 0) {
 			int label = positiveMajority ? +1 : -1;
 			node = new LabelTreeNode(label);
 			return node;
 		}
 		
-		DataSplittingInfo splittingInfo = selectAttribute(treeData, randomlySelectAttri);
-		int splittingAttributeIndex = splittingInfo.splittingIndex;
-		double splittingGainRatio = splittingInfo.bestInfoGainRatio;
+		selectAttribute(from, to, numPositive, numNegative, numRemaining, nodeSeed);
+		int splittingAttributeIndex = splittingAttribute;
 		if (splittingAttributeIndex == -1) {
 			System.out.println("No splitting attribute was selected, something went wrong.");
-			System.out.println(treeData);
+			System.out.println("rows=[" + from + ", " + to + "), numPositive=" + numPositive
+							+ ", numNegative=" + numNegative + ", usedAttributes=" + usedAttributes);
 			System.exit(1);
 		}
 		
@@ -206,68 +605,162 @@ public class Tree {
 			}
 		}
 		
-		node = new DecisionTreeNode(splittingAttributeIndex, positiveMajority);
-		treeData.attributes.remove(splittingAttributeIndex);
+		// Take the children's counts out of the shared counters before recursing.
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		DictionaryColumn column = columns[splittingAttributeIndex];
+		valueCounts.count(column, data, weights, rows, from, to);
+		valueCounts.sortSeen();
+		int[] codes = Arrays.copyOf(valueCounts.seen, valueCounts.numSeen);
+		int[] childPositive = new int[codes.length];
+		int[] childNegative = new int[codes.length];
+		for (int i = 0; i < codes.length; i++) {
+			childPositive[i] = valueCounts.positive[codes[i]];
+			childNegative[i] = valueCounts.negative[codes[i]];
+		}
+		valueCounts.clear();
+		int[] ends = partition(from, to, column, codes);
+		rowsScanned += 3L * (to - from);
+		if (Metrics.isEnabled()) {
+			partitionNanos += System.nanoTime() - start;
+		}
 		
-		HashMap<Integer, TreeData> attributeValueToTreeData = new HashMap<Integer, TreeData>();
-		Iterator<DataInstance> itr = treeData.data.iterator();
-		while (itr.hasNext()) {
-			DataInstance dataInstance = itr.next();
-			int attributeValue = dataInstance.getAttributes().get(splittingAttributeIndex);
+		usedAttributes.set(splittingAttributeIndex);
+		// Children are keyed by the attribute value, so prediction needs no dictionary. Codes
+		// follow the order of the values, so the children come out sorted.
+		int[] values = new int[codes.length];
+		TreeNode[] childNodes = new TreeNode[codes.length];
+		int childFrom = from;
+		for (int i = 0; i < codes.length; i++) {
+			values[i] = column.getValue(codes[i]);
+			childNodes[i] = generateDecisionTree(childFrom, ends[i], childPositive[i], childNegative[i],
+												randomlySelectAttri, treeHeight + 1,
+												getChildSeed(nodeSeed, values[i]));
+			childFrom = ends[i];
+		}
+		usedAttributes.clear(splittingAttributeIndex);
+		
+		return new DecisionTreeNode(splittingAttributeIndex, positiveMajority, values, childNodes);
+	}
+	
+	private int getLabel(DataInstance dataInstance, TreeNode node) {
+		int[] attributes = dataInstance.getAttributes();
+		
+		while (node instanceof DecisionTreeNode) {
+			DecisionTreeNode decisionNode = (DecisionTreeNode) node;
+			int dataAttributeValue = attributes[decisionNode.attributeIndex];
 			
-			if (attributeValueToTreeData.containsKey(attributeValue)) {
-				TreeData curTreeData = attributeValueToTreeData.get(attributeValue);
-				curTreeData.data.add(dataInstance);
-				if (dataInstance.getLabel() == +1) {
-					curTreeData.numPositiveClass++;
-				} else {
-					curTreeData.numNegativeClass++;
-				}
-			}
-			else {
-				ArrayList<DataInstance> listForThisAttributeValue = new ArrayList<DataInstance>();
-				HashSet<Integer> attributes = new HashSet<Integer>(treeData.attributes);
-				listForThisAttributeValue.add(dataInstance);
-				int numPositive = dataInstance.getLabel() == +1 ? 1 : 0;
-				int numNegative = dataInstance.getLabel() == -1 ? 1 : 0;
-				TreeData newTreeData = new TreeData(listForThisAttributeValue,
-													numPositive,
-													numNegative,
-													attributes);
-				attributeValueToTreeData.put(attributeValue, newTreeData);
+			TreeNode childNode = decisionNode.getChildNode(dataAttributeValue);
+			if (childNode == null) {
+				// There is no data instance that satisfies the required attribute value.
+				// Use the current node's majority vote to decide the label.
+				return decisionNode.positiveMajority ? +1 : -1;
 			}
+			node = childNode;
 		}
 		
-		Iterator<Entry<Integer, TreeData>> mapItr = attributeValueToTreeData.entrySet().iterator();
-		while (mapItr.hasNext()) {
-			Entry<Integer, TreeData> entry = mapItr.next();
-			Integer attributeValue = entry.getKey();
-			TreeData treeDataOfChild = entry.getValue();
-			
-			TreeNode childNode = generateDecisionTree(treeDataOfChild, randomlySelectAttri, treeHeight + 1);
+		return ((LabelTreeNode) node).label;
+	}
+	
+	private int getLabel(ColumnarData data, int row, TreeNode node) {
+		while (node instanceof DecisionTreeNode) {
+			DecisionTreeNode decisionNode = (DecisionTreeNode) node;
+			int dataAttributeValue = data.getValue(row, decisionNode.attributeIndex);
 			
-			((DecisionTreeNode)node).addChildNode(attributeValue, childNode);
+			TreeNode childNode = decisionNode.getChildNode(dataAttributeValue);
+			if (childNode == null) {
+				// There is no data instance that satisfies the required attribute value.
+				// Use the current node's majority vote to decide the label.
+				return decisionNode.positiveMajority ? +1 : -1;
+			}
+			node = childNode;
 		}
 		
-		return node;
+		return ((LabelTreeNode) node).label;
 	}
 	
-	private int getLabel(DataInstance dataInstance, TreeNode node) {
-		if (node instanceof LabelTreeNode) {
-			return ((LabelTreeNode) node).label;
+	/**
+	 * @param node root of a subtree.
+	 * @param counts receives the number of decision nodes and leaves of the subtree.
+	 * @return the depth of the subtree.
+	 */
+	private static int countNodes(TreeNode node, long[] counts) {
+		if (!(node instanceof DecisionTreeNode)) {
+			counts[1]++;
+			return 0;
 		}
-		
-		int attributeIndex = ((DecisionTreeNode) node).attributeIndex;
-		int dataAttributeValue = dataInstance.getAttributes().get(attributeIndex);
-		
-		TreeNode childNode = ((DecisionTreeNode) node).attributeValueToChildNode.get(dataAttributeValue);
-		if (childNode == null) {
-			// There is no data instance that satisfies the required attribute value.
-			// Use the current node's majority vote to decide the label.
-			return ((DecisionTreeNode) node).positiveMajority ? +1 : -1;
+		counts[0]++;
+		int depth = 0;
+		for (TreeNode childNode : ((DecisionTreeNode) node).childNodes) {
+			depth = Math.max(depth, countNodes(childNode, counts) + 1);
+		}
+		return depth;
+	}
+	
+	/**
+	 * Report a newly built tree to {@link Metrics}.
+	 * 
+	 * @param rootNode the root of the tree.
+	 * @param rowsScanned number of row reads made while building the tree.
+	 * @param selectAttributeNanos time spent searching for the splits.
+	 * @param partitionNanos time spent moving the rows to the children.
+	 * @param buildNanos time taken to build the whole tree.
+	 */
+	static void recordBuild(TreeNode rootNode, long rowsScanned, long selectAttributeNanos, long partitionNanos,
+							long buildNanos) {
+		long[] counts = new long[2];
+		int depth = countNodes(rootNode, counts);
+		Metrics.get().treeBuilt(counts[0], counts[1], depth, rowsScanned, selectAttributeNanos, partitionNanos,
+								buildNanos);
+	}
+	
+	/**
+	 * Wrap a tree built elsewhere, see {@link LevelWiseTreeBuilder}.
+	 * 
+	 * @param rootNode the root of the tree.
+	 * @param numAttributes number of attributes of the data the tree was trained on.
+	 */
+	Tree (TreeNode rootNode, int numAttributes) {
+		this.rootNode = rootNode;
+		this.numAttributes = numAttributes;
+	}
+	
+	TreeNode getRootNode() {
+		return rootNode;
+	}
+	
+	/**
+	 * @param rootNode the root of a tree giving the same labels, see {@link TreeCompactor}.
+	 */
+	void setRootNode(TreeNode rootNode) {
+		this.rootNode = rootNode;
+		// Compiled again from the new nodes on first use.
+		this.compiledTree = null;
+	}
+	
+	/**
+	 * Record that the tree was just built, and its error on the rows of the data that were
+	 * left out of its sample.
+	 * 
+	 * @param treeData data the tree was built with.
+	 */
+	void setBuilt(TreeData treeData) {
+		this.buildTime = System.currentTimeMillis();
+		if (treeData.weights == null) {
+			return;
 		}
 		
-		return getLabel(dataInstance, childNode);
+		int numOutOfBag = 0;
+		int numErrors = 0;
+		for (int i = treeData.from; i < treeData.to; i++) {
+			int row = treeData.rows[i];
+			if (treeData.weights[row] == 0) {
+				numOutOfBag++;
+				if (getLabel(treeData.data, row, rootNode) != treeData.data.getLabel(row)) {
+					numErrors++;
+				}
+			}
+		}
+		this.outOfBagError = numOutOfBag == 0 ? Double.NaN : (double) numErrors / numOutOfBag;
 	}
 	
 	/*************************** PUBLIC METHODS ***************************/
@@ -278,12 +771,300 @@ public class Tree {
 	 * @param treeData data used to construct this Decision Tree.
 	 * @param randomlySelectAttri whether or not to randomly select attribute when splitting.
 	 */
-	public Tree (TreeData treeData, boolean randomlySelectAttri) {		
+	public Tree (TreeData treeData, boolean randomlySelectAttri) {
+		this(treeData, randomlySelectAttri, null);
+	}
+	
+	/**
+	 * Construct the Decision Tree using C4.5, searching the splits of large nodes in parallel.
+	 * 
+	 * @param treeData data used to construct this Decision Tree.
+	 * @param randomlySelectAttri whether or not to randomly select attribute when splitting.
+	 * @param pool pool used to search the splits of large nodes, or null to stay on the calling thread.
+	 */
+	public Tree (TreeData treeData, boolean randomlySelectAttri, ForkJoinPool pool) {
+		this(treeData, randomlySelectAttri, SQRT_ATTRIBUTES, 0L, pool);
+	}
+	
+	/**
+	 * Construct the Decision Tree using C4.5. When randomly selecting attributes, every
+	 * node only evaluates a sample of the attributes not yet split on along its path, as
+	 * in Random Forests; the sample of a node only depends on the seed and the node's path.
+	 * 
+	 * @param treeData data used to construct this Decision Tree.
+	 * @param randomlySelectAttri whether or not to randomly select attribute when splitting.
+	 * @param numSampledAttributes number of attributes evaluated at every node when randomly
+	 *        selecting attributes, or {@link #SQRT_ATTRIBUTES}.
+	 * @param seed the seed of the samples.
+	 * @param pool pool used to search the splits of large nodes, or null to stay on the calling thread.
+	 */
+	public Tree (TreeData treeData, boolean randomlySelectAttri, int numSampledAttributes, long seed,
+				ForkJoinPool pool) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		this.pool = pool;
+		this.numAttributes = treeData.data.getNumAttributes();
+		
+		this.data = treeData.data;
+		this.weights = treeData.weights;
+		
+		// Rows that were not sampled do not take part in the tree at all.
+		this.rows = new int[treeData.to - treeData.from];
+		int numRows = 0;
+		for (int i = treeData.from; i < treeData.to; i++) {
+			int row = treeData.rows[i];
+			if (weights == null || weights[row] > 0) {
+				rows[numRows++] = row;
+			}
+		}
+		if (numRows < rows.length) {
+			rows = Arrays.copyOf(rows, numRows);
+		}
+		this.scratch = new int[rows.length];
+		this.candidateAttributes = new int[treeData.attributes.size()];
+		int numCandidates = 0;
+		Iterator<Integer> itr = treeData.attributes.iterator();
+		while (itr.hasNext()) {
+			candidateAttributes[numCandidates++] = itr.next();
+		}
+		this.usedAttributes = new BitSet(data.getNumAttributes());
+		this.numSampledAttributes = getNumSampledAttributes(randomlySelectAttri, numSampledAttributes,
+															candidateAttributes.length);
+		SplitScorer.ensureCapacity(treeData.numPositiveClass + treeData.numNegativeClass);
+		
+		// Columns loaded from a file are already encoded; encode the others once here.
+		this.columns = new DictionaryColumn[data.getNumAttributes()];
+		int maxNumCodes = 0;
+		for (int attribute : candidateAttributes) {
+			columns[attribute] = DictionaryColumn.encode(data.getColumn(attribute));
+			maxNumCodes = Math.max(maxNumCodes, columns[attribute].getNumCodes());
+		}
+		this.valueCounts = new ValueCounts(maxNumCodes);
+		this.bestValueCounts = new ValueCounts(maxNumCodes);
+		this.offsets = new int[maxNumCodes];
+		
+		// Binary candidates are counted with popcounts, which need the labels and weights as bits too.
+		boolean hasBitColumns = false;
+		for (int attribute : candidateAttributes) {
+			hasBitColumns |= columns[attribute] instanceof BitColumn;
+		}
+		if (hasBitColumns) {
+			int numWords = (data.getNumRows() + 63) >>> 6;
+			this.positiveWords = new long[numWords];
+			for (int row = 0; row < data.getNumRows(); row++) {
+				if (data.getLabel(row) == +1) {
+					positiveWords[row >>> 6] |= 1L << row;
+				}
+			}
+			if (weights != null) {
+				int maxWeight = 0;
+				for (int row : rows) {
+					maxWeight = Math.max(maxWeight, weights[row]);
+				}
+				this.weightPlanes = new long[32 - Integer.numberOfLeadingZeros(maxWeight)][numWords];
+				for (int row : rows) {
+					for (int plane = 0; plane < weightPlanes.length; plane++) {
+						if ((weights[row] & (1 << plane)) != 0) {
+							weightPlanes[plane][row >>> 6] |= 1L << row;
+						}
+					}
+				}
+			}
+			this.nodeWords = new long[numWords];
+		}
+		
 		// Generate the entire tree with all the tree data.
-		this.rootNode = generateDecisionTree(treeData, randomlySelectAttri, 0);
+		this.rootNode = generateDecisionTree(0, rows.length, treeData.numPositiveClass, treeData.numNegativeClass,
+											randomlySelectAttri, 0, seed);
+		if (Metrics.isEnabled()) {
+			recordBuild(rootNode, rowsScanned, selectAttributeNanos, partitionNanos, System.nanoTime() - start);
+		}
+		setBuilt(treeData);
+		
+		// The build state is only needed while generating the tree.
+		this.data = null;
+		this.rows = null;
+		this.scratch = null;
+		this.weights = null;
+		this.candidateAttributes = null;
+		this.usedAttributes = null;
+		this.columns = null;
+		this.valueCounts = null;
+		this.bestValueCounts = null;
+		this.offsets = null;
+		this.positiveWords = null;
+		this.weightPlanes = null;
+		this.nodeWords = null;
+	}
+	
+	public int getNumAttributes() {
+		return numAttributes;
+	}
+	
+	/**
+	 * @return when the tree was built, in milliseconds since the epoch, or 0 for a tree
+	 *         loaded from a model file.
+	 */
+	public long getBuildTime() {
+		return buildTime;
+	}
+	
+	/**
+	 * @return the error rate of the tree on the rows left out of its bootstrap sample,
+	 *         or NaN when it was built on every row or loaded from a model file.
+	 */
+	public double getOutOfBagError() {
+		return outOfBagError;
 	}
 	
 	public int getLabel(DataInstance dataInstance) {
-		return getLabel(dataInstance, rootNode);
+		if (!Metrics.isEnabled()) {
+			return getLabel(dataInstance, rootNode);
+		}
+		long start = System.nanoTime();
+		int label = getLabel(dataInstance, rootNode);
+		Metrics.get().treeLabeled(System.nanoTime() - start);
+		return label;
+	}
+	
+	/**
+	 * Write the tree to a model file, see {@link ModelFile}.
+	 * 
+	 * @param fileName path of the file to write.
+	 */
+	public void save(String fileName) throws IOException {
+		ModelFile.write(Collections.singletonList(this), numAttributes, fileName);
+	}
+	
+	/**
+	 * Write the tree in its compiled form, e.g. to send it to another process: the number
+	 * of attributes, the number of nodes, the nodes, then the build time and out-of-bag error.
+	 * 
+	 * @param out where to write the tree.
+	 */
+	public void write(DataOutput out) throws IOException {
+		int[] nodes = getCompiledTree().getNodes();
+		out.writeInt(numAttributes);
+		out.writeInt(nodes.length);
+		for (int value : nodes) {
+			out.writeInt(value);
+		}
+		out.writeLong(buildTime);
+		out.writeDouble(outOfBagError);
+	}
+	
+	/**
+	 * Read a tree written by {@link #write(DataOutput)}.
+	 * 
+	 * @param in where to read the tree from.
+	 * @return the {@link Tree}, giving the same labels, build time and out-of-bag error
+	 *         as the written one.
+	 */
+	public static Tree read(DataInput in) throws IOException {
+		int numAttributes = in.readInt();
+		int[] nodes = new int[in.readInt()];
+		for (int i = 0; i < nodes.length; i++) {
+			nodes[i] = in.readInt();
+		}
+		Tree tree = new Tree(new CompiledTree(nodes).decompile(), numAttributes);
+		tree.buildTime = in.readLong();
+		tree.outOfBagError = in.readDouble();
+		return tree;
+	}
+	
+	/**
+	 * Lay the tree out in the flat array form used for fast inference.
+	 * 
+	 * @return the {@link CompiledTree}, giving the same labels as this tree.
+	 */
+	public CompiledTree compile() {
+		return CompiledTree.compile(rootNode);
+	}
+	
+	/**
+	 * @return the {@link CompiledTree} of this tree, compiled once and then reused.
+	 */
+	public CompiledTree getCompiledTree() {
+		CompiledTree result = compiledTree;
+		if (result == null) {
+			result = compile();
+			compiledTree = result;
+		}
+		return result;
+	}
+	
+	/**
+	 * Generate a JVM class whose code is the top of the tree, see {@link TreeClassGenerator}.
+	 * 
+	 * @return the {@link RowPredictor}, giving the same labels as {@link #getLabel(DataInstance)}.
+	 */
+	public RowPredictor generatePredictor() {
+		return TreeClassGenerator.generate(Collections.singletonList(this));
+	}
+	
+	/**
+	 * Label every row of a block.
+	 * 
+	 * @param data the {@link ColumnarData} holding the rows.
+	 * @return the predicted label of every row.
+	 */
+	public int[] predictBatch(ColumnarData data) {
+		return predictBatch(data, null);
+	}
+	
+	/**
+	 * Label every row of a block, splitting the block across the threads of a pool.
+	 * 
+	 * @param data the {@link ColumnarData} holding the rows.
+	 * @param pool the pool to label in, or null to label on the calling thread.
+	 * @return the predicted label of every row.
+	 */
+	public int[] predictBatch(final ColumnarData data, ForkJoinPool pool) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		final CompiledTree compiled = getCompiledTree();
+		final int numRows = data.getNumRows();
+		final int[] labels = new int[numRows];
+		
+		if (pool == null || numRows <= PREDICT_BLOCK_SIZE) {
+			compiled.predictBatch(data, 0, numRows, labels);
+		} else {
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected void compute() {
+					ForkJoinTask<?>[] blocks = new ForkJoinTask<?>[(numRows + PREDICT_BLOCK_SIZE - 1) / PREDICT_BLOCK_SIZE];
+					for (int i = 0; i < blocks.length; i++) {
+						final int from = i * PREDICT_BLOCK_SIZE;
+						final int to = Math.min(numRows, from + PREDICT_BLOCK_SIZE);
+						blocks[i] = ForkJoinTask.adapt(new Runnable() {
+							@Override
+							public void run() {
+								compiled.predictBatch(data, from, to, labels);
+							}
+						});
+					}
+					invokeAll(blocks);
+				}
+			});
+		}
+		if (Metrics.isEnabled()) {
+			Metrics.get().batchPredicted(numRows, System.nanoTime() - start);
+		}
+		return labels;
+	}
+	
+	/**
+	 * @param data the {@link ColumnarData} holding the row.
+	 * @param row index of the row to label.
+	 * @return the predicted label of the row.
+	 */
+	public int getLabel(ColumnarData data, int row) {
+		if (!Metrics.isEnabled()) {
+			return getLabel(data, row, rootNode);
+		}
+		long start = System.nanoTime();
+		int label = getLabel(data, row, rootNode);
+		Metrics.get().treeLabeled(System.nanoTime() - start);
+		return label;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,597 @@
+package tree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Generates a JVM class labeling rows with a tree or a forest, so that the JIT
+ * compiles the splits themselves instead of a loop walking the nodes.
+ *
+ * The top of every tree, breadth-first up to {@link #MAX_TREE_SIZE} bytes of
+ * bytecode, is generated: every decision node becomes a <code>lookupswitch</code>
+ * on the value of its attribute, whose cases hold the children and whose default
+ * returns the node's majority label, and every leaf a constant return. The deeper
+ * decision nodes, reached by few rows, continue in the tree's {@link CompiledTree}:
+ * whole trees make megabytes of bytecode, which is slower than the loop once compiled.
+ * Measure before switching to the generated class, the loop of {@link CompiledTree}
+ * is often as fast.
+ *
+ * A method holds as much of a tree as fits in {@link #MAX_METHOD_SIZE} bytes of
+ * bytecode; the larger subtrees get methods of their own. A node with too many
+ * children for its switch to fit in a method, even the root, stays in the
+ * {@link CompiledTree} with the nodes below it. The trees of a forest
+ * vote by summing their labels, a tie going to -1.
+ *
+ * The class is defined as a hidden class of this package, and is unloaded once its
+ * instance is no longer reachable.
+ *
+ * @author Tianyi Wang
+ */
+public class TreeClassGenerator {
+
+	// Most bytecode generated for the top of one tree.
+	final static int MAX_TREE_SIZE = 1500;
+
+	// Most bytecode in one generated method, well below the 8000 bytes the JIT refuses to compile.
+	final static int MAX_METHOD_SIZE = 2500;
+
+	// Most trees whose votes are summed by one method.
+	final private static int VOTES_PER_METHOD = 1000;
+
+	// Bytes of a call to a subtree with a method of its own: aload_0, invokestatic, ireturn.
+	final private static int CALL_SIZE = 5;
+
+	// Most bytes of a call to the compiled tree: getstatic, push the tree, aaload,
+	// aload_0, push the offset, invokevirtual, ireturn.
+	final private static int COMPILED_CALL_SIZE = 15;
+
+	// Largest bytecode the class file format allows in one method.
+	final private static int MAX_CODE_LENGTH = 65535;
+
+	final private static String CLASS_NAME = "tree/GeneratedRowPredictor";
+	final private static String ROW_METHOD_DESCRIPTOR = "([I)I";
+	final private static String COMPILED_TREE_CLASS_NAME = CompiledTree.class.getName().replace('.', '/');
+	final private static String COMPILED_TREES_FIELD = "compiledTrees";
+
+	final private static int ACC_PUBLIC = 0x0001;
+	final private static int ACC_PRIVATE = 0x0002;
+	final private static int ACC_STATIC = 0x0008;
+	final private static int ACC_FINAL = 0x0010;
+	final private static int ACC_SUPER = 0x0020;
+
+	final private static int CONSTANT_UTF8 = 1;
+	final private static int CONSTANT_INTEGER = 3;
+	final private static int CONSTANT_CLASS = 7;
+	final private static int CONSTANT_FIELDREF = 9;
+	final private static int CONSTANT_METHODREF = 10;
+	final private static int CONSTANT_NAME_AND_TYPE = 12;
+
+	final private static int ICONST_M1 = 0x02;
+	final private static int ICONST_0 = 0x03;
+	final private static int ICONST_1 = 0x04;
+	final private static int BIPUSH = 0x10;
+	final private static int SIPUSH = 0x11;
+	final private static int LDC_W = 0x13;
+	final private static int ALOAD_0 = 0x2a;
+	final private static int ALOAD_1 = 0x2b;
+	final private static int IALOAD = 0x2e;
+	final private static int AALOAD = 0x32;
+	final private static int IADD = 0x60;
+	final private static int IFLE = 0x9e;
+	final private static int LOOKUPSWITCH = 0xab;
+	final private static int IRETURN = 0xac;
+	final private static int RETURN = 0xb1;
+	final private static int GETSTATIC = 0xb2;
+	final private static int INVOKEVIRTUAL = 0xb6;
+	final private static int INVOKESPECIAL = 0xb7;
+	final private static int INVOKESTATIC = 0xb8;
+
+	// Stack map frame types.
+	final private static int SAME_FRAME_MAX = 63;
+	final private static int SAME_FRAME_EXTENDED = 251;
+
+	/**
+	 * The bytecode of one method, with the branch targets needing a stack map frame.
+	 * Every method keeps its arguments as its only locals and branches with an empty
+	 * stack, so every frame is the same as the method's initial one.
+	 */
+	private static class Code {
+		byte[] bytes = new byte[256];
+		int size = 0;
+		ArrayList<Integer> frames = new ArrayList<Integer>();
+
+		void u1(int value) {
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		void u2(int value) {
+			u1(value >>> 8);
+			u1(value);
+		}
+
+		void u4(int value) {
+			u2(value >>> 16);
+			u2(value);
+		}
+
+		void setU4(int position, int value) {
+			bytes[position] = (byte) (value >>> 24);
+			bytes[position + 1] = (byte) (value >>> 16);
+			bytes[position + 2] = (byte) (value >>> 8);
+			bytes[position + 3] = (byte) value;
+		}
+
+		/**
+		 * Mark the current position as a branch target.
+		 */
+		void frame() {
+			frames.add(size);
+		}
+	}
+
+	/**
+	 * One of the trees voting. Trees may share nodes, so what is known of a node is
+	 * kept per tree.
+	 */
+	private static class TreeContext {
+		final int index;
+		final IdentityHashMap<Tree.TreeNode, Integer> offsets;		// the records in the compiled tree.
+		final IdentityHashMap<Tree.TreeNode, Boolean> generated;	// decision nodes getting bytecode.
+		final IdentityHashMap<Tree.TreeNode, Integer> sizes;		// bytecode of every subtree emitted whole.
+
+		public TreeContext(int index, Tree.TreeNode root) {
+			this.index = index;
+			this.offsets = CompiledTree.getOffsets(root);
+			this.generated = new IdentityHashMap<Tree.TreeNode, Boolean>();
+			this.sizes = new IdentityHashMap<Tree.TreeNode, Integer>();
+		}
+	}
+
+	/**
+	 * A subtree waiting for its own method.
+	 */
+	private static class PendingMethod {
+		final String name;
+		final TreeContext tree;
+		final Tree.TreeNode node;
+
+		public PendingMethod(String name, TreeContext tree, Tree.TreeNode node) {
+			this.name = name;
+			this.tree = tree;
+			this.node = node;
+		}
+	}
+
+	private final ByteArrayOutputStream constantPoolBytes;
+	private final DataOutputStream constantPool;
+	private final HashMap<String, Integer> constants;		// index of every constant, by tag and value.
+	private int numConstants;
+
+	private final ByteArrayOutputStream methodBytes;
+	private final DataOutputStream methods;
+	private int numMethods;
+
+	private final ArrayDeque<PendingMethod> pending;
+	private int numSubtreeMethods;
+
+	private TreeClassGenerator() {
+		this.constantPoolBytes = new ByteArrayOutputStream();
+		this.constantPool = new DataOutputStream(constantPoolBytes);
+		this.constants = new HashMap<String, Integer>();
+		this.numConstants = 1;
+		this.methodBytes = new ByteArrayOutputStream();
+		this.methods = new DataOutputStream(methodBytes);
+		this.numMethods = 0;
+		this.pending = new ArrayDeque<PendingMethod>();
+		this.numSubtreeMethods = 0;
+	}
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private int addUtf8(String value) throws IOException {
+		Integer index = constants.get(CONSTANT_UTF8 + ":" + value);
+		if (index == null) {
+			constantPool.writeByte(CONSTANT_UTF8);
+			constantPool.writeUTF(value);
+			index = numConstants++;
+			constants.put(CONSTANT_UTF8 + ":" + value, index);
+		}
+		return index;
+	}
+
+	private int addInteger(int value) throws IOException {
+		Integer index = constants.get(CONSTANT_INTEGER + ":" + value);
+		if (index == null) {
+			constantPool.writeByte(CONSTANT_INTEGER);
+			constantPool.writeInt(value);
+			index = numConstants++;
+			constants.put(CONSTANT_INTEGER + ":" + value, index);
+		}
+		return index;
+	}
+
+	private int addClass(String name) throws IOException {
+		Integer index = constants.get(CONSTANT_CLASS + ":" + name);
+		if (index == null) {
+			int nameIndex = addUtf8(name);
+			constantPool.writeByte(CONSTANT_CLASS);
+			constantPool.writeShort(nameIndex);
+			index = numConstants++;
+			constants.put(CONSTANT_CLASS + ":" + name, index);
+		}
+		return index;
+	}
+
+	private int addMethodref(String className, String name, String descriptor) throws IOException {
+		return addMemberref(CONSTANT_METHODREF, className, name, descriptor);
+	}
+
+	private int addFieldref(String className, String name, String descriptor) throws IOException {
+		return addMemberref(CONSTANT_FIELDREF, className, name, descriptor);
+	}
+
+	private int addMemberref(int tag, String className, String name, String descriptor) throws IOException {
+		String key = tag + ":" + className + "." + name + descriptor;
+		Integer index = constants.get(key);
+		if (index == null) {
+			int classIndex = addClass(className);
+			int nameIndex = addUtf8(name);
+			int descriptorIndex = addUtf8(descriptor);
+			constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+			constantPool.writeShort(nameIndex);
+			constantPool.writeShort(descriptorIndex);
+			int nameAndTypeIndex = numConstants++;
+			constantPool.writeByte(tag);
+			constantPool.writeShort(classIndex);
+			constantPool.writeShort(nameAndTypeIndex);
+			index = numConstants++;
+			constants.put(key, index);
+		}
+		return index;
+	}
+
+	private void pushInt(Code code, int value) throws IOException {
+		if (value >= -1 && value <= 5) {
+			code.u1(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			code.u1(BIPUSH);
+			code.u1(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			code.u1(SIPUSH);
+			code.u2(value);
+		} else {
+			code.u1(LDC_W);
+			code.u2(addInteger(value));
+		}
+	}
+
+	private static void pushLabel(Code code, boolean positive) {
+		code.u1(positive ? ICONST_1 : ICONST_M1);
+	}
+
+	/**
+	 * @param node a decision node.
+	 * @return an upper bound of the bytecode of the node alone: load the value, switch
+	 *         with up to 3 bytes of padding, then the default return.
+	 */
+	private static int getSwitchSize(Tree.DecisionTreeNode node) {
+		return 5 + 12 + 8 * node.childValues.length + 2;
+	}
+
+	/**
+	 * @param node a decision node.
+	 * @return whether the node fits in a method of its own, every child taking at most a call.
+	 */
+	private static boolean fitsInMethod(Tree.DecisionTreeNode node) {
+		return getSwitchSize(node) + (long) CALL_SIZE * node.childValues.length <= MAX_METHOD_SIZE;
+	}
+	
+	/**
+	 * Choose the decision nodes getting bytecode: the top of the tree, breadth-first,
+	 * as long as it fits in {@link #MAX_TREE_SIZE} bytes. The root always does unless
+	 * it does not fit in a method, see {@link #fitsInMethod(Tree.DecisionTreeNode)}.
+	 *
+	 * @param tree the tree.
+	 * @param root the root of the tree.
+	 */
+	private static void selectGeneratedNodes(TreeContext tree, Tree.TreeNode root) {
+		ArrayDeque<Tree.TreeNode> queue = new ArrayDeque<Tree.TreeNode>();
+		queue.add(root);
+		long size = 0;
+		while (!queue.isEmpty()) {
+			Tree.TreeNode node = queue.poll();
+			if (!(node instanceof Tree.DecisionTreeNode) || tree.generated.containsKey(node)) {
+				continue;
+			}
+			Tree.DecisionTreeNode decisionNode = (Tree.DecisionTreeNode) node;
+			if (!fitsInMethod(decisionNode)) {
+				continue;
+			}
+			size += getSwitchSize(decisionNode);
+			if (size > MAX_TREE_SIZE && node != root) {
+				break;
+			}
+			tree.generated.put(node, true);
+			queue.addAll(Arrays.asList(decisionNode.childNodes));
+		}
+	}
+
+	/**
+	 * @param tree the tree of the subtree.
+	 * @param node root of a subtree.
+	 * @return an upper bound of the bytecode of the subtree emitted in a single method.
+	 */
+	private int getSize(TreeContext tree, Tree.TreeNode node) {
+		Integer size = tree.sizes.get(node);
+		if (size != null) {
+			return size;
+		}
+
+		long result = 2;
+		if (node instanceof Tree.DecisionTreeNode) {
+			Tree.DecisionTreeNode decisionNode = (Tree.DecisionTreeNode) node;
+			if (tree.generated.containsKey(node)) {
+				result = getSwitchSize(decisionNode);
+				for (Tree.TreeNode childNode : decisionNode.childNodes) {
+					result += getSize(tree, childNode);
+				}
+			} else {
+				result = COMPILED_CALL_SIZE;
+			}
+		}
+		size = (int) Math.min(result, Integer.MAX_VALUE);
+		tree.sizes.put(node, size);
+		return size;
+	}
+
+	/**
+	 * Emit a subtree, moving the children that do not fit to methods of their own.
+	 *
+	 * @param code the method being emitted.
+	 * @param tree the tree of the subtree.
+	 * @param node root of the subtree.
+	 * @param reserve bytes the method still needs once the subtree has been emitted.
+	 */
+	private void emitNode(Code code, TreeContext tree, Tree.TreeNode node, int reserve) throws IOException {
+		if (node instanceof Tree.LabelTreeNode) {
+			pushLabel(code, ((Tree.LabelTreeNode) node).label == +1);
+			code.u1(IRETURN);
+			return;
+		}
+
+		if (!tree.generated.containsKey(node)) {
+			// Continue in the compiled tree, from the record of the node.
+			code.u1(GETSTATIC);
+			code.u2(addFieldref(CLASS_NAME, COMPILED_TREES_FIELD, "[L" + COMPILED_TREE_CLASS_NAME + ";"));
+			pushInt(code, tree.index);
+			code.u1(AALOAD);
+			code.u1(ALOAD_0);
+			pushInt(code, tree.offsets.get(node));
+			code.u1(INVOKEVIRTUAL);
+			code.u2(addMethodref(COMPILED_TREE_CLASS_NAME, "getLabel", "([II)I"));
+			code.u1(IRETURN);
+			return;
+		}
+
+		Tree.DecisionTreeNode decisionNode = (Tree.DecisionTreeNode) node;
+		int[] values = decisionNode.childValues;
+		code.u1(ALOAD_0);
+		pushInt(code, decisionNode.attributeIndex);
+		code.u1(IALOAD);
+
+		int switchPosition = code.size;
+		code.u1(LOOKUPSWITCH);
+		while (code.size % 4 != 0) {
+			code.u1(0);
+		}
+		int defaultPosition = code.size;
+		code.u4(0);
+		code.u4(values.length);
+		int casesPosition = code.size;
+		for (int value : values) {
+			code.u4(value);
+			code.u4(0);
+		}
+
+		// No child for the value: the majority label of the node, as in Tree#getLabel.
+		code.setU4(defaultPosition, code.size - switchPosition);
+		code.frame();
+		pushLabel(code, decisionNode.positiveMajority);
+		code.u1(IRETURN);
+
+		for (int i = 0; i < values.length; i++) {
+			Tree.TreeNode childNode = decisionNode.childNodes[i];
+			code.setU4(casesPosition + 8 * i + 4, code.size - switchPosition);
+			code.frame();
+
+			// The children after this one may all need a call.
+			int childReserve = reserve + CALL_SIZE * (values.length - i - 1);
+			if (code.size + getSize(tree, childNode) + childReserve <= MAX_METHOD_SIZE) {
+				emitNode(code, tree, childNode, childReserve);
+			} else {
+				String name = "n" + numSubtreeMethods++;
+				pending.add(new PendingMethod(name, tree, childNode));
+				code.u1(ALOAD_0);
+				code.u1(INVOKESTATIC);
+				code.u2(addMethodref(CLASS_NAME, name, ROW_METHOD_DESCRIPTOR));
+				code.u1(IRETURN);
+			}
+		}
+	}
+
+	private void addMethod(int access, String name, String descriptor, Code code, int maxStack,
+						int maxLocals) throws IOException {
+		// Wide nodes are left to the compiled trees, so no method should get this large.
+		if (code.size > MAX_CODE_LENGTH) {
+			throw new IllegalStateException("Method " + name + " has " + code.size + " bytes of bytecode.");
+		}
+
+		// The frames of the branch targets, all the same as the initial frame.
+		ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+		DataOutputStream frames = new DataOutputStream(frameBytes);
+		int previous = -1;
+		for (int offset : code.frames) {
+			int delta = offset - previous - 1;
+			if (delta <= SAME_FRAME_MAX) {
+				frames.writeByte(delta);
+			} else {
+				frames.writeByte(SAME_FRAME_EXTENDED);
+				frames.writeShort(delta);
+			}
+			previous = offset;
+		}
+
+		int stackMapLength = code.frames.isEmpty() ? 0 : 2 + 4 + 2 + frameBytes.size();
+		methods.writeShort(access);
+		methods.writeShort(addUtf8(name));
+		methods.writeShort(addUtf8(descriptor));
+		methods.writeShort(1);
+		methods.writeShort(addUtf8("Code"));
+		methods.writeInt(2 + 2 + 4 + code.size + 2 + 2 + stackMapLength);
+		methods.writeShort(maxStack);
+		methods.writeShort(maxLocals);
+		methods.writeInt(code.size);
+		methods.write(code.bytes, 0, code.size);
+		methods.writeShort(0);
+		if (code.frames.isEmpty()) {
+			methods.writeShort(0);
+		} else {
+			methods.writeShort(1);
+			methods.writeShort(addUtf8("StackMapTable"));
+			methods.writeInt(2 + frameBytes.size());
+			methods.writeShort(code.frames.size());
+			methods.write(frameBytes.toByteArray());
+		}
+		numMethods++;
+	}
+
+	/**
+	 * @param trees the trees voting.
+	 * @return the class file.
+	 */
+	private byte[] generateClass(List<Tree> trees) throws IOException {
+		int thisClass = addClass(CLASS_NAME);
+		int superClass = addClass("java/lang/Object");
+		int interfaceClass = addClass(RowPredictor.class.getName().replace('.', '/'));
+		int fieldName = addUtf8(COMPILED_TREES_FIELD);
+		int fieldDescriptor = addUtf8("[L" + COMPILED_TREE_CLASS_NAME + ";");
+
+		// Constructor.
+		Code code = new Code();
+		code.u1(ALOAD_0);
+		code.u1(INVOKESPECIAL);
+		code.u2(addMethodref("java/lang/Object", "<init>", "()V"));
+		code.u1(RETURN);
+		addMethod(ACC_PUBLIC, "<init>", "()V", code, 1, 1);
+
+		// predict sums the votes of every group of trees.
+		int numGroups = (trees.size() + VOTES_PER_METHOD - 1) / VOTES_PER_METHOD;
+		code = new Code();
+		code.u1(ICONST_0);
+		for (int i = 0; i < numGroups; i++) {
+			code.u1(ALOAD_1);
+			code.u1(INVOKESTATIC);
+			code.u2(addMethodref(CLASS_NAME, "v" + i, ROW_METHOD_DESCRIPTOR));
+			code.u1(IADD);
+		}
+		int branchPosition = code.size;
+		code.u1(IFLE);
+		code.u2(0);
+		pushLabel(code, true);
+		code.u1(IRETURN);
+		int negative = code.size;
+		code.bytes[branchPosition + 1] = (byte) ((negative - branchPosition) >>> 8);
+		code.bytes[branchPosition + 2] = (byte) (negative - branchPosition);
+		code.frame();
+		pushLabel(code, false);
+		code.u1(IRETURN);
+		addMethod(ACC_PUBLIC | ACC_FINAL, "predict", ROW_METHOD_DESCRIPTOR, code, 2, 2);
+
+		// Every group method sums the labels of its trees.
+		for (int i = 0; i < numGroups; i++) {
+			code = new Code();
+			code.u1(ICONST_0);
+			for (int j = i * VOTES_PER_METHOD; j < Math.min(trees.size(), (i + 1) * VOTES_PER_METHOD); j++) {
+				code.u1(ALOAD_0);
+				code.u1(INVOKESTATIC);
+				code.u2(addMethodref(CLASS_NAME, "t" + j, ROW_METHOD_DESCRIPTOR));
+				code.u1(IADD);
+			}
+			code.u1(IRETURN);
+			addMethod(ACC_PRIVATE | ACC_STATIC, "v" + i, ROW_METHOD_DESCRIPTOR, code, 2, 1);
+		}
+
+		// Every tree, then the subtrees moved out of the methods as they are emitted.
+		for (int i = 0; i < trees.size(); i++) {
+			Tree.TreeNode root = trees.get(i).getRootNode();
+			TreeContext tree = new TreeContext(i, root);
+			selectGeneratedNodes(tree, root);
+			pending.add(new PendingMethod("t" + i, tree, root));
+		}
+		while (!pending.isEmpty()) {
+			PendingMethod method = pending.poll();
+			code = new Code();
+			emitNode(code, method.tree, method.node, 0);
+			addMethod(ACC_PRIVATE | ACC_STATIC, method.name, ROW_METHOD_DESCRIPTOR, code, 3, 1);
+		}
+
+		ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(classBytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(52);
+		out.writeShort(numConstants);
+		constantPoolBytes.writeTo(out);
+		out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(interfaceClass);
+		out.writeShort(1);
+		out.writeShort(ACC_PUBLIC | ACC_STATIC);
+		out.writeShort(fieldName);
+		out.writeShort(fieldDescriptor);
+		out.writeShort(0);
+		out.writeShort(numMethods);
+		methodBytes.writeTo(out);
+		out.writeShort(0);
+		return classBytes.toByteArray();
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Generate and load the class of a tree, or of a forest voting with several trees.
+	 *
+	 * @param trees the trees voting; a single tree for a Decision Tree.
+	 * @return the {@link RowPredictor}, giving the same labels as {@link Tree#getLabel(data.DataInstance)}
+	 *         for a single tree, and as the majority of the trees otherwise.
+	 */
+	public static RowPredictor generate(List<Tree> trees) {
+		try {
+			byte[] classFile = new TreeClassGenerator().generateClass(trees);
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			CompiledTree[] compiledTrees = new CompiledTree[trees.size()];
+			for (int i = 0; i < compiledTrees.length; i++) {
+				compiledTrees[i] = trees.get(i).getCompiledTree();
+			}
+			lookup.lookupClass().getField(COMPILED_TREES_FIELD).set(null, compiledTrees);
+			return (RowPredictor) lookup.lookupClass().getDeclaredConstructor().newInstance();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to generate the class.", e);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Failed to load the generated class.", e);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+package tree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Shrinks trained trees by sharing their equal parts: every leaf of a label becomes the
+ * same object, and equal subtrees, within a tree or across all the trees compacted by
+ * the same compactor, become one subtree. The trees turn into a DAG giving the same
+ * labels; {@link CompiledTree} and {@link TreeClassGenerator} lay shared nodes out once.
+ *
+ * The heap figures are estimates for a 64-bit JVM with compressed references: 12 bytes
+ * of object header, 4 bytes per reference, every object aligned to 8 bytes. They cover
+ * the nodes and their child tables, not the {@link CompiledTree}s.
+ *
+ * Compacting changes the nodes in place, so it must not run while the trees are labeling.
+ *
+ * @author Tianyi Wang
+ */
+public class TreeCompactor {
+
+	/**
+	 * A decision node whose children are already shared, compared by content: equal
+	 * keys stand for equal subtrees.
+	 */
+	private static class NodeKey {
+		private final Tree.DecisionTreeNode node;
+		private final int hash;
+
+		public NodeKey(Tree.DecisionTreeNode node) {
+			this.node = node;
+			int hash = node.attributeIndex * 31 + (node.positiveMajority ? 1 : 0);
+			hash = hash * 31 + Arrays.hashCode(node.childValues);
+			for (Tree.TreeNode childNode : node.childNodes) {
+				hash = hash * 31 + System.identityHashCode(childNode);
+			}
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof NodeKey)) {
+				return false;
+			}
+			Tree.DecisionTreeNode other = ((NodeKey) obj).node;
+			if (node.attributeIndex != other.attributeIndex || node.positiveMajority != other.positiveMajority
+					|| !Arrays.equals(node.childValues, other.childValues)) {
+				return false;
+			}
+			// The children are shared already, so equal subtrees are the same objects.
+			for (int i = 0; i < node.childNodes.length; i++) {
+				if (node.childNodes[i] != other.childNodes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	// The leaf shared by every leaf of each label, once one was seen.
+	private Tree.LabelTreeNode positiveLeaf;
+	private Tree.LabelTreeNode negativeLeaf;
+
+	// The shared copy of every distinct subtree seen so far.
+	private final HashMap<NodeKey, Tree.DecisionTreeNode> sharedNodes = new HashMap<NodeKey, Tree.DecisionTreeNode>();
+
+	private long numNodesBefore;
+	private long bytesBefore;
+
+	/*************************** PRIVATE METHODS ***************************/
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	/**
+	 * @param node a node.
+	 * @return estimated bytes of the node and of its child tables.
+	 */
+	private static long getSize(Tree.TreeNode node) {
+		if (node instanceof Tree.LabelTreeNode) {
+			return align(12 + 4);
+		}
+		Tree.DecisionTreeNode decisionNode = (Tree.DecisionTreeNode) node;
+		int numChildren = decisionNode.childValues.length;
+		// The empty tables of childless nodes are shared by all of them.
+		long tables = numChildren == 0 ? 0 : 2 * align(16 + 4L * numChildren);
+		return align(12 + 4 + 1 + 2 * 4) + tables;
+	}
+
+	/**
+	 * Replace a subtree with its shared copy, sharing its children first.
+	 *
+	 * @param node root of the subtree.
+	 * @param visited the shared copy of every node of the tree already visited.
+	 * @return the shared copy of the subtree.
+	 */
+	private Tree.TreeNode share(Tree.TreeNode node, IdentityHashMap<Tree.TreeNode, Tree.TreeNode> visited) {
+		Tree.TreeNode shared = visited.get(node);
+		if (shared != null) {
+			return shared;
+		}
+		numNodesBefore++;
+		bytesBefore += getSize(node);
+
+		if (node instanceof Tree.LabelTreeNode) {
+			if (((Tree.LabelTreeNode) node).label == +1) {
+				if (positiveLeaf == null) {
+					positiveLeaf = (Tree.LabelTreeNode) node;
+				}
+				shared = positiveLeaf;
+			} else {
+				if (negativeLeaf == null) {
+					negativeLeaf = (Tree.LabelTreeNode) node;
+				}
+				shared = negativeLeaf;
+			}
+		} else {
+			Tree.DecisionTreeNode decisionNode = (Tree.DecisionTreeNode) node;
+			for (int i = 0; i < decisionNode.childNodes.length; i++) {
+				decisionNode.childNodes[i] = share(decisionNode.childNodes[i], visited);
+			}
+			NodeKey key = new NodeKey(decisionNode);
+			shared = sharedNodes.get(key);
+			if (shared == null) {
+				sharedNodes.put(key, decisionNode);
+				shared = decisionNode;
+			}
+		}
+		visited.put(node, shared);
+		return shared;
+	}
+
+	/*************************** PUBLIC METHODS ***************************/
+
+	/**
+	 * Share the nodes of a tree with those of the trees compacted before.
+	 *
+	 * @param tree the tree to compact.
+	 */
+	public void compact(Tree tree) {
+		tree.setRootNode(share(tree.getRootNode(), new IdentityHashMap<Tree.TreeNode, Tree.TreeNode>()));
+	}
+
+	/**
+	 * @return number of distinct nodes of the trees before they were compacted.
+	 */
+	public long getNumNodesBefore() {
+		return numNodesBefore;
+	}
+
+	/**
+	 * @return number of distinct nodes of all the compacted trees.
+	 */
+	public long getNumNodesAfter() {
+		return sharedNodes.size() + (positiveLeaf == null ? 0 : 1) + (negativeLeaf == null ? 0 : 1);
+	}
+
+	/**
+	 * @return estimated heap of the nodes before they were compacted.
+	 */
+	public long getBytesBefore() {
+		return bytesBefore;
+	}
+
+	/**
+	 * @return estimated heap of the nodes of all the compacted trees.
+	 */
+	public long getBytesAfter() {
+		long bytes = (positiveLeaf == null ? 0 : getSize(positiveLeaf)) + (negativeLeaf == null ? 0 : getSize(negativeLeaf));
+		for (Tree.DecisionTreeNode node : sharedNodes.values()) {
+			bytes += getSize(node);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the node counts and heap estimates, e.g. to print them.
+	 */
+	@Override
+	public String toString() {
+		return "Compacted " + getNumNodesBefore() + " nodes (" + getBytesBefore() + " bytes) into "
+				+ getNumNodesAfter() + " nodes (" + getBytesAfter() + " bytes)";
+	}
+}
\ No newline at end of file
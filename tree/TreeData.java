@@ -1,34 +1,84 @@
 package tree;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 
-import data.DataInstance;
+import data.ColumnarData;
 
 /**
  * @author Tianyi Wang
  */
 public class TreeData {
-	public ArrayList<DataInstance> data;
-	public int numPositiveClass;
-	public int numNegativeClass;
+	public ColumnarData data;
+	public int[] rows;					// indices into data of the rows in this set.
+	public int from;					// first position of rows in this set, inclusive.
+	public int to;						// last position of rows in this set, exclusive.
+	public int[] weights;				// weight of every row of data, or null when every row counts once.
+	public int numPositiveClass;		// total weight of the positive rows.
+	public int numNegativeClass;		// total weight of the negative rows.
 	public HashSet<Integer> attributes;
-	
-	public TreeData(ArrayList<DataInstance> data, int numPositiveClass, int numNegativeClass,
+
+	public TreeData(ColumnarData data, int[] rows, int numPositiveClass, int numNegativeClass,
 					HashSet<Integer> attributes) {
+		this(data, rows, 0, rows.length, numPositiveClass, numNegativeClass, attributes);
+	}
+	
+	public TreeData(ColumnarData data, int[] rows, int from, int to, int numPositiveClass,
+					int numNegativeClass, HashSet<Integer> attributes) {
+		this(data, rows, from, to, null, numPositiveClass, numNegativeClass, attributes);
+	}
+	
+	public TreeData(ColumnarData data, int[] rows, int from, int to, int[] weights, int numPositiveClass,
+					int numNegativeClass, HashSet<Integer> attributes) {
 		this.data = data;
+		this.rows = rows;
+		this.from = from;
+		this.to = to;
+		this.weights = weights;
 		this.numPositiveClass = numPositiveClass;
 		this.numNegativeClass = numNegativeClass;
 		this.attributes = attributes;
 	}
 
+	/**
+	 * Build the {@link TreeData} covering every row of the data set and every attribute.
+	 *
+	 * @param data the {@link ColumnarData} object.
+	 */
+	public TreeData(ColumnarData data) {
+		int numRows = data.getNumRows();
+		this.data = data;
+		this.rows = new int[numRows];
+		this.from = 0;
+		this.to = numRows;
+		this.weights = null;
+		this.numPositiveClass = 0;
+		this.numNegativeClass = 0;
+		for (int i = 0; i < numRows; i++) {
+			rows[i] = i;
+			if (data.getLabel(i) == +1) {
+				numPositiveClass++;
+			} else {
+				numNegativeClass++;
+			}
+		}
+
+		int attributesNum = data.getNumAttributes();
+		this.attributes = new HashSet<Integer>(attributesNum);
+		for (int i = 0; i < attributesNum; i++) {
+			attributes.add(i);
+		}
+	}
+
 	/**
 	 * For debugging purpose.
 	 */
 	@Override
 	public String toString() {
-		return "TreeData [data=" + data + ", numPositiveClass="
-				+ numPositiveClass + ", numNegativeClass=" + numNegativeClass
+		return "TreeData [data=" + data + ", rows=" + Arrays.toString(Arrays.copyOfRange(rows, from, to))
+				+ ", weights=" + (weights == null ? null : "[" + weights.length + " weights]")
+				+ ", numPositiveClass=" + numPositiveClass
+				+ ", numNegativeClass=" + numNegativeClass
 				+ ", attributes=" + attributes + "]";
-	}	
+	}
 }
\ No newline at end of file
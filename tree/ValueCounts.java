@@ -0,0 +1,144 @@
+package tree;
+
+import java.util.Arrays;
+
+import data.BitColumn;
+import data.ColumnarData;
+import data.DictionaryColumn;
+
+/**
+ * Positive and negative row weights per value code of one attribute, counted into
+ * reusable arrays indexed by code. The codes seen are remembered so that reading
+ * and clearing the counts costs as much as the node's rows, not the attribute's
+ * number of distinct values.
+ *
+ * @author Tianyi Wang
+ */
+class ValueCounts {
+	final int[] positive;
+	final int[] negative;
+	final int[] seen;				// the codes with a count, see sortSeen().
+	int numSeen;
+
+	public ValueCounts(int numCodes) {
+		this.positive = new int[numCodes];
+		this.negative = new int[numCodes];
+		this.seen = new int[numCodes];
+		this.numSeen = 0;
+	}
+
+	/**
+	 * Add the rows of a node to the counts.
+	 *
+	 * @param column the attribute to count.
+	 * @param data the {@link ColumnarData} holding the labels.
+	 * @param weights weight of every row of data, or null for unit weights.
+	 * @param rows indices of the rows of the node.
+	 * @param from first position of <code>rows</code> to count, inclusive.
+	 * @param to last position of <code>rows</code> to count, exclusive.
+	 */
+	public void count(DictionaryColumn column, ColumnarData data, int[] weights, int[] rows, int from, int to) {
+		for (int i = from; i < to; i++) {
+			int row = rows[i];
+			int code = column.getCode(row);
+			if (positive[code] == 0 && negative[code] == 0) {
+				seen[numSeen++] = code;
+			}
+			int weight = weights == null ? 1 : weights[row];
+			if (data.getLabel(row) == +1) {
+				positive[code] += weight;
+			} else {
+				negative[code] += weight;
+			}
+		}
+	}
+
+	/**
+	 * Count the rows of a node for a binary attribute 64 rows at a time, from the
+	 * bitmasks of the node's rows, the positive rows and the attribute. Gives the same
+	 * counts as {@link #count(DictionaryColumn, ColumnarData, int[], int[], int, int)}.
+	 *
+	 * @param column the attribute to count.
+	 * @param nodeWords bit set for every row of the node.
+	 * @param positiveWords bit set for every positive row of data.
+	 * @param weightPlanes bit b of every row's weight, or null for unit weights.
+	 * @param fromWord first word holding rows of the node, inclusive.
+	 * @param toWord last word holding rows of the node, exclusive.
+	 * @param numPositive total weight of the positive rows of the node.
+	 * @param numNegative total weight of the negative rows of the node.
+	 */
+	public void countBits(BitColumn column, long[] nodeWords, long[] positiveWords, long[][] weightPlanes,
+						int fromWord, int toWord, int numPositive, int numNegative) {
+		long[] words = column.getWords();
+		long ones = 0;
+		long positiveOnes = 0;
+		if (weightPlanes == null) {
+			for (int i = fromWord; i < toWord; i++) {
+				long bits = nodeWords[i] & words[i];
+				ones += Long.bitCount(bits);
+				positiveOnes += Long.bitCount(bits & positiveWords[i]);
+			}
+		} else {
+			// A weight is the sum of its bits, so count each bit plane and scale it.
+			for (int plane = 0; plane < weightPlanes.length; plane++) {
+				long[] planeWords = weightPlanes[plane];
+				long planeOnes = 0;
+				long planePositiveOnes = 0;
+				for (int i = fromWord; i < toWord; i++) {
+					long bits = nodeWords[i] & words[i] & planeWords[i];
+					planeOnes += Long.bitCount(bits);
+					planePositiveOnes += Long.bitCount(bits & positiveWords[i]);
+				}
+				ones += planeOnes << plane;
+				positiveOnes += planePositiveOnes << plane;
+			}
+		}
+
+		// The rows of code 0 are the rest of the node.
+		add(0, numPositive - (int) positiveOnes, numNegative - (int) (ones - positiveOnes));
+		add(1, (int) positiveOnes, (int) (ones - positiveOnes));
+	}
+
+	private void add(int code, int numPositive, int numNegative) {
+		if (numPositive == 0 && numNegative == 0) {
+			return;
+		}
+		if (positive[code] == 0 && negative[code] == 0) {
+			seen[numSeen++] = code;
+		}
+		positive[code] += numPositive;
+		negative[code] += numNegative;
+	}
+
+	/**
+	 * Add the counts of another block of rows of the same attribute.
+	 */
+	public void add(ValueCounts other) {
+		for (int i = 0; i < other.numSeen; i++) {
+			int code = other.seen[i];
+			if (positive[code] == 0 && negative[code] == 0) {
+				seen[numSeen++] = code;
+			}
+			positive[code] += other.positive[code];
+			negative[code] += other.negative[code];
+		}
+	}
+
+	/**
+	 * Sort the seen codes, that is the values, in increasing order.
+	 */
+	public void sortSeen() {
+		Arrays.sort(seen, 0, numSeen);
+	}
+
+	/**
+	 * Reset the counts of the seen codes to zero.
+	 */
+	public void clear() {
+		for (int i = 0; i < numSeen; i++) {
+			positive[seen[i]] = 0;
+			negative[seen[i]] = 0;
+		}
+		numSeen = 0;
+	}
+}
\ No newline at end of file